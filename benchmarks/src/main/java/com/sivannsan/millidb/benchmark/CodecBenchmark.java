@@ -0,0 +1,80 @@
+package com.sivannsan.millidb.benchmark;
+
+import com.sivannsan.millidata.MilliData;
+import com.sivannsan.millidata.MilliMap;
+import com.sivannsan.millidata.MilliValue;
+import com.sivannsan.millidb.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and parsing of queries and results carrying a whole document, in both protocols
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public Documents document;
+
+    private MilliDBQuery query;
+    private MilliDBResult result;
+    private String queryText;
+    private String resultText;
+    private ByteBuffer buffer;
+    private ByteBuffer queryFrame;
+    private ByteBuffer resultFrame;
+
+    @Setup
+    public void setup() {
+        MilliMap content = document.create();
+        query = new MilliDBQuery(MilliDBQuery.Function.SET, new MilliMap("path", new MilliValue("benchmark/document.mll")).append("data_path", new MilliValue("")).append("data_value", content));
+        result = new MilliDBResult(query.getID(), true, content);
+        queryText = query.asMilliMap().toString();
+        resultText = result.toMilliMap().toString();
+        buffer = ByteBuffer.allocate(64 * 1024);
+        queryFrame = MilliDBProtocol.BINARY.encode(query, ByteBuffer.allocate(64 * 1024)).flip();
+        resultFrame = MilliDBProtocol.BINARY.encode(result, ByteBuffer.allocate(64 * 1024)).flip();
+    }
+
+    @Benchmark
+    public String encodeQueryText() {
+        return query.asMilliMap().toString();
+    }
+
+    @Benchmark
+    public MilliDBQuery parseQueryText() throws MilliDBQueryParsedException {
+        return MilliDBQuery.Parser.parse(queryText);
+    }
+
+    @Benchmark
+    public MilliDBResult parseResultText() throws MilliDBResultException {
+        return MilliDBResult.Parser.parse(resultText);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeQueryBinary() {
+        buffer.clear();
+        return buffer = MilliDBProtocol.BINARY.encode(query, buffer);
+    }
+
+    @Benchmark
+    public MilliDBQuery decodeQueryBinary() throws MilliDBQueryParsedException {
+        return MilliDBProtocol.BINARY.decodeQuery(queryFrame.duplicate());
+    }
+
+    @Benchmark
+    public MilliDBResult decodeResultBinary() throws MilliDBResultException {
+        return MilliDBProtocol.BINARY.decodeResult(resultFrame.duplicate());
+    }
+
+    @Benchmark
+    public MilliData decodeResultBinaryMetadata() throws MilliDBResultException {
+        return MilliDBProtocol.BINARY.decodeResult(resultFrame.duplicate()).getMetadata();
+    }
+}
@@ -0,0 +1,45 @@
+package com.sivannsan.millidb.benchmark;
+
+import com.sivannsan.foundation.annotation.Nonnull;
+import com.sivannsan.millidata.MilliList;
+import com.sivannsan.millidata.MilliMap;
+import com.sivannsan.millidata.MilliValue;
+
+/**
+ * The document contents used as inputs of the benchmarks
+ */
+public enum Documents {
+    /**
+     * About 200 bytes
+     */
+    SMALL(4),
+    /**
+     * About 50 kilobytes
+     */
+    MEDIUM(1000),
+    /**
+     * About 4 megabytes
+     */
+    LARGE(80000);
+
+    private final int entries;
+
+    Documents(int entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * @return  a new content with the entries of the size, each a small user record
+     */
+    @Nonnull
+    public MilliMap create() {
+        MilliMap content = new MilliMap();
+        for (int i = 0; i < entries; i++) {
+            MilliList tags = new MilliList();
+            tags.add(new MilliValue("tag-" + i % 7));
+            tags.add(new MilliValue("tag-" + i % 11));
+            content.put("user-" + i, new MilliMap("name", new MilliValue("User number " + i)).append("age", new MilliValue(18 + i % 60)).append("tags", tags));
+        }
+        return content;
+    }
+}
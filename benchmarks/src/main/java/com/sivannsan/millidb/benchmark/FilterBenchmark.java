@@ -0,0 +1,61 @@
+package com.sivannsan.millidb.benchmark;
+
+import com.sivannsan.millidata.MilliList;
+import com.sivannsan.millidata.MilliMap;
+import com.sivannsan.millidata.MilliValue;
+import com.sivannsan.millidb.MilliDBFilter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization and parsing of the filters sent with LIST, from a single SuperOf carrying a document to a composed filter
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FilterBenchmark {
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public Documents document;
+
+    private MilliDBFilter superOf;
+    private MilliDBFilter composed;
+    private MilliMap superOfMap;
+    private MilliMap composedMap;
+
+    @Setup
+    public void setup() {
+        superOf = MilliDBFilter.superOf(document.create());
+        composed = MilliDBFilter.and(
+                MilliDBFilter.between("user-0.age", new MilliValue(18), new MilliValue(40)),
+                MilliDBFilter.or(MilliDBFilter.exists("user-1.tags"), MilliDBFilter.not(MilliDBFilter.equalsAt("user-0.name", new MilliValue("User number 0")))),
+                MilliDBFilter.in("user-2.tags", Arrays.asList(new MilliValue("tag-0"), new MilliValue("tag-1"), new MilliList()))
+        );
+        superOfMap = superOf.toMilliMap();
+        composedMap = composed.toMilliMap();
+    }
+
+    @Benchmark
+    public MilliMap superOfToMilliMap() {
+        return superOf.toMilliMap();
+    }
+
+    @Benchmark
+    public MilliDBFilter superOfParse() {
+        return MilliDBFilter.Parser.parse(superOfMap);
+    }
+
+    @Benchmark
+    public MilliMap composedToMilliMap() {
+        return composed.toMilliMap();
+    }
+
+    @Benchmark
+    public MilliDBFilter composedParse() {
+        return MilliDBFilter.Parser.parse(composedMap);
+    }
+}
@@ -0,0 +1,151 @@
+package com.sivannsan.millidb.benchmark;
+
+import com.sivannsan.foundation.annotation.Nonnull;
+import com.sivannsan.millidata.MilliMap;
+import com.sivannsan.millidata.MilliValue;
+import com.sivannsan.millidb.*;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Drives a mix of reads, writes and lists from many threads through MilliDBConnector, then reports the throughput and the latency percentiles of each kind of operation</p>
+ * <p>Without --host, it starts a StandInServer in the same process, filled with the documents and delayed by --latency and --jitter</p>
+ *
+ * <p>Options, each followed by its value:</p>
+ * <p>--host, --port, --database, --user, --password: the server to load; --database defaults to "load"</p>
+ * <p>--threads (16), --duration (30) and --warmup (5) in seconds</p>
+ * <p>--read (80), --write (15), --list (5): the weights of the mix</p>
+ * <p>--documents (1000) and --size (SMALL, MEDIUM or LARGE): the documents written before the run</p>
+ * <p>--page (100): the page size of the lists</p>
+ * <p>--protocol (BINARY) and --pool (0 for a single multiplexed connection, or else the maximum size of a pool)</p>
+ * <p>--latency (0) and --jitter (0): the milliseconds of the embedded server</p>
+ */
+public final class LoadGenerator {
+    private LoadGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, MilliDBResultException {
+        Map<String, String> options = options(args);
+        String database = options.getOrDefault("database", "load");
+        int threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+        long duration = Long.parseLong(options.getOrDefault("duration", "30"));
+        long warmup = Long.parseLong(options.getOrDefault("warmup", "5"));
+        int read = Integer.parseInt(options.getOrDefault("read", "80"));
+        int write = Integer.parseInt(options.getOrDefault("write", "15"));
+        int list = Integer.parseInt(options.getOrDefault("list", "5"));
+        int documents = Integer.parseInt(options.getOrDefault("documents", "1000"));
+        Documents size = Documents.valueOf(options.getOrDefault("size", "SMALL").toUpperCase(Locale.ROOT));
+        int page = Integer.parseInt(options.getOrDefault("page", "100"));
+        MilliDBProtocol protocol = MilliDBProtocol.valueOf(options.getOrDefault("protocol", "BINARY").toUpperCase(Locale.ROOT));
+        int pool = Integer.parseInt(options.getOrDefault("pool", "0"));
+        if (read + write + list <= 0) throw new IllegalArgumentException("The mix needs at least one positive weight");
+
+        StandInServer server = null;
+        String host = options.get("host");
+        int port;
+        if (host == null) {
+            server = new StandInServer(database).latency(Long.parseLong(options.getOrDefault("latency", "0")), Long.parseLong(options.getOrDefault("jitter", "0")));
+            host = "127.0.0.1";
+            port = server.getPort();
+        } else {
+            port = Integer.parseInt(options.getOrDefault("port", "0"));
+        }
+        String user = options.getOrDefault("user", "load");
+        String password = options.getOrDefault("password", "load");
+        MilliDBConnectionSettings settings = new MilliDBConnectionSettings().protocol(protocol);
+        MilliDBDatabase db = pool > 0 ? MilliDBConnector.pool(host, port, database, user, password, new MilliDBPoolSettings().maxSize(pool), settings) : MilliDBConnector.connect(host, port, database, user, password, settings);
+        if (db == null) throw new IllegalStateException("Couldn't connect to " + host + ":" + port);
+
+        MilliDBLogger.info("Writing " + documents + " " + size + " documents...");
+        db.createRoot(MilliDBCollection.class, false);
+        MilliDBCollection root = db.getRoot().asMilliDBCollection();
+        MilliMap content = size.create();
+        List<MilliDBDocument> targets = new ArrayList<>();
+        for (int i = 0; i < documents; i++) {
+            root.create("document-" + i + ".mll", MilliDBDocument.class, false);
+            MilliDBDocument document = root.get("document-" + i + ".mll").asMilliDBDocument();
+            document.setContent(content);
+            targets.add(document);
+        }
+
+        MilliDBMetrics metrics = new MilliDBMetrics();
+        db.setMetricsListener(metrics);
+        LongAdder reads = new LongAdder();
+        LongAdder writes = new LongAdder();
+        LongAdder lists = new LongAdder();
+        LongAdder errors = new LongAdder();
+        long start = System.nanoTime();
+        long measured = start + TimeUnit.SECONDS.toNanos(warmup);
+        long end = measured + TimeUnit.SECONDS.toNanos(duration);
+        CountDownLatch done = new CountDownLatch(threads);
+        MilliDBLogger.info("Running " + threads + " threads for " + warmup + "s of warmup and " + duration + "s of measurement...");
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                boolean counting = false;
+                try {
+                    long now;
+                    while ((now = System.nanoTime()) < end) {
+                        counting = now >= measured;
+                        MilliDBDocument target = targets.get(random.nextInt(targets.size()));
+                        int dice = random.nextInt(read + write + list);
+                        try {
+                            if (dice < read) {
+                                target.fetch("user-" + random.nextInt(4));
+                                if (counting) reads.increment();
+                            } else if (dice < read + write) {
+                                target.set("user-" + random.nextInt(4) + ".age", new MilliValue(random.nextInt(100)));
+                                if (counting) writes.increment();
+                            } else {
+                                root.iterate(null, page).forEachRemaining(file -> {
+                                });
+                                if (counting) lists.increment();
+                            }
+                        } catch (MilliDBResultException e) {
+                            if (counting) errors.increment();
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "Load-" + t);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        TimeUnit.NANOSECONDS.sleep(measured - System.nanoTime());
+        metrics.reset();
+        done.await();
+        double seconds = duration;
+
+        System.out.println();
+        System.out.printf(Locale.ROOT, "%-8s %12s %12s %10s %10s %10s%n", "", "operations", "ops/s", "p50 ms", "p99 ms", "p999 ms");
+        report("read", reads.sum(), seconds, metrics, MilliDBQuery.Function.FETCH);
+        report("write", writes.sum(), seconds, metrics, MilliDBQuery.Function.SET);
+        report("list", lists.sum(), seconds, metrics, MilliDBQuery.Function.LIST);
+        long total = reads.sum() + writes.sum() + lists.sum();
+        System.out.printf(Locale.ROOT, "%-8s %12d %12.1f%n", "total", total, total / seconds);
+        System.out.println("errors " + errors.sum() + ", retries " + metrics.getRetries() + ", timeouts " + metrics.getTimeouts() + ", sent " + metrics.getBytesSent() / (1024 * 1024) + "MB, received " + metrics.getBytesReceived() / (1024 * 1024) + "MB");
+
+        db.close();
+        if (server != null) server.close();
+    }
+
+    private static void report(@Nonnull String name, long operations, double seconds, @Nonnull MilliDBMetrics metrics, @Nonnull MilliDBQuery.Function function) {
+        System.out.printf(Locale.ROOT, "%-8s %12d %12.1f %10.3f %10.3f %10.3f%n", name, operations, operations / seconds, metrics.getLatency(function, 0.5), metrics.getLatency(function, 0.99), metrics.getLatency(function, 0.999));
+    }
+
+    @Nonnull
+    private static Map<String, String> options(@Nonnull String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) throw new IllegalArgumentException("Expected '--option value' but got '" + args[i] + "'");
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+}
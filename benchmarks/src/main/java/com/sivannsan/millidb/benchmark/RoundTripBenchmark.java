@@ -0,0 +1,100 @@
+package com.sivannsan.millidb.benchmark;
+
+import com.sivannsan.millidata.MilliData;
+import com.sivannsan.millidata.MilliMap;
+import com.sivannsan.millidata.MilliValue;
+import com.sivannsan.millidb.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * The full round trips of fetch, set and list through MilliDBConnector against the StandInServer
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoundTripBenchmark {
+    private static final String DATABASE = "benchmark";
+    private static final int DOCUMENTS = 100;
+    private static final MilliValue AGE = new MilliValue(30);
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public Documents document;
+    @Param({"TEXT", "BINARY"})
+    public MilliDBProtocol protocol;
+    /**
+     * 0 to not compress; only used by BINARY
+     */
+    @Param({"0", "16384"})
+    public int compression;
+
+    private StandInServer server;
+    private MilliDBDatabase database;
+    private MilliDBDocument target;
+    private MilliDBCollection root;
+    private MilliMap content;
+    private MilliDBPreparedFetch preparedFetch;
+    private MilliDBPreparedSet preparedSet;
+
+    @Setup
+    public void setup() throws IOException, MilliDBResultException {
+        server = new StandInServer(DATABASE);
+        content = document.create();
+        server.put("document.mll", document.create());
+        for (int i = 0; i < DOCUMENTS; i++) server.put("listed-" + i + ".mll", new MilliMap());
+        database = MilliDBConnector.connect("127.0.0.1", server.getPort(), DATABASE, "benchmark", "benchmark", new MilliDBConnectionSettings().protocol(protocol).compression(compression, Deflater.BEST_SPEED));
+        if (database == null) throw new IllegalStateException("Couldn't connect to the loopback server");
+        root = database.getRoot().asMilliDBCollection();
+        target = database.get("document.mll").asMilliDBDocument();
+        preparedFetch = target.prepareFetch("user-{}");
+        preparedSet = target.prepareSet("user-{}.age");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        database.close();
+        server.close();
+    }
+
+    @Benchmark
+    public MilliData fetch() throws MilliDBResultException {
+        return target.fetchContent();
+    }
+
+    @Benchmark
+    public void set() throws MilliDBResultException {
+        target.setContent(content);
+    }
+
+    @Benchmark
+    public MilliData fetchEntry() throws MilliDBResultException {
+        return target.fetch("user-0");
+    }
+
+    @Benchmark
+    public MilliData preparedFetchEntry() throws MilliDBResultException {
+        return preparedFetch.fetch("0");
+    }
+
+    @Benchmark
+    public void setEntry() throws MilliDBResultException {
+        target.set("user-0.age", AGE);
+    }
+
+    @Benchmark
+    public void preparedSetEntry() throws MilliDBResultException {
+        preparedSet.set(AGE, "0");
+    }
+
+    @Benchmark
+    public List<MilliDBFile> list() throws MilliDBResultException {
+        return root.list();
+    }
+}
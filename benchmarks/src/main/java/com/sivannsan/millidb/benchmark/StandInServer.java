@@ -0,0 +1,746 @@
+package com.sivannsan.millidb.benchmark;
+
+import com.sivannsan.foundation.annotation.Nonnegative;
+import com.sivannsan.foundation.annotation.Nonnull;
+import com.sivannsan.foundation.common.Validate;
+import com.sivannsan.millidata.*;
+import com.sivannsan.millidb.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+import java.util.zip.Deflater;
+
+/**
+ * <p>An embeddable in-memory MilliDB server speaking the same protocol as MilliDBConnector, so that the connector can be measured and tuned without a deployment</p>
+ * <p>It serves one database whose files form a tree of collections and documents, answers every query function including the atomic mutations and the subscriptions, and negotiates the binary protocol and its compression unless disabled</p>
+ * <p>Every query is applied in the order it arrives on its socket; only its result is held back by the injected latency, so that a connection which pipelines its queries overlaps their latencies like it would against a real server</p>
+ * <p>The stored MilliData is never modified in place, which allows a result to be encoded while another query replaces the same document</p>
+ */
+@SuppressWarnings("unused")
+public final class StandInServer implements Closeable {
+    @Nonnull
+    private final String database;
+    @Nonnull
+    private final ServerSocketChannel server;
+    @Nonnull
+    private final ScheduledExecutorService delayer;
+    @Nonnull
+    private final Set<SocketChannel> clients = ConcurrentHashMap.newKeySet();
+    @Nonnull
+    private final Set<Watch> watches = ConcurrentHashMap.newKeySet();
+    @Nonnull
+    private final LongAdder queries = new LongAdder();
+    @Nonnull
+    private final long[] baseLatencies = new long[MilliDBQuery.Function.values().length];
+    @Nonnull
+    private final long[] jitterLatencies = new long[MilliDBQuery.Function.values().length];
+    private volatile String user;
+    private volatile String password;
+    private volatile boolean binary = true;
+    private volatile int compressionThreshold = 16 * 1024;
+    /**
+     * Null while the root does not exist
+     */
+    private volatile Node root = new CollectionNode();
+
+    /**
+     * Listen on an ephemeral port of the loopback interface
+     */
+    public StandInServer(@Nonnull String database) throws IOException {
+        this(database, new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    public StandInServer(@Nonnull String database, @Nonnull InetSocketAddress address) throws IOException {
+        this.database = Validate.nonnull(database);
+        this.server = ServerSocketChannel.open().bind(Validate.nonnull(address));
+        this.delayer = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "StandIn-Delayer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread acceptor = new Thread(this::accept, "StandIn-Acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Run a stand-alone server until the process is killed
+     *
+     * <p>Arguments: database [port] [base latency in milliseconds] [latency jitter in milliseconds]</p>
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: StandInServer <database> [port] [latency] [jitter]");
+            return;
+        }
+        StandInServer server = new StandInServer(args[0], new InetSocketAddress(args.length > 1 ? Integer.parseInt(args[1]) : 0));
+        server.latency(args.length > 2 ? Long.parseLong(args[2]) : 0, args.length > 3 ? Long.parseLong(args[3]) : 0);
+        MilliDBLogger.info("The stand-in MilliDB server of '" + args[0] + "' is listening on port " + server.getPort());
+        new CountDownLatch(1).await();
+    }
+
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Hold back the result of every query
+     *
+     * @param base      the milliseconds every result waits
+     * @param jitter    the upper bound of the random milliseconds added to the base
+     */
+    @Nonnull
+    public StandInServer latency(@Nonnegative long base, @Nonnegative long jitter) {
+        for (MilliDBQuery.Function function : MilliDBQuery.Function.values()) latency(function, base, jitter);
+        return this;
+    }
+
+    /**
+     * Hold back the results of the queries of the function, overriding the latency of every query
+     */
+    @Nonnull
+    public StandInServer latency(@Nonnull MilliDBQuery.Function function, @Nonnegative long base, @Nonnegative long jitter) {
+        baseLatencies[function.ordinal()] = Validate.nonnegative(base);
+        jitterLatencies[function.ordinal()] = Validate.nonnegative(jitter);
+        return this;
+    }
+
+    /**
+     * @param user  null to accept any credentials, which is the default
+     */
+    @Nonnull
+    public StandInServer credentials(String user, String password) {
+        this.user = user;
+        this.password = password;
+        return this;
+    }
+
+    /**
+     * @param binary    false to answer VERIFY without accepting the binary protocol, so that the connections stay on TEXT
+     */
+    @Nonnull
+    public StandInServer binary(boolean binary) {
+        this.binary = binary;
+        return this;
+    }
+
+    /**
+     * @param threshold the payload size in bytes from which the results are compressed for the clients offering it during VERIFY; 0 to not accept the compression
+     */
+    @Nonnull
+    public StandInServer compression(@Nonnegative int threshold) {
+        this.compressionThreshold = Validate.nonnegative(threshold);
+        return this;
+    }
+
+    /**
+     * Store the content of a document, creating the root and the missing parent collections
+     *
+     * @param path  relative to the root, delimited by slash
+     */
+    public void put(@Nonnull String path, @Nonnull MilliMap content) {
+        Node current = root;
+        if (!(current instanceof CollectionNode)) root = current = new CollectionNode();
+        String[] names = Validate.nonnull(path).split("/");
+        for (int i = 0; i < names.length - 1; i++) {
+            Node child = ((CollectionNode) current).children.computeIfAbsent(names[i], name -> new CollectionNode());
+            if (!(child instanceof CollectionNode)) throw new IllegalArgumentException("'" + names[i] + "' is a document");
+            current = child;
+        }
+        ((CollectionNode) current).children.put(names[names.length - 1], new DocumentNode(Validate.nonnull(content)));
+    }
+
+    /**
+     * @return  the number of queries answered so far, counting each sub-query of a BATCH
+     */
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    public int getConnections() {
+        return clients.size();
+    }
+
+    /**
+     * Close every client socket without answering their queries in flight, as if the network failed
+     */
+    public void dropConnections() {
+        for (SocketChannel client : clients) {
+            try {
+                client.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        dropConnections();
+        delayer.shutdownNow();
+    }
+
+    private void accept() {
+        try {
+            while (true) {
+                SocketChannel client = server.accept();
+                client.socket().setTcpNoDelay(true);
+                clients.add(client);
+                Thread thread = new Thread(() -> serve(client), "StandIn-Client");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void serve(@Nonnull SocketChannel client) {
+        Client state = new Client(client);
+        ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+        int scanned = 0;
+        try {
+            while (client.read(in) >= 0) {
+                in.flip();
+                while (true) {
+                    MilliDBCompression compression = state.compression;
+                    ByteBuffer inflated = compression == null ? null : compression.inflate(in, null);
+                    int position = in.position();
+                    MilliDBQuery query = inflated != null ? state.protocol.decodeQuery(inflated) : state.protocol.decodeQuery(in, position + scanned);
+                    if (query == null) {
+                        scanned = in.limit() - position;
+                        break;
+                    }
+                    scanned = 0;
+                    MilliDBResult result = handle(state, query);
+                    MilliDBProtocol protocol = state.protocol;
+                    if (query.getFunction() == MilliDBQuery.Function.VERIFY) {
+                        MilliMap verified = result.getMetadata().asMilliMap(new MilliMap());
+                        if (verified.get("protocol").isMilliValue()) state.protocol = MilliDBProtocol.BINARY;
+                        if (verified.get("compression").isMilliValue()) state.compression = new MilliDBCompression(compressionThreshold, Deflater.BEST_SPEED);
+                    }
+                    if (query.getFunction() == MilliDBQuery.Function.CLOSE) {
+                        state.write(protocol, result);
+                        return;
+                    }
+                    long delay = delay(query.getFunction());
+                    if (delay <= 0) {
+                        state.write(protocol, result);
+                    } else {
+                        delayer.schedule(() -> {
+                            try {
+                                state.write(protocol, result);
+                            } catch (IOException ignored) {
+                            }
+                        }, delay, TimeUnit.MILLISECONDS);
+                    }
+                }
+                if (in.position() == 0 && in.limit() == in.capacity()) {
+                    ByteBuffer bigger = ByteBuffer.allocate(in.capacity() * 2);
+                    bigger.put(in);
+                    in = bigger;
+                } else {
+                    in.compact();
+                }
+            }
+        } catch (IOException | MilliDBQueryParsedException | IllegalArgumentException ignored) {
+        } finally {
+            watches.removeIf(watch -> watch.client == state);
+            clients.remove(client);
+            try {
+                client.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private long delay(@Nonnull MilliDBQuery.Function function) {
+        long base = baseLatencies[function.ordinal()];
+        long jitter = jitterLatencies[function.ordinal()];
+        return jitter > 0 ? base + ThreadLocalRandom.current().nextLong(jitter + 1) : base;
+    }
+
+    @Nonnull
+    private MilliDBResult handle(@Nonnull Client client, @Nonnull MilliDBQuery query) {
+        queries.increment();
+        long id = query.getID();
+        MilliData metadata = query.getMetadata();
+        MilliMap map = metadata.asMilliMap(new MilliMap());
+        switch (query.getFunction()) {
+            case VERIFY: {
+                String user = this.user;
+                if (user != null && (!user.equals(string(map, "user")) || !Objects.equals(password, string(map, "password")))) {
+                    return new MilliDBResult(id, true, new MilliMap("succeed", new MilliValue(false)).append("reason", new MilliValue("Invalid user or password")));
+                }
+                if (!database.equals(string(map, "database"))) {
+                    return new MilliDBResult(id, true, new MilliMap("succeed", new MilliValue(false)).append("reason", new MilliValue("Unknown database '" + string(map, "database") + "'")));
+                }
+                MilliMap result = new MilliMap("succeed", new MilliValue(true));
+                if (binary) {
+                    for (MilliData protocol : map.get("protocols").asMilliList(new MilliList())) {
+                        if (protocol.asMilliValue(new MilliValue()).asString().equals(MilliDBProtocol.BINARY.toString())) result.put("protocol", new MilliValue(MilliDBProtocol.BINARY.toString()));
+                    }
+                    for (MilliData compression : map.get("compressions").asMilliList(new MilliList())) {
+                        if (compressionThreshold > 0 && result.get("protocol").isMilliValue() && compression.asMilliValue(new MilliValue()).asString().equals(MilliDBCompression.DEFLATE)) result.put("compression", new MilliValue(MilliDBCompression.DEFLATE));
+                    }
+                }
+                return new MilliDBResult(id, true, result);
+            }
+            case GET: {
+                Node node = find(metadata.asMilliValue(new MilliValue()).asString());
+                return new MilliDBResult(id, true, new MilliValue(node == null ? "none" : node instanceof DocumentNode ? "document" : "collection"));
+            }
+            case CREATE: {
+                String path = string(map, "path");
+                Node before = find(path);
+                boolean succeed = create(path, string(map, "type"), map.get("force").asMilliValue(new MilliValue(false)).asBoolean());
+                Node after = find(path);
+                if (succeed && after != before) publish(MilliDBEvent.Type.CREATE, path, "", after);
+                return new MilliDBResult(id, succeed, MilliNull.INSTANCE);
+            }
+            case DELETE: {
+                String path = metadata.isMilliValue() ? metadata.asMilliValue().asString() : string(map, "path");
+                Node before = find(path);
+                boolean succeed = delete(path);
+                if (succeed) publish(MilliDBEvent.Type.DELETE, path, "", before);
+                return new MilliDBResult(id, succeed, MilliNull.INSTANCE);
+            }
+            case FETCH: {
+                Node node = find(string(map, "path"));
+                if (!(node instanceof DocumentNode)) return new MilliDBResult(id, false, MilliNull.INSTANCE);
+                MilliMap content = ((DocumentNode) node).content;
+                if (map.get("data_paths").isMilliList()) {
+                    MilliMap values = new MilliMap();
+                    for (MilliData path : map.get("data_paths").asMilliList()) {
+                        String dataPath = path.asMilliValue(new MilliValue()).asString();
+                        values.put(dataPath, resolve(content, dataPath));
+                    }
+                    return new MilliDBResult(id, true, values);
+                }
+                return new MilliDBResult(id, true, resolve(content, string(map, "data_path")));
+            }
+            case SET: {
+                Node node = find(string(map, "path"));
+                if (!(node instanceof DocumentNode)) return new MilliDBResult(id, false, MilliNull.INSTANCE);
+                boolean succeed = ((DocumentNode) node).set(string(map, "data_path"), map.get("data_value"));
+                if (succeed) publish(MilliDBEvent.Type.CHANGE, string(map, "path"), string(map, "data_path"), node);
+                return new MilliDBResult(id, succeed, MilliNull.INSTANCE);
+            }
+            case INCREMENT:
+            case APPEND:
+            case REMOVE:
+            case MERGE:
+            case REMOVE_KEY: {
+                Node node = find(string(map, "path"));
+                if (!(node instanceof DocumentNode)) return new MilliDBResult(id, false, MilliNull.INSTANCE);
+                MilliDBResult result = mutate(id, query.getFunction(), (DocumentNode) node, string(map, "data_path"), map.get("data_value"));
+                if (result.isSucceed()) publish(MilliDBEvent.Type.CHANGE, string(map, "path"), string(map, "data_path"), node);
+                return result;
+            }
+            case WATCH: {
+                MilliDBFilter filter = map.get("filter").isMilliMap() ? MilliDBFilter.Parser.parse(map.get("filter").asMilliMap()) : null;
+                watches.add(new Watch(client, id, string(map, "path"), filter));
+                return new MilliDBResult(id, true, MilliNull.INSTANCE);
+            }
+            case UNWATCH: {
+                long watch = metadata.asMilliValue(new MilliValue(0)).asInteger64();
+                return new MilliDBResult(id, watches.removeIf(w -> w.client == client && w.id == watch), MilliNull.INSTANCE);
+            }
+            case LIST:
+                return list(id, map);
+            case CLOSE:
+                return new MilliDBResult(id, true, MilliNull.INSTANCE);
+            case BATCH: {
+                MilliList results = new MilliList();
+                for (MilliData sub : map.get("queries").asMilliList(new MilliList())) {
+                    try {
+                        results.add(handle(client, MilliDBQuery.Parser.parse(sub.asMilliMap(new MilliMap()))).toMilliMap());
+                    } catch (MilliDBQueryParsedException e) {
+                        results.add(new MilliDBResult(0, false, MilliNull.INSTANCE).toMilliMap());
+                    }
+                }
+                return new MilliDBResult(id, true, new MilliMap("results", results));
+            }
+            default:
+                return new MilliDBResult(id, false, MilliNull.INSTANCE);
+        }
+    }
+
+    /**
+     * Push the event to the subscriptions which cover the file, or which are inside a created or deleted collection
+     *
+     * @param node  the file after the change, or before the deletion
+     */
+    private void publish(@Nonnull MilliDBEvent.Type type, @Nonnull String path, @Nonnull String dataPath, Node node) {
+        if (watches.isEmpty()) return;
+        MilliMap event = new MilliDBEvent(type, path, dataPath).toMilliMap();
+        MilliMap content = node instanceof DocumentNode ? ((DocumentNode) node).content : null;
+        for (Watch watch : watches) {
+            boolean covers = path.equals(watch.path) || path.startsWith(watch.path + "/") || (type != MilliDBEvent.Type.CHANGE && watch.path.startsWith(path + "/"));
+            if (!covers || (watch.filter != null && (content == null || !watch.filter.test(content)))) continue;
+            try {
+                watch.client.write(watch.client.protocol, new MilliDBResult(watch.id, true, event, true));
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Apply an atomic mutation while the document is locked, the same as a real server would
+     */
+    @Nonnull
+    private static MilliDBResult mutate(long id, @Nonnull MilliDBQuery.Function function, @Nonnull DocumentNode document, @Nonnull String path, @Nonnull MilliData argument) {
+        int[] count = new int[1];
+        MilliData value;
+        switch (function) {
+            case INCREMENT:
+                value = document.update(path, current -> current instanceof MilliNull || current.isMilliValue() ? add(current, argument) : null);
+                return new MilliDBResult(id, value != null, value == null ? MilliNull.INSTANCE : value);
+            case APPEND:
+                value = document.update(path, current -> {
+                    if (!current.isMilliList() && !(current instanceof MilliNull)) return null;
+                    MilliList list = new MilliList();
+                    if (current.isMilliList()) for (MilliData element : current.asMilliList()) list.add(element);
+                    list.add(argument);
+                    count[0] = list.size();
+                    return list;
+                });
+                return new MilliDBResult(id, value != null, value == null ? MilliNull.INSTANCE : new MilliValue(count[0]));
+            case REMOVE:
+                value = document.update(path, current -> {
+                    if (!current.isMilliList()) return current instanceof MilliNull ? current : null;
+                    MilliList list = new MilliList();
+                    for (MilliData element : current.asMilliList()) {
+                        if (element.equals(argument)) count[0]++;
+                        else list.add(element);
+                    }
+                    return count[0] == 0 ? current : list;
+                });
+                return new MilliDBResult(id, value != null, value == null ? MilliNull.INSTANCE : new MilliValue(count[0]));
+            case MERGE:
+                value = document.update(path, current -> {
+                    if (!argument.isMilliMap() || (!current.isMilliMap() && !(current instanceof MilliNull))) return null;
+                    MilliMap map = current.isMilliMap() ? DocumentNode.copy(current.asMilliMap()) : new MilliMap();
+                    for (String key : argument.asMilliMap().keySet()) map.put(key, argument.asMilliMap().get(key));
+                    return map;
+                });
+                return new MilliDBResult(id, value != null, MilliNull.INSTANCE);
+            case REMOVE_KEY: {
+                if (path.equals("")) return new MilliDBResult(id, false, MilliNull.INSTANCE);
+                int dot = path.lastIndexOf('.');
+                String key = path.substring(dot + 1);
+                value = document.update(dot < 0 ? "" : path.substring(0, dot), current -> {
+                    if (current.isMilliMap()) {
+                        if (!current.asMilliMap().keySet().contains(key)) return current;
+                        MilliMap map = new MilliMap();
+                        for (String other : current.asMilliMap().keySet()) if (!other.equals(key)) map.put(other, current.asMilliMap().get(other));
+                        count[0] = 1;
+                        return map;
+                    }
+                    if (current.isMilliList()) {
+                        int index;
+                        try {
+                            index = Integer.parseInt(key);
+                        } catch (NumberFormatException e) {
+                            return current;
+                        }
+                        if (index < 0 || index >= current.asMilliList().size()) return current;
+                        MilliList list = new MilliList();
+                        for (int i = 0; i < current.asMilliList().size(); i++) if (i != index) list.add(current.asMilliList().get(i));
+                        count[0] = 1;
+                        return list;
+                    }
+                    return current;
+                });
+                return new MilliDBResult(id, value != null, new MilliValue(count[0] == 1));
+            }
+            default:
+                return new MilliDBResult(id, false, MilliNull.INSTANCE);
+        }
+    }
+
+    /**
+     * @return  the sum as an integer if both are integers, otherwise as a fractional number, or null if either is not a number
+     */
+    private static MilliData add(@Nonnull MilliData current, @Nonnull MilliData delta) {
+        String a = current instanceof MilliNull ? "0" : current.asMilliValue().asString();
+        String b = delta.asMilliValue(new MilliValue()).asString();
+        try {
+            return new MilliValue(Long.parseLong(a) + Long.parseLong(b));
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            return new MilliValue(Double.parseDouble(a) + Double.parseDouble(b));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Nonnull
+    private MilliDBResult list(long id, @Nonnull MilliMap map) {
+        Node node = find(string(map, "path"));
+        if (!(node instanceof CollectionNode)) return new MilliDBResult(id, false, MilliNull.INSTANCE);
+        MilliDBFilter filter = map.get("filter").isMilliMap() ? MilliDBFilter.Parser.parse(map.get("filter").asMilliMap()) : null;
+        int limit = map.get("limit").isMilliValue() ? map.get("limit").asMilliValue().asInteger32() : 0;
+        String cursor = map.get("cursor").isMilliValue() ? map.get("cursor").asMilliValue().asString() : "";
+        boolean contents = map.get("contents").asMilliValue(new MilliValue(false)).asBoolean();
+        MilliList projections = map.get("projections").isMilliList() ? map.get("projections").asMilliList() : null;
+        MilliList documents = new MilliList();
+        MilliList collections = new MilliList();
+        MilliMap values = new MilliMap();
+        String next = null;
+        int count = 0;
+        for (Map.Entry<String, Node> entry : ((CollectionNode) node).children.tailMap(cursor, true).entrySet()) {
+            Node child = entry.getValue();
+            if (filter != null && (!(child instanceof DocumentNode) || !filter.test(((DocumentNode) child).content))) continue;
+            if (limit > 0 && count == limit) {
+                next = entry.getKey();
+                break;
+            }
+            count++;
+            if (child instanceof CollectionNode) {
+                collections.add(new MilliValue(entry.getKey()));
+                continue;
+            }
+            documents.add(new MilliValue(entry.getKey()));
+            MilliMap content = ((DocumentNode) child).content;
+            if (projections != null) {
+                MilliMap projected = new MilliMap();
+                for (MilliData path : projections) {
+                    String dataPath = path.asMilliValue(new MilliValue()).asString();
+                    projected.put(dataPath, resolve(content, dataPath));
+                }
+                values.put(entry.getKey(), projected);
+            } else if (contents) {
+                values.put(entry.getKey(), content);
+            }
+        }
+        MilliMap result = new MilliMap("documents", documents).append("collections", collections);
+        if (contents || projections != null) result.put("contents", values);
+        if (next != null) result.put("cursor", new MilliValue(next));
+        return new MilliDBResult(id, true, result);
+    }
+
+    private boolean create(@Nonnull String path, @Nonnull String type, boolean force) {
+        if (!type.equals("document") && !type.equals("collection")) return false;
+        if (path.equals(database)) {
+            synchronized (this) {
+                Node current = root;
+                if (current != null && (type.equals(current.type()) || !force)) return type.equals(current.type());
+                root = newNode(type);
+                return true;
+            }
+        }
+        int slash = path.lastIndexOf('/');
+        if (slash < 0) return false;
+        Node parent = find(path.substring(0, slash));
+        if (!(parent instanceof CollectionNode)) return false;
+        ConcurrentNavigableMap<String, Node> children = ((CollectionNode) parent).children;
+        String name = path.substring(slash + 1);
+        while (true) {
+            Node current = children.get(name);
+            if (current == null) {
+                if (children.putIfAbsent(name, newNode(type)) == null) return true;
+            } else if (type.equals(current.type())) {
+                return true;
+            } else if (!force) {
+                return false;
+            } else if (children.replace(name, current, newNode(type))) {
+                return true;
+            }
+        }
+    }
+
+    private boolean delete(@Nonnull String path) {
+        if (path.equals(database)) {
+            synchronized (this) {
+                boolean existed = root != null;
+                root = null;
+                return existed;
+            }
+        }
+        int slash = path.lastIndexOf('/');
+        if (slash < 0) return false;
+        Node parent = find(path.substring(0, slash));
+        return parent instanceof CollectionNode && ((CollectionNode) parent).children.remove(path.substring(slash + 1)) != null;
+    }
+
+    /**
+     * @param path  beginning with the database name
+     * @return      null if the file does not exist
+     */
+    private Node find(@Nonnull String path) {
+        String[] names = path.split("/");
+        if (!names[0].equals(database)) return null;
+        Node current = root;
+        for (int i = 1; i < names.length && current != null; i++) {
+            if (!(current instanceof CollectionNode)) return null;
+            current = ((CollectionNode) current).children.get(names[i]);
+        }
+        return current;
+    }
+
+    @Nonnull
+    private static Node newNode(@Nonnull String type) {
+        return type.equals("document") ? new DocumentNode(new MilliMap()) : new CollectionNode();
+    }
+
+    @Nonnull
+    private static String string(@Nonnull MilliMap map, @Nonnull String key) {
+        return map.get(key).asMilliValue(new MilliValue()).asString();
+    }
+
+    /**
+     * Follow the dot-delimited data path: a number is used for MilliList index first, then MilliMap key
+     */
+    @Nonnull
+    private static MilliData resolve(@Nonnull MilliData data, @Nonnull String path) {
+        if (path.equals("")) return data;
+        MilliData current = data;
+        for (String key : path.split("\\.", -1)) {
+            if (current.isMilliList()) {
+                MilliList list = current.asMilliList();
+                int index;
+                try {
+                    index = Integer.parseInt(key);
+                } catch (NumberFormatException e) {
+                    return MilliNull.INSTANCE;
+                }
+                current = index >= 0 && index < list.size() ? list.get(index) : MilliNull.INSTANCE;
+            } else if (current.isMilliMap()) {
+                current = current.asMilliMap().get(key);
+            } else {
+                return MilliNull.INSTANCE;
+            }
+        }
+        return current;
+    }
+
+    private static abstract class Node {
+        @Nonnull
+        abstract String type();
+    }
+
+    private static final class CollectionNode extends Node {
+        @Nonnull
+        private final ConcurrentNavigableMap<String, Node> children = new ConcurrentSkipListMap<>();
+
+        @Override
+        @Nonnull
+        String type() {
+            return "collection";
+        }
+    }
+
+    private static final class DocumentNode extends Node {
+        /**
+         * Replaced as a whole by every SET and never modified, so that it can be read without locking
+         */
+        @Nonnull
+        private volatile MilliMap content;
+
+        private DocumentNode(@Nonnull MilliMap content) {
+            this.content = content;
+        }
+
+        @Override
+        @Nonnull
+        String type() {
+            return "document";
+        }
+
+        private boolean set(@Nonnull String path, @Nonnull MilliData value) {
+            return update(path, current -> value) != null;
+        }
+
+        /**
+         * Copy the MilliMaps along the data path, creating the missing ones, and publish the new content with the changed MilliData
+         *
+         * @param change    given the current MilliData (MilliNull if missing), returns the new one, the same one to leave the content unchanged, or null to refuse
+         * @return          the new MilliData, or null if the data path goes through a MilliData which is not a MilliMap or the change is refused
+         */
+        private synchronized MilliData update(@Nonnull String path, @Nonnull UnaryOperator<MilliData> change) {
+            if (path.equals("")) {
+                MilliData value = change.apply(content);
+                if (value == null || !value.isMilliMap()) return null;
+                content = value.asMilliMap();
+                return value;
+            }
+            MilliMap copy = copy(content);
+            MilliMap current = copy;
+            String[] keys = path.split("\\.", -1);
+            for (int i = 0; i < keys.length - 1; i++) {
+                MilliData child = current.get(keys[i]);
+                if (!child.isMilliMap() && !(child instanceof MilliNull)) return null;
+                MilliMap next = child.isMilliMap() ? copy(child.asMilliMap()) : new MilliMap();
+                current.put(keys[i], next);
+                current = next;
+            }
+            MilliData old = current.get(keys[keys.length - 1]);
+            MilliData value = change.apply(old);
+            if (value == null || value == old) return value;
+            current.put(keys[keys.length - 1], value);
+            content = copy;
+            return value;
+        }
+
+        @Nonnull
+        private static MilliMap copy(@Nonnull MilliMap map) {
+            MilliMap copy = new MilliMap();
+            for (String key : map.keySet()) copy.put(key, map.get(key));
+            return copy;
+        }
+    }
+
+    private static final class Watch {
+        @Nonnull
+        private final Client client;
+        private final long id;
+        @Nonnull
+        private final String path;
+        private final MilliDBFilter filter;
+
+        private Watch(@Nonnull Client client, long id, @Nonnull String path, MilliDBFilter filter) {
+            this.client = client;
+            this.id = id;
+            this.path = path;
+            this.filter = filter;
+        }
+    }
+
+    /**
+     * The socket of a client, whose writes are serialized because delayed results are written by other threads
+     */
+    private static final class Client {
+        @Nonnull
+        private final SocketChannel channel;
+        @Nonnull
+        private volatile MilliDBProtocol protocol = MilliDBProtocol.TEXT;
+        /**
+         * Only inflates on the thread serving the client, and only compresses while writing
+         */
+        private volatile MilliDBCompression compression;
+        @Nonnull
+        private ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+
+        private Client(@Nonnull SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        private synchronized void write(@Nonnull MilliDBProtocol protocol, @Nonnull MilliDBResult result) throws IOException {
+            out.clear();
+            out = protocol.encode(result, out);
+            MilliDBCompression compression = this.compression;
+            if (compression != null && protocol == MilliDBProtocol.BINARY) compression.compress(out, 0, null);
+            out.flip();
+            while (out.hasRemaining()) channel.write(out);
+        }
+    }
+}
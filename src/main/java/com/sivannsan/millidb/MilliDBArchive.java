@@ -0,0 +1,222 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnull;
+import com.sivannsan.foundation.common.Validate;
+import com.sivannsan.millidata.MilliData;
+import com.sivannsan.millidata.MilliNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <p>The file format written by MilliDBCollection.exportTo and read by MilliDBCollection.importFrom</p>
+ * <p>The file starts with the magic bytes "MLDB" and the VERSION byte, followed by the records; a record is the varint length of the rest, the type byte (COLLECTION or DOCUMENT), the file path relative to the exported collection as a string and, for a document, its content as a MilliData, all in the encoding of MilliDBBinaryCodec</p>
+ * <p>A collection is always recorded before the files inside it</p>
+ */
+@SuppressWarnings("unused")
+public final class MilliDBArchive {
+    public static final byte VERSION = 1;
+    public static final byte COLLECTION = 0;
+    public static final byte DOCUMENT = 1;
+    private static final byte[] MAGIC = {'M', 'L', 'D', 'B'};
+
+    private MilliDBArchive() {
+    }
+
+    /**
+     * Create the file, or truncate it if it exists, and write the header
+     */
+    @Nonnull
+    public static Writer create(@Nonnull Path file) throws IOException {
+        FileChannel channel = FileChannel.open(Validate.nonnull(file), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 1).put(MAGIC).put(VERSION);
+            header.flip();
+            while (header.hasRemaining()) channel.write(header);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new Writer(channel);
+    }
+
+    /**
+     * Open the file and check its header
+     *
+     * @throws IOException  also if the file is not in this format or of a newer version
+     */
+    @Nonnull
+    public static Reader open(@Nonnull Path file) throws IOException {
+        FileChannel channel = FileChannel.open(Validate.nonnull(file), StandardOpenOption.READ);
+        Reader reader = new Reader(channel);
+        try {
+            if (!reader.fill(MAGIC.length + 1)) throw new IOException("Not a MilliDB archive: " + file);
+            for (byte b : MAGIC) if (reader.buffer.get() != b) throw new IOException("Not a MilliDB archive: " + file);
+            byte version = reader.buffer.get();
+            if (version != VERSION) throw new IOException("Unsupported MilliDB archive version: " + version);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return reader;
+    }
+
+    /**
+     * Appends the records; safe to be used by several threads at the same time, as each record is written at once
+     */
+    public static final class Writer implements Closeable {
+        @Nonnull
+        private final FileChannel channel;
+
+        private Writer(@Nonnull FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * @param path  the file path relative to the exported collection
+         */
+        public void writeCollection(@Nonnull String path) throws IOException {
+            write(COLLECTION, path, null);
+        }
+
+        /**
+         * @param path  the file path relative to the exported collection
+         */
+        public void writeDocument(@Nonnull String path, @Nonnull MilliData content) throws IOException {
+            write(DOCUMENT, path, Validate.nonnull(content));
+        }
+
+        private void write(byte type, @Nonnull String path, MilliData content) throws IOException {
+            int length = 1 + MilliDBBinaryCodec.sizeOf(Validate.nonnull(path)) + (content == null ? 0 : MilliDBBinaryCodec.sizeOf(content));
+            ByteBuffer record = ByteBuffer.allocate(MilliDBBinaryCodec.sizeOf(length) + length);
+            MilliDBBinaryCodec.writeVarint(record, length);
+            record.put(type);
+            MilliDBBinaryCodec.writeString(record, path);
+            if (content != null) MilliDBBinaryCodec.writeData(record, content);
+            record.flip();
+            synchronized (this) {
+                while (record.hasRemaining()) channel.write(record);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads the records in order through a buffer which grows to the largest record
+     */
+    public static final class Reader implements Closeable {
+        @Nonnull
+        private final FileChannel channel;
+        @Nonnull
+        private ByteBuffer buffer = ByteBuffer.allocate(65536);
+
+        private Reader(@Nonnull FileChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        /**
+         * @return  null once the end of the file is reached
+         * @throws IOException  also if the file is truncated or malformed
+         */
+        public Record next() throws IOException {
+            if (!buffer.hasRemaining() && !fill(1)) return null;
+            long length;
+            while (true) {
+                int start = buffer.position();
+                try {
+                    length = MilliDBBinaryCodec.readVarint(buffer);
+                    break;
+                } catch (BufferUnderflowException e) {
+                    buffer.position(start);
+                    if (!fill(buffer.remaining() + 1)) throw new IOException("The MilliDB archive is truncated");
+                }
+            }
+            if (length < 1 || length > Integer.MAX_VALUE - 16) throw new IOException("Invalid record length: " + length);
+            if (!fill((int) length)) throw new IOException("The MilliDB archive is truncated");
+            int end = buffer.position() + (int) length;
+            try {
+                byte type = buffer.get();
+                String path = MilliDBBinaryCodec.readString(buffer);
+                MilliData content;
+                if (type == COLLECTION) content = MilliNull.INSTANCE;
+                else if (type == DOCUMENT) content = MilliDBBinaryCodec.readData(buffer);
+                else throw new IOException("Invalid record type: " + type);
+                if (buffer.position() != end) throw new IOException("The record of '" + path + "' does not match its length");
+                return new Record(type, path, content);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Malformed record: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Read until at least the required number of bytes remain, growing the buffer if needed
+         *
+         * @return  false if the end of the file is reached before
+         */
+        private boolean fill(int required) throws IOException {
+            if (buffer.remaining() >= required) return true;
+            buffer.compact();
+            if (buffer.capacity() < required) buffer = MilliDBBinaryCodec.ensure(buffer, required - buffer.position());
+            while (buffer.position() < required) {
+                if (channel.read(buffer) < 0) {
+                    buffer.flip();
+                    return false;
+                }
+            }
+            buffer.flip();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    public static final class Record {
+        private final byte type;
+        @Nonnull
+        private final String path;
+        @Nonnull
+        private final MilliData content;
+
+        private Record(byte type, @Nonnull String path, @Nonnull MilliData content) {
+            this.type = type;
+            this.path = path;
+            this.content = content;
+        }
+
+        /**
+         * @return  COLLECTION or DOCUMENT
+         */
+        public byte getType() {
+            return type;
+        }
+
+        /**
+         * @return  the file path relative to the exported collection, delimited by slash
+         */
+        @Nonnull
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return  MilliNull for a collection
+         */
+        @Nonnull
+        public MilliData getContent() {
+            return content;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnull;
+import com.sivannsan.millidata.MilliData;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Collects operations so that they are sent together in a single BATCH query
+ */
+@SuppressWarnings("unused")
+public interface MilliDBBatch {
+    @Nonnull
+    Operation<MilliData> fetch(@Nonnull MilliDBDocument document, @Nonnull String path);
+
+    @Nonnull
+    Operation<Void> set(@Nonnull MilliDBDocument document, @Nonnull String path, @Nonnull MilliData value);
+
+    /**
+     * @param name  the same as MilliDBCollection.create
+     * @param type  the same as MilliDBCollection.create
+     * @param force the same as MilliDBCollection.create
+     */
+    @Nonnull
+    Operation<Void> create(@Nonnull MilliDBCollection collection, @Nonnull String name, @Nonnull Class<? extends MilliDBFile> type, boolean force);
+
+    /**
+     * Deletion of MilliDBNone is completed immediately as succeed
+     */
+    @Nonnull
+    Operation<Void> delete(@Nonnull MilliDBFile file);
+
+    @Nonnull
+    List<Operation<?>> getOperations();
+
+    /**
+     * Send every added operation in one query; afterwards no more operation can be added
+     *
+     * @throws MilliDBResultException   if the BATCH itself fails; the failure of a single operation is reported by the operation
+     */
+    void execute() throws MilliDBResultException;
+
+    /**
+     * The same as execute method without blocking the calling thread
+     */
+    @Nonnull
+    CompletableFuture<Void> executeAsync();
+
+    interface Operation<T> {
+        @Nonnull
+        MilliDBQuery getQuery();
+
+        /**
+         * @return  false if the batch has not been executed yet or this operation has failed
+         */
+        boolean isSucceed();
+
+        /**
+         * @return  the value of this operation; null for the operations without a value
+         * @throws MilliDBResultException   if the batch has not been executed yet or this operation has failed
+         */
+        T get() throws MilliDBResultException;
+
+        /**
+         * @return  the future which is completed once the batch is executed
+         */
+        @Nonnull
+        CompletableFuture<T> getFuture();
+    }
+}
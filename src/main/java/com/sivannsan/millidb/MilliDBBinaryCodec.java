@@ -0,0 +1,351 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnull;
+import com.sivannsan.foundation.common.Validate;
+import com.sivannsan.millidata.*;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>The compact binary form of MilliData, MilliDBQuery and MilliDBResult used by MilliDBProtocol.BINARY</p>
+ * <p>A frame is the varint length of the rest, a flags byte (0 for a plain frame, MilliDBCompression.DEFLATED for a compressed one, which must be inflated before decoding), and the payload</p>
+ * <p>The payload of a query is the varint ID, the function string and the metadata; the payload of a result is the varint ID, a byte whose bit 1 is set if succeed and bit 2 if the result is a pushed event, and the metadata</p>
+ * <p>A MilliData is a type tag followed by nothing for MilliNull, a string for MilliValue, a varint count and the key-value pairs for MilliMap, or a varint count and the elements for MilliList; a string is its varint UTF-8 length and the UTF-8 bytes</p>
+ */
+@SuppressWarnings("unused")
+public final class MilliDBBinaryCodec {
+    public static final byte NULL = 0;
+    public static final byte VALUE = 1;
+    public static final byte MAP = 2;
+    public static final byte LIST = 3;
+
+    private MilliDBBinaryCodec() {
+    }
+
+    /**
+     * Append the query as a frame, allocating a larger buffer if the remaining space is not enough
+     *
+     * @param buffer    in write mode
+     * @return          the buffer holding the appended frame, in write mode
+     */
+    @Nonnull
+    public static ByteBuffer encode(@Nonnull MilliDBQuery query, @Nonnull ByteBuffer buffer) {
+        if (query.getTemplate() != null) return query.getTemplate().encode(query.getID(), query.getTemplateDataPath(), query.getTemplateValue(), buffer);
+        String function = query.getFunction().toString();
+        int payload = sizeOf(query.getID()) + sizeOf(function) + sizeOf(query.getMetadata());
+        buffer = beginFrame(buffer, payload);
+        writeVarint(buffer, query.getID());
+        writeString(buffer, function);
+        writeData(buffer, query.getMetadata());
+        return buffer;
+    }
+
+    /**
+     * Append the result as a frame, allocating a larger buffer if the remaining space is not enough
+     *
+     * @param buffer    in write mode
+     * @return          the buffer holding the appended frame, in write mode
+     */
+    @Nonnull
+    public static ByteBuffer encode(@Nonnull MilliDBResult result, @Nonnull ByteBuffer buffer) {
+        int payload = sizeOf(result.getID()) + 1 + sizeOf(result.getMetadata());
+        buffer = beginFrame(buffer, payload);
+        writeVarint(buffer, result.getID());
+        buffer.put((byte) ((result.isSucceed() ? 1 : 0) | (result.isEvent() ? 2 : 0)));
+        writeData(buffer, result.getMetadata());
+        return buffer;
+    }
+
+    /**
+     * @param buffer    in read mode; its position is moved past the frame only if the whole frame is available
+     * @return          null if the buffer does not hold the whole frame yet
+     */
+    public static MilliDBQuery decodeQuery(@Nonnull ByteBuffer buffer) throws MilliDBQueryParsedException {
+        int end;
+        try {
+            end = frame(buffer);
+        } catch (IllegalArgumentException e) {
+            throw new MilliDBQueryParsedException("Malformed query frame!");
+        }
+        if (end < 0) return null;
+        int limit = buffer.limit();
+        buffer.limit(end);
+        try {
+            long id = readVarint(buffer);
+            MilliDBQuery.Function function = MilliDBQuery.Function.fromString(readString(buffer));
+            if (function == null) throw new MilliDBQueryParsedException("The parsed function is invalid!");
+            return new MilliDBQuery(id, function, readData(buffer));
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new MilliDBQueryParsedException("Malformed query frame!");
+        } finally {
+            buffer.limit(limit);
+            buffer.position(end);
+        }
+    }
+
+    /**
+     * <p>The ID and the success are read straight from the buffer, while a MilliMap or MilliList metadata is only checked and copied, and is parsed the first time MilliDBResult.getMetadata is called</p>
+     * <p>The metadata is copied rather than sliced, as the buffer is compacted and filled again once the frame is consumed; the copy still costs far less than the parsing it defers</p>
+     *
+     * @param buffer    in read mode; its position is moved past the frame only if the whole frame is available
+     * @return          null if the buffer does not hold the whole frame yet
+     */
+    public static MilliDBResult decodeResult(@Nonnull ByteBuffer buffer) throws MilliDBResultException {
+        int end;
+        try {
+            end = frame(buffer);
+        } catch (IllegalArgumentException e) {
+            throw new MilliDBResultException("Malformed result frame!");
+        }
+        if (end < 0) return null;
+        int limit = buffer.limit();
+        buffer.limit(end);
+        try {
+            long id = readVarint(buffer);
+            byte status = buffer.get();
+            boolean succeed = (status & 1) != 0;
+            boolean event = (status & 2) != 0;
+            byte tag = buffer.get(buffer.position());
+            if (tag != MAP && tag != LIST) return new MilliDBResult(id, succeed, readData(buffer), event);
+            int start = buffer.position();
+            skipData(buffer);
+            byte[] encoded = new byte[buffer.position() - start];
+            buffer.position(start);
+            buffer.get(encoded);
+            return new MilliDBResult(id, succeed, encoded, event);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new MilliDBResultException("Malformed result frame!");
+        } finally {
+            buffer.limit(limit);
+            buffer.position(end);
+        }
+    }
+
+    @Nonnull
+    static ByteBuffer beginFrame(@Nonnull ByteBuffer buffer, int payload) {
+        int length = 1 + payload;
+        buffer = ensure(buffer, sizeOf(length) + length);
+        writeVarint(buffer, length);
+        buffer.put((byte) 0);
+        return buffer;
+    }
+
+    /**
+     * Move the position to the payload of the next frame without copying it
+     *
+     * @return  the end of the payload, or -1 if the frame is incomplete; the position is kept if the frame is incomplete or malformed
+     */
+    private static int frame(@Nonnull ByteBuffer buffer) {
+        int start = buffer.position();
+        long length;
+        try {
+            length = readVarint(buffer);
+        } catch (BufferUnderflowException e) {
+            buffer.position(start);
+            return -1;
+        } catch (IllegalArgumentException e) {
+            buffer.position(start);
+            throw e;
+        }
+        if (length < 1 || length > Integer.MAX_VALUE) {
+            buffer.position(start);
+            throw new IllegalArgumentException("Invalid frame length: " + length);
+        }
+        if (buffer.remaining() < length) {
+            buffer.position(start);
+            return -1;
+        }
+        byte flags = buffer.get();
+        if (flags != 0) {
+            buffer.position(start);
+            throw new IllegalArgumentException("Unsupported frame flags: " + flags);
+        }
+        return buffer.position() + (int) length - 1;
+    }
+
+    /**
+     * @return  the buffer itself if it has the required remaining space, or else a larger copy of it in write mode
+     */
+    @Nonnull
+    public static ByteBuffer ensure(@Nonnull ByteBuffer buffer, int required) {
+        if (buffer.remaining() >= required) return buffer;
+        int capacity = Math.max(buffer.capacity() * 2, buffer.position() + required);
+        ByteBuffer larger = buffer.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+
+    public static int sizeOf(@Nonnull MilliData data) {
+        if (data.isMilliValue()) return 1 + sizeOf(data.asMilliValue().asString());
+        if (data.isMilliMap()) {
+            MilliMap map = data.asMilliMap();
+            int size = 1 + sizeOf(map.keySet().size());
+            for (String key : map.keySet()) size += sizeOf(key) + sizeOf(map.get(key));
+            return size;
+        }
+        if (data.isMilliList()) {
+            MilliList list = data.asMilliList();
+            int size = 1 + sizeOf(list.size());
+            for (MilliData element : list) size += sizeOf(element);
+            return size;
+        }
+        return 1;
+    }
+
+    public static void writeData(@Nonnull ByteBuffer buffer, @Nonnull MilliData data) {
+        if (data.isMilliValue()) {
+            buffer.put(VALUE);
+            writeString(buffer, data.asMilliValue().asString());
+        } else if (data.isMilliMap()) {
+            MilliMap map = data.asMilliMap();
+            buffer.put(MAP);
+            writeVarint(buffer, map.keySet().size());
+            for (String key : map.keySet()) {
+                writeString(buffer, key);
+                writeData(buffer, map.get(key));
+            }
+        } else if (data.isMilliList()) {
+            MilliList list = data.asMilliList();
+            buffer.put(LIST);
+            writeVarint(buffer, list.size());
+            for (MilliData element : list) writeData(buffer, element);
+        } else {
+            buffer.put(NULL);
+        }
+    }
+
+    @Nonnull
+    public static MilliData readData(@Nonnull ByteBuffer buffer) {
+        byte tag = buffer.get();
+        switch (tag) {
+            case NULL:
+                return MilliNull.INSTANCE;
+            case VALUE:
+                return new MilliValue(readString(buffer));
+            case MAP: {
+                long size = readVarint(buffer);
+                MilliMap map = new MilliMap();
+                for (long i = 0; i < size; i++) {
+                    String key = readString(buffer);
+                    map.put(key, readData(buffer));
+                }
+                return map;
+            }
+            case LIST: {
+                long size = readVarint(buffer);
+                MilliList list = new MilliList();
+                for (long i = 0; i < size; i++) list.add(readData(buffer));
+                return list;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown type tag: " + tag);
+        }
+    }
+
+    /**
+     * Move the position past a MilliData without creating it, checking that it is well-formed
+     */
+    public static void skipData(@Nonnull ByteBuffer buffer) {
+        byte tag = buffer.get();
+        switch (tag) {
+            case NULL:
+                return;
+            case VALUE:
+                skipString(buffer);
+                return;
+            case MAP: {
+                long size = readVarint(buffer);
+                for (long i = 0; i < size; i++) {
+                    skipString(buffer);
+                    skipData(buffer);
+                }
+                return;
+            }
+            case LIST: {
+                long size = readVarint(buffer);
+                for (long i = 0; i < size; i++) skipData(buffer);
+                return;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown type tag: " + tag);
+        }
+    }
+
+    public static int sizeOf(@Nonnull String string) {
+        int length = utf8Length(string);
+        return sizeOf(length) + length;
+    }
+
+    public static void writeString(@Nonnull ByteBuffer buffer, @Nonnull String string) {
+        byte[] bytes = Validate.nonnull(string).getBytes(StandardCharsets.UTF_8);
+        writeVarint(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+
+    @Nonnull
+    public static String readString(@Nonnull ByteBuffer buffer) {
+        long length = readVarint(buffer);
+        if (length > buffer.remaining()) throw new BufferUnderflowException();
+        String string;
+        if (buffer.hasArray()) {
+            string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), (int) length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + (int) length);
+        } else {
+            byte[] bytes = new byte[(int) length];
+            buffer.get(bytes);
+            string = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return string;
+    }
+
+    public static void skipString(@Nonnull ByteBuffer buffer) {
+        long length = readVarint(buffer);
+        if (length > buffer.remaining()) throw new BufferUnderflowException();
+        buffer.position(buffer.position() + (int) length);
+    }
+
+    public static int sizeOf(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    public static void writeVarint(@Nonnull ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static long readVarint(@Nonnull ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static int utf8Length(@Nonnull String string) {
+        int length = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) length += 1;
+            else if (c < 0x800) length += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) length += 1;
+            else length += 3;
+        }
+        return length;
+    }
+}
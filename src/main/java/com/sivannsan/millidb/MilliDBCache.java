@@ -0,0 +1,241 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnegative;
+import com.sivannsan.foundation.annotation.Nonnull;
+import com.sivannsan.foundation.common.Validate;
+import com.sivannsan.millidata.MilliData;
+import com.sivannsan.millidata.MilliMap;
+
+import java.util.*;
+
+/**
+ * <p>Caches the fetched MilliData keyed by the document path plus the data path</p>
+ * <p>The least recently used entries are evicted once either the entry bound or the approximate byte bound is exceeded, and an entry expires after the time to live</p>
+ * <p>The cached MilliData is shared between callers and must not be modified</p>
+ */
+@SuppressWarnings("unused")
+public final class MilliDBCache {
+    @Nonnegative
+    private final int maxEntries;
+    @Nonnegative
+    private final long maxBytes;
+    @Nonnegative
+    private final long timeToLive;
+    /**
+     * Access ordered, so that the eldest entry is the least recently used one
+     */
+    @Nonnull
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * The cached data paths of each document path, used to invalidate the overlapped entries
+     */
+    @Nonnull
+    private final Map<String, Set<String>> documents = new HashMap<>();
+    private long bytes = 0;
+    /**
+     * Increased by every invalidation, so that a fetch which started before it does not cache the stale data
+     */
+    private long stamp = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param maxEntries    the maximum number of cached entries
+     * @param maxBytes      the maximum approximate size of the cached MilliData in bytes
+     * @param timeToLive    the milliseconds after which an entry expires; 0 for never expires
+     */
+    public MilliDBCache(@Nonnegative int maxEntries, @Nonnegative long maxBytes, @Nonnegative long timeToLive) {
+        this.maxEntries = Validate.nonnegative(maxEntries);
+        this.maxBytes = Validate.nonnegative(maxBytes);
+        this.timeToLive = Validate.nonnegative(timeToLive);
+    }
+
+    /**
+     * @return  null if the entry is absent or expired
+     */
+    public synchronized MilliData get(@Nonnull String document, @Nonnull String path) {
+        Key key = new Key(document, path);
+        Entry entry = entries.get(key);
+        if (entry != null && timeToLive > 0 && System.currentTimeMillis() - entry.time > timeToLive) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.data;
+    }
+
+    /**
+     * @return  the stamp to be passed to the put method once the fetch started now completes
+     */
+    public synchronized long stamp() {
+        return stamp;
+    }
+
+    /**
+     * Cache the fetched MilliData unless an invalidation happened after the stamp was taken
+     */
+    public synchronized void put(@Nonnull String document, @Nonnull String path, @Nonnull MilliData data, long stamp) {
+        if (stamp != this.stamp) return;
+        store(new Key(document, path), data);
+    }
+
+    /**
+     * Invalidate the entries overlapping with the written data path, and then cache the written MilliData
+     */
+    public synchronized void write(@Nonnull String document, @Nonnull String path, @Nonnull MilliData data) {
+        invalidate(document, path);
+        store(new Key(document, path), data);
+    }
+
+    /**
+     * Invalidate the entries of the document whose data path is the provided data path, its parent or its child
+     */
+    public synchronized void invalidate(@Nonnull String document, @Nonnull String path) {
+        stamp++;
+        Set<String> paths = documents.get(document);
+        if (paths == null) return;
+        for (String cached : new ArrayList<>(paths)) {
+            if (MilliDBDataPath.overlaps(cached, path)) remove(new Key(document, cached));
+        }
+    }
+
+    /**
+     * Invalidate every entry of the file, including the files under it if the file is a collection
+     */
+    public synchronized void invalidate(@Nonnull String file) {
+        stamp++;
+        String prefix = file + "/";
+        for (String document : new ArrayList<>(documents.keySet())) {
+            if (!document.equals(file) && !document.startsWith(prefix)) continue;
+            for (String path : new ArrayList<>(documents.get(document))) remove(new Key(document, path));
+        }
+    }
+
+    public synchronized void clear() {
+        stamp++;
+        entries.clear();
+        documents.clear();
+        bytes = 0;
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * @return  the approximate size of the cached MilliData in bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized double getHitRate() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "MilliDBCache{size=" + entries.size() + ", bytes=" + bytes + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "}";
+    }
+
+    private void store(@Nonnull Key key, @Nonnull MilliData data) {
+        remove(key);
+        Entry entry = new Entry(Validate.nonnull(data), estimate(data), System.currentTimeMillis());
+        if (entry.bytes > maxBytes || maxEntries == 0) return;
+        entries.put(key, entry);
+        documents.computeIfAbsent(key.document, document -> new HashSet<>()).add(key.path);
+        bytes += entry.bytes;
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+            Map.Entry<Key, Entry> eldest = iterator.next();
+            iterator.remove();
+            unindex(eldest.getKey());
+            bytes -= eldest.getValue().bytes;
+            evictions++;
+        }
+    }
+
+    private void remove(@Nonnull Key key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) return;
+        bytes -= entry.bytes;
+        unindex(key);
+    }
+
+    private void unindex(@Nonnull Key key) {
+        Set<String> paths = documents.get(key.document);
+        if (paths == null) return;
+        paths.remove(key.path);
+        if (paths.isEmpty()) documents.remove(key.document);
+    }
+
+    /**
+     * @return  the approximate size of the MilliData in bytes, counting two bytes per character
+     */
+    private static long estimate(@Nonnull MilliData data) {
+        if (data.isMilliValue()) return 16 + 2L * data.asMilliValue().asString().length();
+        long size = 32;
+        if (data.isMilliMap()) {
+            MilliMap map = data.asMilliMap();
+            for (String key : map.keySet()) size += 16 + 2L * key.length() + estimate(map.get(key));
+        } else if (data.isMilliList()) {
+            for (MilliData element : data.asMilliList()) size += 8 + estimate(element);
+        }
+        return size;
+    }
+
+    private static final class Key {
+        @Nonnull
+        private final String document;
+        @Nonnull
+        private final String path;
+
+        private Key(@Nonnull String document, @Nonnull String path) {
+            this.document = Validate.nonnull(document);
+            this.path = Validate.nonnull(path);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return document.equals(key.document) && path.equals(key.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * document.hashCode() + path.hashCode();
+        }
+    }
+
+    private static final class Entry {
+        @Nonnull
+        private final MilliData data;
+        private final long bytes;
+        private final long time;
+
+        private Entry(@Nonnull MilliData data, long bytes, long time) {
+            this.data = data;
+            this.bytes = bytes;
+            this.time = time;
+        }
+    }
+}
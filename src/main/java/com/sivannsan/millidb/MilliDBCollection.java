@@ -2,7 +2,14 @@ package com.sivannsan.millidb;
 
 import com.sivannsan.foundation.annotation.Nonnull;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @SuppressWarnings("unused")
 public interface MilliDBCollection extends MilliDBFile {
@@ -12,6 +19,71 @@ public interface MilliDBCollection extends MilliDBFile {
     @Nonnull
     List<MilliDBFile> list(MilliDBFilter filter) throws MilliDBResultException;
 
+    /**
+     * List the files together with the content of every listed document, so that the first fetch from each returned MilliDBDocument needs no further query
+     * <p>The contents are served once and not after an event of a watch is received; later fetches go through the cache, if any</p>
+     *
+     * @param filter    null for no filter
+     * @param paths     the data paths to be received for each document; null for the whole content
+     */
+    @Nonnull
+    List<MilliDBFile> listWithContents(MilliDBFilter filter, Collection<String> paths) throws MilliDBResultException;
+
+    /**
+     * The same as listWithContents method without blocking the calling thread
+     *
+     * @return  the future which is completed exceptionally with a MilliDBResultException if the execution fails
+     */
+    @Nonnull
+    CompletableFuture<List<MilliDBFile>> listWithContentsAsync(MilliDBFilter filter, Collection<String> paths);
+
+    /**
+     * Iterate the files page by page instead of receiving them in a single result; the next page is requested while the current one is consumed
+     *
+     * @param filter    null for no filter
+     * @param pageSize  the maximum number of files per LIST; at least 1
+     * @return          the iterator whose hasNext and next methods throw MilliDBResultException if a page fails to be listed
+     */
+    @Nonnull
+    Iterator<MilliDBFile> iterate(MilliDBFilter filter, int pageSize);
+
+    /**
+     * The same as iterate method in the form of a sequential Stream
+     */
+    @Nonnull
+    Stream<MilliDBFile> stream(MilliDBFilter filter, int pageSize);
+
+    /**
+     * <p>Visit every file inside this collection, recursively, listing the collections in parallel on a ForkJoinPool of its own</p>
+     * <p>A collection is visited before the files inside it; the documents are visited with their content already received, so that fetchContent needs no further query</p>
+     *
+     * @param parallelism   the maximum number of LISTs in flight; at least 1
+     * @param visitor       called by several threads at the same time
+     * @throws MilliDBResultException   if a LIST fails, after the walk has stopped
+     */
+    void walk(int parallelism, @Nonnull Consumer<MilliDBFile> visitor) throws MilliDBResultException;
+
+    /**
+     * Write every file inside this collection, recursively, into the local file in the format of MilliDBArchive, walking them as the walk method does
+     *
+     * @param file          created, or truncated if it exists
+     * @param parallelism   the same as walk
+     * @return              the number of documents written
+     */
+    long exportTo(@Nonnull Path file, int parallelism) throws MilliDBResultException, IOException;
+
+    /**
+     * <p>Create the files recorded by exportTo inside this collection, sending the documents in BATCHes of a CREATE and a SET each</p>
+     * <p>An existing file of the same path is replaced by force; the collections are created before the documents inside them are sent</p>
+     *
+     * @param file          in the format of MilliDBArchive
+     * @param batchSize     the maximum number of documents per BATCH; at least 1
+     * @param parallelism   the maximum number of BATCHes in flight; at least 1
+     * @return              the number of documents imported
+     * @throws MilliDBResultException   if a file fails to be created or set, after every sent BATCH is answered
+     */
+    long importFrom(@Nonnull Path file, int batchSize, int parallelism) throws MilliDBResultException, IOException;
+
     /**
      * @param name  empty string will return a MilliDBNone
      */
@@ -24,4 +96,31 @@ public interface MilliDBCollection extends MilliDBFile {
      * @param force if false, it won't create if the provided name already exists; if true, it will delete the old and create a new if the type is different
      */
     void create(@Nonnull String name, @Nonnull Class<? extends MilliDBFile> type, boolean force) throws MilliDBResultException;
+
+    @Nonnull
+    CompletableFuture<List<MilliDBFile>> listAsync();
+
+    /**
+     * The same as list method without blocking the calling thread
+     *
+     * @return  the future which is completed exceptionally with a MilliDBResultException if the execution fails
+     */
+    @Nonnull
+    CompletableFuture<List<MilliDBFile>> listAsync(MilliDBFilter filter);
+
+    /**
+     * The same as get method without blocking the calling thread
+     *
+     * @return  the future which is completed exceptionally with a MilliDBResultException if the execution fails
+     */
+    @Nonnull
+    CompletableFuture<MilliDBFile> getAsync(@Nonnull String name);
+
+    /**
+     * The same as create method without blocking the calling thread
+     *
+     * @return  the future which is completed exceptionally with a MilliDBResultException if the execution fails
+     */
+    @Nonnull
+    CompletableFuture<Void> createAsync(@Nonnull String name, @Nonnull Class<? extends MilliDBFile> type, boolean force);
 }
@@ -0,0 +1,140 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnegative;
+import com.sivannsan.foundation.annotation.Nonnull;
+import com.sivannsan.foundation.common.Validate;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p>The DEFLATE compression of the MilliDBProtocol.BINARY frames of one connection, used once both sides have accepted it during VERIFY</p>
+ * <p>A frame whose payload reaches the threshold is sent with the flags byte 1 if that makes it smaller; its payload is then the varint length of the original payload followed by the raw DEFLATE data of it</p>
+ * <p>The Deflater, the Inflater and their buffers are kept for the whole connection; compress must only be called by one thread at a time, and so must inflate</p>
+ */
+@SuppressWarnings("unused")
+public final class MilliDBCompression {
+    /**
+     * The name used in the VERIFY negotiation
+     */
+    public static final String DEFLATE = "deflate";
+    public static final byte DEFLATED = 1;
+
+    private final int threshold;
+    @Nonnull
+    private final Deflater deflater;
+    @Nonnull
+    private final Inflater inflater = new Inflater(true);
+    @Nonnull
+    private ByteBuffer deflated = ByteBuffer.allocate(0);
+    @Nonnull
+    private ByteBuffer inflated = ByteBuffer.allocate(0);
+
+    /**
+     * @param threshold the payload size in bytes from which a frame is compressed
+     * @param level     from Deflater.BEST_SPEED to Deflater.BEST_COMPRESSION
+     */
+    public MilliDBCompression(@Nonnegative int threshold, int level) {
+        this.threshold = Validate.nonnegative(threshold);
+        this.deflater = new Deflater(level, true);
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Compress the frame which has just been appended, in place, unless it is below the threshold or would not shrink
+     *
+     * @param buffer    in write mode, whose position is the end of the frame
+     * @param start     the position of the frame
+     * @param metrics   receives the sizes and the time spent; null to skip measuring
+     */
+    public void compress(@Nonnull ByteBuffer buffer, int start, MilliDBMetricsListener metrics) {
+        int end = buffer.position();
+        buffer.position(start);
+        MilliDBBinaryCodec.readVarint(buffer);
+        byte flags = buffer.get();
+        int payload = buffer.position();
+        int raw = end - payload;
+        buffer.position(end);
+        if (raw < threshold || flags != 0) return;
+        long time = System.nanoTime();
+        ByteBuffer input = buffer.duplicate();
+        input.position(payload).limit(end);
+        if (deflated.capacity() < raw) deflated = ByteBuffer.allocate(raw);
+        deflated.clear().limit(raw);
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+        while (!deflater.finished() && deflated.hasRemaining()) deflater.deflate(deflated);
+        int compressed = MilliDBBinaryCodec.sizeOf(raw) + deflated.position();
+        boolean shrunk = deflater.finished() && compressed < raw;
+        if (shrunk) {
+            buffer.position(start);
+            MilliDBBinaryCodec.writeVarint(buffer, 1 + compressed);
+            buffer.put(DEFLATED);
+            MilliDBBinaryCodec.writeVarint(buffer, raw);
+            deflated.flip();
+            buffer.put(deflated);
+        }
+        if (metrics != null) metrics.onCompressed(raw, shrunk ? compressed : raw, System.nanoTime() - time);
+    }
+
+    /**
+     * Consume the next frame if it is complete and compressed
+     *
+     * @param buffer    in read mode
+     * @param metrics   receives the sizes and the time spent; null to skip measuring
+     * @return          the frame with its original payload in read mode, valid until the next call; null if the next frame is incomplete or not compressed, in which case the position is kept
+     * @throws IllegalArgumentException if the compressed frame is malformed
+     */
+    public ByteBuffer inflate(@Nonnull ByteBuffer buffer, MilliDBMetricsListener metrics) {
+        int start = buffer.position();
+        long length;
+        try {
+            length = MilliDBBinaryCodec.readVarint(buffer);
+        } catch (BufferUnderflowException e) {
+            buffer.position(start);
+            return null;
+        }
+        if (length < 1 || buffer.remaining() < length || buffer.get(buffer.position()) != DEFLATED) {
+            buffer.position(start);
+            return null;
+        }
+        long time = System.nanoTime();
+        int end = buffer.position() + (int) length;
+        buffer.get();
+        long raw;
+        try {
+            raw = MilliDBBinaryCodec.readVarint(buffer);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Malformed compressed frame");
+        }
+        if (raw > Integer.MAX_VALUE - 16) throw new IllegalArgumentException("Invalid original length: " + raw);
+        int required = MilliDBBinaryCodec.sizeOf(1 + raw) + 1 + (int) raw;
+        if (inflated.capacity() < required) inflated = ByteBuffer.allocate(required);
+        inflated.clear().limit(required);
+        MilliDBBinaryCodec.writeVarint(inflated, 1 + raw);
+        inflated.put((byte) 0);
+        ByteBuffer input = buffer.duplicate();
+        input.limit(end);
+        inflater.reset();
+        inflater.setInput(input);
+        try {
+            while (!inflater.finished() && inflated.hasRemaining()) {
+                if (inflater.inflate(inflated) == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Malformed compressed frame: " + e.getMessage());
+        }
+        if (!inflater.finished() || inflated.hasRemaining()) throw new IllegalArgumentException("The compressed frame does not match its original length");
+        buffer.position(end);
+        inflated.flip();
+        if (metrics != null) metrics.onInflated((int) length - 1, (int) raw, System.nanoTime() - time);
+        return inflated;
+    }
+}
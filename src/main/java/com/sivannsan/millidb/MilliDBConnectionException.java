@@ -0,0 +1,26 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnull;
+
+/**
+ * Thrown when a query could not be completed because of the connection rather than the server refusing it
+ */
+@SuppressWarnings("unused")
+public class MilliDBConnectionException extends MilliDBResultException {
+    private final boolean sent;
+
+    /**
+     * @param sent  false only if the query has surely not reached the server
+     */
+    public MilliDBConnectionException(@Nonnull String message, boolean sent) {
+        super(message);
+        this.sent = sent;
+    }
+
+    /**
+     * @return  false if the query has surely not reached the server, so that sending it again cannot apply it twice
+     */
+    public boolean isSent() {
+        return sent;
+    }
+}
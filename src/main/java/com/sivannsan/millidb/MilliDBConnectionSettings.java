@@ -0,0 +1,129 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnegative;
+import com.sivannsan.foundation.annotation.Nonnull;
+import com.sivannsan.foundation.common.Validate;
+
+import java.util.zip.Deflater;
+
+/**
+ * Settings of every socket opened by MilliDBConnector
+ */
+@SuppressWarnings("unused")
+public final class MilliDBConnectionSettings {
+    @Nonnull
+    private MilliDBProtocol protocol = MilliDBProtocol.TEXT;
+    private MilliDBEventLoopGroup eventLoopGroup;
+    private int writeBufferLimit = 4 * 1024 * 1024;
+    private boolean reconnect = false;
+    private long reconnectBaseDelay = 100;
+    private long reconnectMaxDelay = 5000;
+    private int reconnectMaxAttempts = 0;
+    private int compressionThreshold = 16 * 1024;
+    private int compressionLevel = Deflater.BEST_SPEED;
+
+    /**
+     * @param protocol  the protocol offered during VERIFY, TEXT by default; the connection falls back to TEXT if the server does not accept it
+     */
+    @Nonnull
+    public MilliDBConnectionSettings protocol(@Nonnull MilliDBProtocol protocol) {
+        this.protocol = Validate.nonnull(protocol);
+        return this;
+    }
+
+    /**
+     * @param eventLoopGroup    the selector threads serving the socket; null for the shared MilliDBEventLoopGroup.getDefault
+     */
+    @Nonnull
+    public MilliDBConnectionSettings eventLoopGroup(MilliDBEventLoopGroup eventLoopGroup) {
+        this.eventLoopGroup = eventLoopGroup;
+        return this;
+    }
+
+    /**
+     * @param writeBufferLimit  the number of encoded bytes which may wait for the socket before new queries block their callers
+     */
+    @Nonnull
+    public MilliDBConnectionSettings writeBufferLimit(@Nonnegative int writeBufferLimit) {
+        this.writeBufferLimit = Validate.nonnegative(writeBufferLimit);
+        return this;
+    }
+
+    /**
+     * @param reconnect whether a database from MilliDBConnector.connect opens a new socket and verifies again when its socket is lost, which is disabled by default so that its queries fail as soon as the socket is lost; a pool always replaces its lost sockets
+     */
+    @Nonnull
+    public MilliDBConnectionSettings reconnect(boolean reconnect) {
+        this.reconnect = reconnect;
+        return this;
+    }
+
+    /**
+     * @param baseDelay the milliseconds before the second attempt to reconnect, doubled after every failed attempt
+     * @param maxDelay  the upper bound of the delay
+     */
+    @Nonnull
+    public MilliDBConnectionSettings reconnectBackoff(@Nonnegative long baseDelay, @Nonnegative long maxDelay) {
+        this.reconnectBaseDelay = Validate.nonnegative(baseDelay);
+        this.reconnectMaxDelay = Math.max(baseDelay, Validate.nonnegative(maxDelay));
+        return this;
+    }
+
+    /**
+     * @param maxAttempts   the number of failed attempts to reconnect after which the database gives up and fails its queries with MilliDBConnectionException; 0 to keep trying until it is closed, which is the default
+     */
+    @Nonnull
+    public MilliDBConnectionSettings reconnectMaxAttempts(@Nonnegative int maxAttempts) {
+        this.reconnectMaxAttempts = Validate.nonnegative(maxAttempts);
+        return this;
+    }
+
+    /**
+     * @param threshold the payload size in bytes from which the frames are compressed if the server accepts the compression during VERIFY; 0 to not offer it; only used by MilliDBProtocol.BINARY
+     * @param level     from Deflater.BEST_SPEED, which is the default, to Deflater.BEST_COMPRESSION
+     */
+    @Nonnull
+    public MilliDBConnectionSettings compression(@Nonnegative int threshold, int level) {
+        this.compressionThreshold = Validate.nonnegative(threshold);
+        this.compressionLevel = Math.max(Deflater.DEFAULT_COMPRESSION, Math.min(Deflater.BEST_COMPRESSION, level));
+        return this;
+    }
+
+    @Nonnull
+    public MilliDBProtocol getProtocol() {
+        return protocol;
+    }
+
+    @Nonnull
+    public MilliDBEventLoopGroup getEventLoopGroup() {
+        return eventLoopGroup == null ? MilliDBEventLoopGroup.getDefault() : eventLoopGroup;
+    }
+
+    public int getWriteBufferLimit() {
+        return writeBufferLimit;
+    }
+
+    public boolean isReconnect() {
+        return reconnect;
+    }
+
+    public long getReconnectBaseDelay() {
+        return reconnectBaseDelay;
+    }
+
+    public long getReconnectMaxDelay() {
+        return reconnectMaxDelay;
+    }
+
+    public int getReconnectMaxAttempts() {
+        return reconnectMaxAttempts;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+}
@@ -5,14 +5,21 @@ import com.sivannsan.foundation.annotation.Nonnull;
 import com.sivannsan.foundation.common.Validate;
 import com.sivannsan.millidata.*;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @SuppressWarnings("unused")
 public final class MilliDBConnector {
@@ -23,26 +30,118 @@ public final class MilliDBConnector {
      * @return  null if the connection is fail
      */
     public static MilliDBDatabase connect(@Nonnull String host, int port, @Nonnull String database, @Nonnull String user, @Nonnull String password) {
+        return connect(host, port, database, user, password, new MilliDBConnectionSettings());
+    }
+
+    /**
+     * <p>If reconnecting is enabled by the settings, the database opens a new socket in the background when its socket is lost, and the queries sent meanwhile wait for it instead of failing; if the server rejects the VERIFY of the new socket, or the maximum number of attempts is reached, they fail with MilliDBConnectionException instead</p>
+     *
+     * @return  null if the first connection is fail
+     */
+    public static MilliDBDatabase connect(@Nonnull String host, int port, @Nonnull String database, @Nonnull String user, @Nonnull String password, @Nonnull MilliDBConnectionSettings settings) {
+        IMilliDBConnection connection = open(host, port, database, user, password, settings);
+        if (connection == null || !settings.isReconnect()) return connection;
+        return new IMilliDBReconnecting(host, port, database, user, password, settings, connection);
+    }
+
+    /**
+     * Connect to a MilliDB database through a pool of sockets, so that queries from different threads are spread over them
+     *
+     * @return  null if the initial connections are fail
+     */
+    public static MilliDBDatabase pool(@Nonnull String host, int port, @Nonnull String database, @Nonnull String user, @Nonnull String password, @Nonnull MilliDBPoolSettings settings) {
+        return pool(host, port, database, user, password, settings, new MilliDBConnectionSettings());
+    }
+
+    /**
+     * Connect to a MilliDB database through a pool of sockets, so that queries from different threads are spread over them
+     *
+     * @param connectionSettings    applied to every socket of the pool
+     * @return                      null if the initial connections are fail
+     */
+    public static MilliDBDatabase pool(@Nonnull String host, int port, @Nonnull String database, @Nonnull String user, @Nonnull String password, @Nonnull MilliDBPoolSettings settings, @Nonnull MilliDBConnectionSettings connectionSettings) {
+        IMilliDBPool pool = new IMilliDBPool(host, port, database, user, password, settings, connectionSettings);
+        if (!pool.start()) {
+            pool.close();
+            return null;
+        }
+        return pool;
+    }
+
+    /**
+     * @return  null if the connection is fail
+     */
+    private static IMilliDBConnection open(@Nonnull String host, int port, @Nonnull String database, @Nonnull String user, @Nonnull String password, @Nonnull MilliDBConnectionSettings settings) {
+        return open(host, port, database, user, password, settings, null);
+    }
+
+    /**
+     * @param owner the database whose metrics listener receives the measurements of the connection; null for the connection itself
+     * @return      null if the connection is fail
+     */
+    private static IMilliDBConnection open(@Nonnull String host, int port, @Nonnull String database, @Nonnull String user, @Nonnull String password, @Nonnull MilliDBConnectionSettings settings, IMilliDBDatabase owner) {
+        try {
+            return establish(host, port, database, user, password, settings, owner);
+        } catch (MilliDBConnectionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The same as open, telling a rejected VERIFY apart from a failure of the socket
+     *
+     * @return  null if the socket could not be connected or failed, which may succeed when attempted again
+     * @throws MilliDBConnectionException   if the server has rejected the VERIFY, such as for changed credentials or a dropped database, which attempting again cannot fix
+     */
+    private static IMilliDBConnection establish(@Nonnull String host, int port, @Nonnull String database, @Nonnull String user, @Nonnull String password, @Nonnull MilliDBConnectionSettings settings, IMilliDBDatabase owner) throws MilliDBConnectionException {
         try {
             MilliDBLogger.info("Connecting to a MilliDB database...");
             MilliDBLogger.info("- host: " + host);
             MilliDBLogger.info("- port: " + port);
             long time = System.currentTimeMillis();
-            Socket socket = new Socket(host, port);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
-            socket.setSoTimeout(5000);
-            IMilliDBDatabase db = new IMilliDBDatabase(socket, reader, writer, database, 5);
-            MilliDBResult result =  db.execute(new MilliDBQuery(MilliDBQuery.Function.VERIFY, new MilliMap("user", new MilliValue(user)).append("password", new MilliValue(password)).append("database", new MilliValue(database))));
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+            channel.socket().setTcpNoDelay(true);
+            IMilliDBConnection db = new IMilliDBConnection(channel, database, settings.getWriteBufferLimit());
+            if (owner != null) db.owner = owner;
+            try {
+                db.start(settings.getEventLoopGroup());
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            MilliMap verify = new MilliMap("user", new MilliValue(user)).append("password", new MilliValue(password)).append("database", new MilliValue(database));
+            if (settings.getProtocol() != MilliDBProtocol.TEXT) {
+                MilliList protocols = new MilliList();
+                protocols.add(new MilliValue(settings.getProtocol().toString()));
+                protocols.add(new MilliValue(MilliDBProtocol.TEXT.toString()));
+                verify.put("protocols", protocols);
+                if (settings.getCompressionThreshold() > 0) {
+                    MilliList compressions = new MilliList();
+                    compressions.add(new MilliValue(MilliDBCompression.DEFLATE));
+                    verify.put("compressions", compressions);
+                }
+            }
+            MilliDBResult result =  db.execute(new MilliDBQuery(MilliDBQuery.Function.VERIFY, verify));
             if (!result.isSucceed()) {
                 MilliDBLogger.warning("Couldn't verify with the MilliDB database!");
-                return null;
+                db.close();
+                throw new MilliDBConnectionException("Couldn't verify with the MilliDB database", false);
             }
             MilliMap map = result.getMetadata().asMilliMap(new MilliMap());
             if (!map.get("succeed").asMilliValue(new MilliValue(false)).asBoolean()) {
-                MilliDBLogger.warning(map.get("reason").asMilliValue(new MilliValue()).asString());
-                db.execute(new MilliDBQuery(MilliDBQuery.Function.CLOSE, MilliNull.INSTANCE));
-                return null;
+                String reason = map.get("reason").asMilliValue(new MilliValue()).asString();
+                MilliDBLogger.warning(reason);
+                db.close();
+                throw new MilliDBConnectionException("The MilliDB database has rejected the VERIFY: " + reason, false);
+            }
+            MilliDBProtocol protocol = MilliDBProtocol.fromString(map.get("protocol").asMilliValue(new MilliValue(MilliDBProtocol.TEXT.toString())).asString());
+            if (protocol != null && protocol != MilliDBProtocol.TEXT) {
+                db.setProtocol(protocol);
+                MilliDBLogger.info("- protocol: " + protocol);
+                if (protocol == MilliDBProtocol.BINARY && settings.getCompressionThreshold() > 0 && map.get("compression").asMilliValue(new MilliValue()).asString().equals(MilliDBCompression.DEFLATE)) {
+                    db.setCompression(new MilliDBCompression(settings.getCompressionThreshold(), settings.getCompressionLevel()));
+                    MilliDBLogger.info("- compression: " + MilliDBCompression.DEFLATE + " from " + settings.getCompressionThreshold() + " bytes");
+                }
             }
             MilliDBLogger.info("The MilliDB database has been successfully connected in " + (System.currentTimeMillis() - time) + "ms!");
             return db;
@@ -57,38 +156,69 @@ public final class MilliDBConnector {
         }
     }
 
-    private static final class IMilliDBDatabase implements MilliDBDatabase {
+    /**
+     * Wait for the future of an asynchronous file operation, rethrowing its failure as it would have been thrown synchronously
+     */
+    private static <T> T await(@Nonnull CompletableFuture<T> future) throws MilliDBResultException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MilliDBResultException("Interrupted while waiting for a result");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof MilliDBResultException) throw (MilliDBResultException) e.getCause();
+            throw new MilliDBResultException(String.valueOf(e.getCause()));
+        }
+    }
+
+    /**
+     * The file operations shared by every kind of database; subclasses only decide how a query reaches the server
+     */
+    private static abstract class IMilliDBDatabase implements MilliDBDatabase, MilliDBMetricsListener.Gauges {
         @Nonnull
-        private final Socket socket;
+        protected final String name;
         @Nonnull
-        private final BufferedReader reader;
+        private volatile MilliDBRetryPolicy retryPolicy = new MilliDBRetryPolicy();
         @Nonnull
-        private final PrintWriter writer;
+        private volatile MilliDBRetryPolicy.Budget budget = retryPolicy.newBudget();
+        protected volatile MilliDBCache cache;
         @Nonnull
-        private final String name;
-        @Nonnegative
-        private final int maxFailures;
+        protected final MilliDBHandleCache handles = new MilliDBHandleCache(1024);
+        /**
+         * Counts the received events, so that the MilliData prefetched before an event is not served after it
+         */
+        @Nonnull
+        protected final AtomicLong events = new AtomicLong();
+        /**
+         * Null while the metrics are disabled, so that measuring costs a single read
+         */
+        protected volatile MilliDBMetricsListener metrics;
+        @Nonnull
+        private final AtomicInteger executing = new AtomicInteger();
+        /**
+         * The active subscriptions, keyed by the ID of the WATCH query which registered them on their current connection
+         */
+        @Nonnull
+        private final Map<Long, ISubscription> subscriptions = new ConcurrentHashMap<>();
+        /**
+         * Null while the SETs are sent right away
+         */
+        protected volatile IWriteBehind writeBehind;
 
-        private IMilliDBDatabase(@Nonnull Socket socket, @Nonnull BufferedReader reader, @Nonnull PrintWriter writer, @Nonnull String name, @Nonnegative int maxFailures) {
-            this.socket = Validate.nonnull(socket);
-            this.reader = Validate.nonnull(reader);
-            this.writer = Validate.nonnull(writer);
+        private IMilliDBDatabase(@Nonnull String name) {
             this.name = Validate.nonnull(name);
-            this.maxFailures = Validate.nonnegative(maxFailures);
         }
 
-        @Override
-        public void close() {
-            execute(new MilliDBQuery(MilliDBQuery.Function.CLOSE, MilliNull.INSTANCE));
-            try {
-                writer.close();
-                reader.close();
-                socket.close();
-            } catch (IOException e) {
-                MilliDBLogger.warning("IOException occurs while closing a database");
-                e.printStackTrace();
-            }
-        }
+        /**
+         * Send the query once
+         *
+         * @param timeout   the milliseconds to wait for the result
+         * @return          the future which is completed with the result, or exceptionally with a TimeoutException if the result does not arrive in time or a MilliDBConnectionException if the connection fails
+         */
+        @Nonnull
+        public abstract CompletableFuture<MilliDBResult> submit(@Nonnull MilliDBQuery query, long timeout);
+
+        public abstract boolean isClosed();
 
         @Override
         @Nonnull
@@ -96,54 +226,188 @@ public final class MilliDBConnector {
             return name;
         }
 
+        @Override
+        public void setRetryPolicy(@Nonnull MilliDBRetryPolicy retryPolicy) {
+            this.retryPolicy = Validate.nonnull(retryPolicy);
+            this.budget = retryPolicy.newBudget();
+        }
+
+        @Override
         @Nonnull
-        public synchronized MilliDBResult execute(@Nonnull MilliDBQuery query) {
-            query.executes += 1;
-            if (query.executes > maxFailures) {
-                return new MilliDBResult(query.getID(), false, MilliNull.INSTANCE);
-            }
-            if (query.executes > 1) MilliDBLogger.warning("Query '" + query.getID() + "' has failed to execute " + (query.executes - 1) + " time" + (query.executes > 2 ? "s" : ""));
-            writer.println(query.asMilliMap());
+        public MilliDBRetryPolicy getRetryPolicy() {
+            return retryPolicy;
+        }
+
+        @Override
+        public void setMetricsListener(MilliDBMetricsListener metrics) {
+            this.metrics = metrics;
+            if (metrics != null) metrics.onAttach(this);
+        }
+
+        @Override
+        public MilliDBMetricsListener getMetricsListener() {
+            return metrics;
+        }
+
+        @Override
+        public int getInFlight() {
+            return executing.get();
+        }
+
+        @Override
+        public int getPoolSize() {
+            return 0;
+        }
+
+        @Override
+        public int getPoolIdle() {
+            return 0;
+        }
+
+        @Override
+        public int getPoolWaiters() {
+            return 0;
+        }
+
+        @Override
+        public int getPoolMaxSize() {
+            return 0;
+        }
+
+        @Nonnull
+        public MilliDBResult execute(@Nonnull MilliDBQuery query) {
             try {
-                MilliDBResult result = MilliDBResult.Parser.parse(reader.readLine());
-                if (result.getID() == query.getID()) return result;
-            } catch (IOException e) {
+                return executeAsync(query).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new MilliDBResult(query.getID(), false, MilliNull.INSTANCE);
+            } catch (ExecutionException e) {
                 e.printStackTrace();
+                return new MilliDBResult(query.getID(), false, MilliNull.INSTANCE);
             }
-            return execute(query);
+        }
+
+        /**
+         * Send the query, and send it again according to the retry policy without holding any thread while waiting
+         *
+         * @return  the future which is completed with a failed result once the query cannot be sent again
+         */
+        @Nonnull
+        public CompletableFuture<MilliDBResult> executeAsync(@Nonnull MilliDBQuery query) {
+            MilliDBRetryPolicy policy = retryPolicy;
+            MilliDBRetryPolicy.Budget budget = this.budget;
+            budget.deposit();
+            long deadline = System.currentTimeMillis() + (query.getTimeout() > 0 ? query.getTimeout() : policy.getDeadline());
+            MilliDBMetricsListener metrics = this.metrics;
+            if (metrics == null) return attempt(query, policy, budget, deadline, 1);
+            long start = System.nanoTime();
+            executing.incrementAndGet();
+            return attempt(query, policy, budget, deadline, 1).whenComplete((result, throwable) -> {
+                executing.decrementAndGet();
+                metrics.onQuery(query.getFunction(), System.nanoTime() - start, result != null && result.isSucceed());
+            });
+        }
+
+        @Nonnull
+        private CompletableFuture<MilliDBResult> attempt(@Nonnull MilliDBQuery query, @Nonnull MilliDBRetryPolicy policy, @Nonnull MilliDBRetryPolicy.Budget budget, long deadline, int attempt) {
+            long remaining = deadline - System.currentTimeMillis();
+            CompletableFuture<MilliDBResult> future = remaining <= 0 ? CompletableFuture.failedFuture(new TimeoutException("The deadline has passed")) : submit(query, Math.min(policy.getAttemptTimeout(), remaining));
+            return future.handle((result, throwable) -> {
+                if (throwable == null) return CompletableFuture.completedFuture(result);
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                String reason = cause instanceof TimeoutException ? "timed out" : String.valueOf(cause.getMessage());
+                MilliDBMetricsListener metrics = this.metrics;
+                if (metrics != null && cause instanceof TimeoutException) metrics.onTimeout(query.getFunction());
+                if (!retryable(query, cause) || attempt >= policy.getMaxAttempts() || isClosed()) return failed(query, attempt, reason);
+                long delay = policy.delay(attempt);
+                if (System.currentTimeMillis() + delay >= deadline) return failed(query, attempt, reason + " and the deadline is too close to retry");
+                if (!budget.withdraw()) return failed(query, attempt, reason + " and the retry budget is exhausted");
+                if (metrics != null) metrics.onRetry(query.getFunction());
+                MilliDBLogger.warning("Query '" + query.getID() + "' has failed to execute " + attempt + " time" + (attempt > 1 ? "s" : "") + " (" + reason + "), retrying in " + delay + "ms");
+                return CompletableFuture.supplyAsync(() -> attempt(query, policy, budget, deadline, attempt + 1), CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)).thenCompose(next -> next);
+            }).thenCompose(next -> next);
+        }
+
+        /**
+         * @return  true if the query can be sent again without the risk of applying it twice
+         */
+        private static boolean retryable(@Nonnull MilliDBQuery query, @Nonnull Throwable cause) {
+            if (cause instanceof TimeoutException) return query.isIdempotent();
+            if (cause instanceof MilliDBConnectionException) return !((MilliDBConnectionException) cause).isSent() || query.isIdempotent();
+            return false;
+        }
+
+        @Nonnull
+        private static CompletableFuture<MilliDBResult> failed(@Nonnull MilliDBQuery query, int attempts, @Nonnull String reason) {
+            MilliDBLogger.warning("Query '" + query.getID() + "' has failed after " + attempts + " attempt" + (attempts > 1 ? "s" : "") + ": " + reason);
+            return CompletableFuture.completedFuture(new MilliDBResult(query.getID(), false, MilliNull.INSTANCE));
         }
 
         @Override
         @Nonnull
         public MilliDBFile get(@Nonnull String path) throws MilliDBResultException {
-            MilliDBResult result = execute(new MilliDBQuery(MilliDBQuery.Function.GET, new MilliValue(name + (Validate.nonnull(path).equals("") ? "" : "/" + path))));
+            String full = name + (Validate.nonnull(path).equals("") ? "" : "/" + path);
+            MilliDBFile known = handles.getFresh(full);
+            if (known != null) return known;
+            MilliDBResult result = execute(new MilliDBQuery(MilliDBQuery.Function.GET, new MilliValue(full)));
             if (!result.isSucceed()) throw new MilliDBResultException("Failed to execute GET from the root with a file path of '" + path + "'");
             String type = result.getMetadata().asMilliValue(new MilliValue()).asString();
+            IMilliDBFile file;
             switch (type) {
                 case "none":
-                    return new IMilliDBNone(this, null, "");
+                    file = new IMilliDBNone(this, null, "");
+                    break;
                 case "document":
                     if (path.equals("")) {
-                        return new IMilliDBDocument(this, null, name);
+                        file = new IMilliDBDocument(this, null, name);
                     } else {
-                        IMilliDBCollection parent = new IMilliDBCollection(this, null, name);
+                        IMilliDBCollection parent = collection(null, name);
                         String[] filenames = path.split("/");
                         for (int i = 0; i < filenames.length - 1; i++) {
-                            parent = new IMilliDBCollection(this, parent, filenames[i]);
+                            parent = collection(parent, filenames[i]);
                         }
-                        return new IMilliDBDocument(this, parent, filenames[filenames.length - 1]);
+                        file = new IMilliDBDocument(this, parent, filenames[filenames.length - 1]);
                     }
+                    break;
                 case "collection":
-                    IMilliDBCollection collection = new IMilliDBCollection(this, null, name);
+                    IMilliDBCollection collection = path.equals("") ? new IMilliDBCollection(this, null, name) : collection(null, name);
                     if (!path.equals("")) {
-                        for (String filename : path.split("/")) {
-                            collection = new IMilliDBCollection(this, collection, filename);
+                        String[] filenames = path.split("/");
+                        for (int i = 0; i < filenames.length - 1; i++) {
+                            collection = collection(collection, filenames[i]);
                         }
+                        collection = new IMilliDBCollection(this, collection, filenames[filenames.length - 1]);
                     }
-                    return collection;
+                    file = collection;
+                    break;
                 default:
                     throw new MilliDBResultException("Invalid result from the execution of GET from the root with a file path of '" + path + "'");
             }
+            if (!file.isMilliDBNone()) handles.put(full, file);
+            return file;
+        }
+
+        /**
+         * @return  the interned handle of a collection which contains a resolved file, or a new one
+         */
+        @Nonnull
+        private IMilliDBCollection collection(IMilliDBCollection parent, @Nonnull String name) {
+            String path = parent == null ? name : parent.getPath() + "/" + name;
+            MilliDBFile known = handles.get(path);
+            if (known instanceof IMilliDBCollection) return (IMilliDBCollection) known;
+            IMilliDBCollection collection = new IMilliDBCollection(this, parent, name);
+            handles.put(path, collection);
+            return collection;
+        }
+
+        @Override
+        public void setHandleFreshness(@Nonnegative long freshness) {
+            handles.setFreshness(freshness);
+        }
+
+        @Override
+        public long getHandleFreshness() {
+            return handles.getFreshness();
         }
 
         @Override
@@ -155,6 +419,7 @@ public final class MilliDBConnector {
             MilliMap metadata = new MilliMap().append("path", new MilliValue(name + (path.equals("") ? "" : "/" + path))).append("type", new MilliValue(t));
             if (force) metadata.put("force", new MilliValue(true));
             MilliDBResult result = execute(new MilliDBQuery(MilliDBQuery.Function.CREATE, metadata));
+            handles.invalidate(name + (path.equals("") ? "" : "/" + path));
             if (!result.isSucceed()) throw new MilliDBResultException("Failed to execute CREATE from the root with a file path of '" + path + "', a file type of '" + t + "', and a force of '" + force + "'");
         }
 
@@ -168,168 +433,2240 @@ public final class MilliDBConnector {
         public void createRoot(@Nonnull Class<? extends MilliDBFile> type, boolean force) throws MilliDBResultException {
             create("", type, force);
         }
-    }
 
-    private static abstract class IMilliDBFile implements MilliDBFile {
-        @Nonnull
-        protected final IMilliDBDatabase database;
-        private final IMilliDBCollection parent;
+        @Override
         @Nonnull
-        private final String name;
-
-        private IMilliDBFile(@Nonnull IMilliDBDatabase database, IMilliDBCollection parent, @Nonnull String name) {
-            this.database = Validate.nonnull(database);
-            this.parent = parent;
-            this.name = Validate.nonnull(name);
+        public MilliDBBatch batch() {
+            return new IMilliDBBatch(this);
         }
 
         @Override
-        public final MilliDBCollection getParent() {
-            return parent;
+        @Nonnull
+        public MilliDBSubscription watch(@Nonnull String path, MilliDBFilter filter, @Nonnull Consumer<MilliDBEvent> listener) throws MilliDBResultException {
+            return await(watchAsync(path, filter, listener));
         }
 
         @Override
         @Nonnull
-        public final String getPath() {
-            return parent == null ? name : parent.getPath() + "/" + name;
+        public CompletableFuture<MilliDBSubscription> watchAsync(@Nonnull String path, MilliDBFilter filter, @Nonnull Consumer<MilliDBEvent> listener) {
+            ISubscription subscription = new ISubscription(this, name + (Validate.nonnull(path).equals("") ? "" : "/" + path), filter, Validate.nonnull(listener));
+            return subscription.register().thenApply(registered -> subscription);
         }
 
-        @Override
-        @Nonnull
-        public final String getName() {
-            return name;
+        /**
+         * Forget the cached MilliData which the event changes, and deliver it; called by the event loop of the connection which received it
+         */
+        private void onEvent(@Nonnull MilliDBResult result) {
+            ISubscription subscription = subscriptions.get(result.getID());
+            MilliDBEvent event = MilliDBEvent.Parser.parse(result.getMetadata());
+            if (subscription == null || event == null) {
+                MilliDBLogger.warning("Discarded an event for the unknown subscription '" + result.getID() + "'");
+                return;
+            }
+            forget(event);
+            subscription.deliver(event);
+        }
+
+        private void forget(@Nonnull MilliDBEvent event) {
+            events.incrementAndGet();
+            MilliDBCache cache = this.cache;
+            if (event.getType() == MilliDBEvent.Type.CHANGE) {
+                if (cache != null) cache.invalidate(event.getPath(), event.getDataPath());
+                return;
+            }
+            if (cache != null) cache.invalidate(event.getPath());
+            if (event.getType() != MilliDBEvent.Type.LOST) handles.invalidate(event.getPath());
         }
 
         @Override
-        public final boolean isMilliDBNone() {
-            return this instanceof MilliDBNone;
+        public void setCache(MilliDBCache cache) {
+            this.cache = cache;
         }
 
         @Override
-        public final boolean isMilliDBDocument() {
-            return this instanceof MilliDBDocument;
+        public void setWriteBehind(MilliDBWriteBehindSettings settings) {
+            IWriteBehind previous = writeBehind;
+            writeBehind = settings == null ? null : new IWriteBehind(this, settings);
+            if (previous != null) previous.flushQuietly();
         }
 
         @Override
-        public final boolean isMilliDBCollection() {
-            return this instanceof MilliDBCollection;
+        public MilliDBWriteBehindSettings getWriteBehind() {
+            IWriteBehind writeBehind = this.writeBehind;
+            return writeBehind == null ? null : writeBehind.settings;
         }
 
         @Override
-        @Nonnull
-        public final MilliDBDocument asMilliDBDocument() throws ClassCastException {
-            if (isMilliDBDocument()) return (MilliDBDocument) this;
-            throw new ClassCastException("Not a MilliDBDocument");
+        public void flush() throws MilliDBResultException {
+            await(flushAsync());
         }
 
         @Override
         @Nonnull
-        public final MilliDBCollection asMilliDBCollection() throws ClassCastException {
-            if (isMilliDBCollection()) return (MilliDBCollection) this;
-            throw new ClassCastException("Not a MilliDBCollection");
+        public CompletableFuture<Void> flushAsync() {
+            IWriteBehind writeBehind = this.writeBehind;
+            return writeBehind == null ? CompletableFuture.completedFuture(null) : writeBehind.flush();
+        }
+
+        /**
+         * Stop buffering, and send the buffered SETs and wait for them; called before the connections are closed
+         */
+        protected void closeWriteBehind() {
+            IWriteBehind writeBehind = this.writeBehind;
+            if (writeBehind == null) return;
+            this.writeBehind = null;
+            try {
+                writeBehind.flush().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                MilliDBLogger.warning(String.valueOf(e.getCause().getMessage()));
+            }
         }
 
         @Override
-        public final void delete() throws MilliDBResultException {
-            if (isMilliDBNone()) return;
-            MilliDBResult result = database.execute(new MilliDBQuery(MilliDBQuery.Function.DELETE, new MilliValue(getPath())));
-            if (!result.isSucceed()) throw new MilliDBResultException("Failed to execute DELETE from the file path of '" + getPath() + "'");
+        public MilliDBCache getCache() {
+            return cache;
         }
     }
 
-    private static final class IMilliDBNone extends IMilliDBFile implements MilliDBNone {
-        private IMilliDBNone(@Nonnull IMilliDBDatabase database, IMilliDBCollection parent, @Nonnull String name) {
-            super(database, parent, name);
+    private static final class IMilliDBConnection extends IMilliDBDatabase implements MilliDBEventLoopGroup.Handler {
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        @Nonnull
+        private final SocketChannel channel;
+        /**
+         * Queries which have been written but not yet answered, keyed by their ID
+         */
+        @Nonnull
+        private final Map<Long, CompletableFuture<MilliDBResult>> inFlight = new ConcurrentHashMap<>();
+        /**
+         * Guards writeBuffer; writers waiting for the buffer to drain wait on it
+         */
+        @Nonnull
+        private final Object writeLock = new Object();
+        private final int writeBufferLimit;
+        /**
+         * The encoded frames not yet accepted by the socket, in write mode
+         */
+        @Nonnull
+        private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        /**
+         * Only used by the event loop
+         */
+        @Nonnull
+        private ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        /**
+         * The number of bytes of the incomplete frame at the start of the read buffer which have been searched for its end; only used by the event loop
+         */
+        private int scanned = 0;
+        private MilliDBEventLoopGroup.EventLoop loop;
+        @Nonnull
+        private volatile MilliDBProtocol protocol = MilliDBProtocol.TEXT;
+        /**
+         * Null unless accepted during VERIFY; only compresses under writeLock and only inflates on the event loop
+         */
+        private volatile MilliDBCompression compression;
+        /**
+         * Set once CLOSE is sent, so that the server closing the socket is expected
+         */
+        private volatile boolean closing = false;
+        private volatile boolean closed = false;
+        /**
+         * Run by the event loop when the socket is lost without being closed by close
+         */
+        private volatile Runnable lostListener;
+        /**
+         * The database whose metrics listener receives the measurements of this connection
+         */
+        @Nonnull
+        private volatile IMilliDBDatabase owner = this;
+
+        private IMilliDBConnection(@Nonnull SocketChannel channel, @Nonnull String name, @Nonnegative int writeBufferLimit) {
+            super(name);
+            this.channel = Validate.nonnull(channel);
+            this.writeBufferLimit = Validate.nonnegative(writeBufferLimit);
         }
-    }
 
-    private static final class IMilliDBDocument extends IMilliDBFile implements MilliDBDocument {
-        private IMilliDBDocument(@Nonnull IMilliDBDatabase database, IMilliDBCollection parent, @Nonnull String name) {
-            super(database, parent, name);
+        /**
+         * Register the socket with the event loop which routes every incoming result to the caller waiting on its ID
+         */
+        private void start(@Nonnull MilliDBEventLoopGroup group) throws IOException {
+            channel.configureBlocking(false);
+            loop = group.register(channel, this);
+        }
+
+        /**
+         * Switch the framing of both directions; must only be called while no query is in flight, which is right after VERIFY
+         */
+        private void setProtocol(@Nonnull MilliDBProtocol protocol) {
+            this.protocol = Validate.nonnull(protocol);
         }
 
-        @Override
         @Nonnull
-        public MilliData fetch(@Nonnull String path) throws MilliDBResultException {
-            MilliDBResult result = database.execute(new MilliDBQuery(MilliDBQuery.Function.FETCH, new MilliMap().append("path", new MilliValue(getPath())).append("data_path", new MilliValue(path))));
-            if (!result.isSucceed()) throw new MilliDBResultException("Failed to execute FETCH from the file path of '" + getPath() + "' with the data path of '" + path + "'");
-            return result.getMetadata();
+        private MilliDBProtocol getProtocol() {
+            return protocol;
+        }
+
+        /**
+         * Compress the frames of both directions from now on; the same restriction as setProtocol applies
+         */
+        private void setCompression(@Nonnull MilliDBCompression compression) {
+            this.compression = Validate.nonnull(compression);
         }
 
         @Override
-        public void set(@Nonnull String path, @Nonnull MilliData value) throws MilliDBResultException {
-            MilliDBResult result = database.execute(new MilliDBQuery(MilliDBQuery.Function.SET, new MilliMap().append("path", new MilliValue(getPath())).append("data_path", new MilliValue(path)).append("data_value", value)));
-            if (!result.isSucceed()) throw new MilliDBResultException("Failed to execute SET from the file path of '" + getPath() + "' with the data path of '" + path + "'");
+        public void onReadable() throws IOException {
+            int read = channel.read(readBuffer);
+            if (read < 0) throw new IOException("The socket has been closed by the server");
+            MilliDBMetricsListener metrics = owner.metrics;
+            if (metrics != null) metrics.onBytesReceived(read);
+            ByteBuffer buffer = readBuffer;
+            buffer.flip();
+            MilliDBCompression compression = this.compression;
+            while (buffer.hasRemaining()) {
+                MilliDBResult result;
+                int position = buffer.position();
+                try {
+                    ByteBuffer inflated = compression == null ? null : compression.inflate(buffer, metrics);
+                    result = inflated != null ? protocol.decodeResult(inflated) : protocol.decodeResult(buffer, position + scanned);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Lost the framing of the results: " + e.getMessage());
+                } catch (MilliDBResultException e) {
+                    if (buffer.position() == position) throw new IOException("Lost the framing of the results: " + e.getMessage());
+                    MilliDBLogger.warning("Discarded an unparsable result: " + e.getMessage());
+                    scanned = 0;
+                    continue;
+                }
+                if (result == null) {
+                    scanned = buffer.limit() - position;
+                    break;
+                }
+                scanned = 0;
+                if (result.isEvent()) {
+                    owner.onEvent(result);
+                    continue;
+                }
+                CompletableFuture<MilliDBResult> future = inFlight.remove(result.getID());
+                if (future == null) {
+                    MilliDBLogger.warning("Discarded a result for the unknown query '" + result.getID() + "'");
+                    if (metrics != null) metrics.onDiscarded(result.getID());
+                    continue;
+                }
+                future.complete(result);
+            }
+            if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+                buffer.position(buffer.limit());
+                readBuffer = MilliDBBinaryCodec.ensure(buffer, buffer.capacity());
+            } else {
+                buffer.compact();
+            }
         }
 
         @Override
-        @Nonnull
-        public MilliData fetchContent() throws MilliDBResultException {
-            return fetch("");
+        public void onWritable() throws IOException {
+            synchronized (writeLock) {
+                flushWrites();
+                if (writeBuffer.position() == 0) loop.cancelWrite(channel);
+            }
         }
 
         @Override
-        public void setContent(@Nonnull MilliData value) throws MilliDBResultException {
-            set("", value);
+        public void onClosed(IOException cause) {
+            boolean lost = !closed && !closing;
+            if (lost) {
+                MilliDBLogger.warning("IOException occurs while communicating with a database: " + cause.getMessage());
+            }
+            closed = true;
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            synchronized (writeLock) {
+                writeLock.notifyAll();
+            }
+            Runnable listener = lostListener;
+            if (lost && listener != null) listener.run();
+            failInFlight();
+            abandon(lost);
         }
-    }
 
-    private static final class IMilliDBCollection extends IMilliDBFile implements MilliDBCollection {
-        private IMilliDBCollection(@Nonnull IMilliDBDatabase database, IMilliDBCollection parent, @Nonnull String name) {
-            super(database, parent, name);
+        /**
+         * Write as much of the pending frames as the socket accepts without blocking, and wake up the writers waiting for the buffer to drain; must hold writeLock
+         *
+         * @return  true if every pending frame has been written
+         */
+        private boolean flushWrites() throws IOException {
+            writeBuffer.flip();
+            try {
+                channel.write(writeBuffer);
+            } finally {
+                writeBuffer.compact();
+            }
+            if (writeBuffer.position() <= writeBufferLimit / 2) writeLock.notifyAll();
+            return writeBuffer.position() == 0;
         }
 
-        @Override
-        @Nonnull
-        public List<MilliDBFile> list() throws MilliDBResultException {
-            return list(null);
+        /**
+         * Hand the subscriptions registered on this connection back to their database, which registers them again elsewhere unless it has been closed
+         */
+        private void abandon(boolean lost) {
+            for (ISubscription subscription : owner.subscriptions.values()) subscription.abandon(this, lost);
+        }
+
+        private boolean isWatching() {
+            for (ISubscription subscription : owner.subscriptions.values()) if (subscription.isOn(this)) return true;
+            return false;
+        }
+
+        private void failInFlight() {
+            for (Long id : inFlight.keySet()) {
+                CompletableFuture<MilliDBResult> future = inFlight.remove(id);
+                if (future != null) future.completeExceptionally(new MilliDBConnectionException("The connection has been lost", true));
+            }
         }
 
+        /**
+         * Send CLOSE and wait for its result, unless called by the event loop of this connection, such as when a pool releases it from a completed query; only that thread could read the result, so the CLOSE is then sent without waiting
+         */
         @Override
-        @Nonnull
-        public List<MilliDBFile> list(MilliDBFilter filter) throws MilliDBResultException {
-            MilliDBResult result = database.execute(new MilliDBQuery(MilliDBQuery.Function.LIST, filter == null ? new MilliMap("path", new MilliValue(getPath())) : new MilliMap().append("path", new MilliValue(getPath())).append("filter", filter.toMilliMap())));
-            if (!result.isSucceed()) throw new MilliDBResultException("Failed to execute LIST from the file path of '" + getPath() + "'" + (filter == null ? "" : " with a filter of '" + filter.toMilliMap().toString() + "'"));
-            List<MilliDBFile> files = new ArrayList<>();
-            for (MilliData document : result.getMetadata().asMilliMap(new MilliMap()).get("documents").asMilliList(new MilliList())) {
-                if (document.isMilliValue()) files.add(new IMilliDBDocument(database, this, document.asMilliValue().asString()));
+        public void close() {
+            if (closing || closed) return;
+            closeWriteBehind();
+            closing = true;
+            MilliDBQuery query = new MilliDBQuery(MilliDBQuery.Function.CLOSE, MilliNull.INSTANCE);
+            if (loop != null && loop.inEventLoop()) {
+                submit(query, getRetryPolicy().getAttemptTimeout());
+            } else {
+                execute(query);
             }
-            for (MilliData collection : result.getMetadata().asMilliMap(new MilliMap()).get("collections").asMilliList(new MilliList())) {
-                if (collection.isMilliValue()) files.add(new IMilliDBCollection(database, this, collection.asMilliValue().asString()));
+            closed = true;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                MilliDBLogger.warning("IOException occurs while closing a database");
+                e.printStackTrace();
             }
-            return files;
+            synchronized (writeLock) {
+                writeLock.notifyAll();
+            }
+            failInFlight();
+            abandon(false);
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
         }
 
+        /**
+         * Queue the query for writing without waiting for the previous ones to be answered; the caller only blocks while the pending bytes exceed the write buffer limit
+         *
+         * @return  the future which is completed by the event loop once the result with the same ID arrives
+         */
         @Override
         @Nonnull
-        public MilliDBFile get(@Nonnull String name) throws MilliDBResultException {
-            if (Validate.nonnull(name).equals("")) return new IMilliDBNone(database, this, name);
-            MilliDBResult result = database.execute(new MilliDBQuery(MilliDBQuery.Function.GET, new MilliValue(getPath() + "/" + name)));
-            if (!result.isSucceed()) throw new MilliDBResultException("Failed to execute GET from the file path of '" + getPath() + "' with a file name of '" + name + "'");
-            String type = result.getMetadata().asMilliValue(new MilliValue()).asString();
-            switch (type) {
-                case "none":
-                    return new IMilliDBNone(database, this, name);
-                case "document":
-                    return new IMilliDBDocument(database, this, name);
-                case "collection":
-                    return new IMilliDBCollection(database, this, name);
-                default:
-                    throw new MilliDBResultException("Invalid result from the execution of GET from the file path of '" + getPath() + "' with a file name of '" + name + "'");
+        public CompletableFuture<MilliDBResult> submit(@Nonnull MilliDBQuery query, long timeout) {
+            CompletableFuture<MilliDBResult> future = new CompletableFuture<>();
+            if (closed) {
+                future.completeExceptionally(new MilliDBConnectionException("The connection has been closed", false));
+                return future;
+            }
+            long id = query.getID();
+            inFlight.put(id, future);
+            future.orTimeout(timeout, TimeUnit.MILLISECONDS).whenComplete((result, throwable) -> inFlight.remove(id, future));
+            if (query.getFunction() == MilliDBQuery.Function.WATCH) {
+                future.thenAccept(result -> {
+                    ISubscription subscription = owner.subscriptions.get(id);
+                    if (result.isSucceed() && subscription != null) subscription.bind(this, id);
+                });
             }
+            try {
+                synchronized (writeLock) {
+                    if (!loop.inEventLoop()) {
+                        long deadline = System.currentTimeMillis() + timeout;
+                        while (writeBuffer.position() > writeBufferLimit && !closed) {
+                            long remaining = deadline - System.currentTimeMillis();
+                            if (remaining <= 0) {
+                                future.completeExceptionally(new MilliDBConnectionException("The write buffer is full", false));
+                                return future;
+                            }
+                            writeLock.wait(remaining);
+                        }
+                    }
+                    if (closed) {
+                        future.completeExceptionally(new MilliDBConnectionException("The connection has been closed", false));
+                        return future;
+                    }
+                    int pending = writeBuffer.position();
+                    writeBuffer = protocol.encode(query, writeBuffer);
+                    MilliDBMetricsListener metrics = owner.metrics;
+                    MilliDBCompression compression = this.compression;
+                    if (compression != null) compression.compress(writeBuffer, pending, metrics);
+                    if (metrics != null) metrics.onBytesSent(writeBuffer.position() - pending);
+                    boolean idle = pending == 0;
+                    if (idle && !flushWrites()) loop.requestWrite(channel);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(new MilliDBConnectionException("Interrupted while waiting for the write buffer", false));
+            } catch (IOException e) {
+                future.completeExceptionally(new MilliDBConnectionException("IOException occurs while writing to a database: " + e.getMessage(), true));
+            }
+            return future;
+        }
+    }
+
+    /**
+     * A database which replaces its connection whenever the socket is lost, verifying again with the same credentials
+     * <p> It gives up once the server rejects the VERIFY or after the maximum number of attempts of the settings, and then fails its waiting and later queries with MilliDBConnectionException
+     */
+    private static final class IMilliDBReconnecting extends IMilliDBDatabase {
+        @Nonnull
+        private final String host;
+        private final int port;
+        @Nonnull
+        private final String user;
+        @Nonnull
+        private final String password;
+        @Nonnull
+        private final MilliDBConnectionSettings settings;
+        @Nonnull
+        private final MilliDBRetryPolicy backoff;
+        @Nonnull
+        private final ScheduledExecutorService reconnector;
+        /**
+         * The current connection, or the one being opened while reconnecting
+         */
+        @Nonnull
+        private volatile CompletableFuture<IMilliDBConnection> connection;
+        private volatile boolean closed = false;
+
+        private IMilliDBReconnecting(@Nonnull String host, int port, @Nonnull String name, @Nonnull String user, @Nonnull String password, @Nonnull MilliDBConnectionSettings settings, @Nonnull IMilliDBConnection connection) {
+            super(name);
+            this.host = Validate.nonnull(host);
+            this.port = port;
+            this.user = Validate.nonnull(user);
+            this.password = Validate.nonnull(password);
+            this.settings = Validate.nonnull(settings);
+            this.backoff = new MilliDBRetryPolicy().backoff(settings.getReconnectBaseDelay(), settings.getReconnectMaxDelay(), 2);
+            this.reconnector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "MilliDB-Reconnect-" + name);
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.connection = CompletableFuture.completedFuture(watch(connection));
+        }
+
+        @Nonnull
+        private IMilliDBConnection watch(@Nonnull IMilliDBConnection connection) {
+            connection.owner = this;
+            connection.lostListener = () -> reconnect(connection);
+            return connection;
         }
 
         @Override
-        public void create(@Nonnull String name, @Nonnull Class<? extends MilliDBFile> type, boolean force) throws MilliDBResultException {
-            if (Validate.nonnull(name).equals("")) return;
-            String t;
+        public void close() {
+            closeWriteBehind();
+            CompletableFuture<IMilliDBConnection> current;
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+                current = connection;
+            }
+            reconnector.shutdownNow();
+            if (!current.completeExceptionally(new MilliDBConnectionException("The database has been closed", false)) && !current.isCompletedExceptionally()) {
+                IMilliDBConnection connection = current.getNow(null);
+                if (connection != null) connection.close();
+            }
+        }
+
+        /**
+         * @return  true also once it has given up reconnecting, so that the failed queries are not retried
+         */
+        @Override
+        public boolean isClosed() {
+            return closed || connection.isCompletedExceptionally();
+        }
+
+        /**
+         * Send the query on the current connection, and send it again on the next one if the connection is lost before the query is written, or after it is written if the query is idempotent
+         */
+        @Override
+        @Nonnull
+        public CompletableFuture<MilliDBResult> submit(@Nonnull MilliDBQuery query, long timeout) {
+            CompletableFuture<MilliDBResult> future = new CompletableFuture<>();
+            future.orTimeout(timeout, TimeUnit.MILLISECONDS);
+            send(query, future, System.currentTimeMillis() + timeout);
+            return future;
+        }
+
+        private void send(@Nonnull MilliDBQuery query, @Nonnull CompletableFuture<MilliDBResult> future, long deadline) {
+            connection.whenComplete((connection, throwable) -> {
+                if (future.isDone()) return;
+                if (throwable != null) {
+                    future.completeExceptionally(throwable instanceof MilliDBConnectionException ? throwable : new MilliDBConnectionException("The database has been closed", false));
+                    return;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return;
+                connection.submit(query, remaining).whenComplete((result, t) -> {
+                    if (t == null) {
+                        future.complete(result);
+                        return;
+                    }
+                    Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                    if (cause instanceof MilliDBConnectionException && connection.isClosed() && !closed && (!((MilliDBConnectionException) cause).isSent() || query.isIdempotent())) {
+                        reconnect(connection);
+                        send(query, future, deadline);
+                        return;
+                    }
+                    future.completeExceptionally(cause);
+                });
+            });
+        }
+
+        /**
+         * Start opening a new connection in the background unless the lost one has already been replaced
+         */
+        private void reconnect(@Nonnull IMilliDBConnection lost) {
+            CompletableFuture<IMilliDBConnection> next = new CompletableFuture<>();
+            synchronized (this) {
+                if (closed || connection.isCompletedExceptionally() || connection.getNow(null) != lost) return;
+                connection = next;
+            }
+            MilliDBLogger.warning("The connection to the MilliDB database has been lost, reconnecting...");
+            MilliDBMetricsListener metrics = this.metrics;
+            if (metrics != null) metrics.onReconnect();
+            schedule(next, 1, 0);
+        }
+
+        private void schedule(@Nonnull CompletableFuture<IMilliDBConnection> next, int attempt, long delay) {
+            try {
+                reconnector.schedule(() -> {
+                    if (closed) return;
+                    IMilliDBConnection connection;
+                    try {
+                        connection = establish(host, port, name, user, password, settings, this);
+                    } catch (MilliDBConnectionException e) {
+                        MilliDBLogger.warning("Couldn't reconnect to the MilliDB database as it has rejected the VERIFY, giving up");
+                        next.completeExceptionally(e);
+                        return;
+                    }
+                    if (connection == null && settings.getReconnectMaxAttempts() > 0 && attempt >= settings.getReconnectMaxAttempts()) {
+                        MilliDBLogger.warning("Couldn't reconnect to the MilliDB database after " + attempt + " attempts, giving up");
+                        next.completeExceptionally(new MilliDBConnectionException("Couldn't reconnect to the MilliDB database after " + attempt + " attempts", false));
+                        return;
+                    }
+                    if (connection == null) {
+                        long wait = backoff.delay(attempt);
+                        MilliDBLogger.warning("Couldn't reconnect to the MilliDB database (attempt " + attempt + "), trying again in " + wait + "ms");
+                        schedule(next, attempt + 1, wait);
+                        return;
+                    }
+                    if (!next.complete(watch(connection)) || closed) connection.close();
+                }, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ignored) {
+            }
+        }
+    }
+
+    private static final class IMilliDBPool extends IMilliDBDatabase {
+        @Nonnull
+        private final String host;
+        private final int port;
+        @Nonnull
+        private final String user;
+        @Nonnull
+        private final String password;
+        @Nonnull
+        private final MilliDBPoolSettings settings;
+        @Nonnull
+        private final MilliDBConnectionSettings connectionSettings;
+        /**
+         * Guards idle, waiters and size
+         */
+        @Nonnull
+        private final Object lock = new Object();
+        /**
+         * Idle connections with the most recently released one first
+         */
+        @Nonnull
+        private final Deque<PooledConnection> idle = new ArrayDeque<>();
+        @Nonnull
+        private final Deque<CompletableFuture<IMilliDBConnection>> waiters = new ArrayDeque<>();
+        @Nonnull
+        private final ScheduledExecutorService maintainer;
+        /**
+         * The number of connections which are idle, checked out or being opened
+         */
+        private int size = 0;
+        private volatile boolean closed = false;
+
+        private IMilliDBPool(@Nonnull String host, int port, @Nonnull String name, @Nonnull String user, @Nonnull String password, @Nonnull MilliDBPoolSettings settings, @Nonnull MilliDBConnectionSettings connectionSettings) {
+            super(name);
+            this.host = Validate.nonnull(host);
+            this.port = port;
+            this.user = Validate.nonnull(user);
+            this.password = Validate.nonnull(password);
+            this.settings = Validate.nonnull(settings);
+            this.connectionSettings = Validate.nonnull(connectionSettings);
+            this.maintainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "MilliDB-Pool-" + name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        /**
+         * Open the minimum connections and schedule the background validation
+         *
+         * @return  false if the first connection is fail; the minimum connections which could not be opened are refilled by the background validation
+         */
+        private boolean start() {
+            int opened = 0;
+            while (opened < Math.max(1, settings.getMinSize())) {
+                IMilliDBConnection connection = open(host, port, name, user, password, connectionSettings, this);
+                if (connection == null) break;
+                synchronized (lock) {
+                    size++;
+                    idle.push(new PooledConnection(connection));
+                }
+                opened++;
+            }
+            long interval = settings.getValidationInterval();
+            if (interval > 0) maintainer.scheduleWithFixedDelay(this::maintain, interval, interval, TimeUnit.MILLISECONDS);
+            return opened > 0;
+        }
+
+        @Override
+        public void close() {
+            closeWriteBehind();
+            List<PooledConnection> connections;
+            List<CompletableFuture<IMilliDBConnection>> pending;
+            synchronized (lock) {
+                if (closed) return;
+                closed = true;
+                connections = new ArrayList<>(idle);
+                pending = new ArrayList<>(waiters);
+                idle.clear();
+                waiters.clear();
+                size -= connections.size();
+            }
+            maintainer.shutdownNow();
+            for (CompletableFuture<IMilliDBConnection> waiter : pending) waiter.completeExceptionally(new IllegalStateException("The pool has been closed"));
+            for (PooledConnection connection : connections) connection.connection.close();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<MilliDBResult> submit(@Nonnull MilliDBQuery query, long timeout) {
+            return checkout().handle((connection, throwable) -> {
+                if (throwable != null) {
+                    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                    return CompletableFuture.<MilliDBResult>failedFuture(new MilliDBConnectionException("Couldn't check out a connection: " + (cause instanceof TimeoutException ? "timed out" : cause.getMessage()), false));
+                }
+                return connection.submit(query, timeout).whenComplete((result, t) -> release(connection));
+            }).thenCompose(future -> future);
+        }
+
+        /**
+         * @return  an idle connection, a newly opened one if the pool has not reached the maximum size, or else the next released one; completed exceptionally with a TimeoutException after the checkout timeout
+         */
+        @Nonnull
+        private CompletableFuture<IMilliDBConnection> checkout() {
+            CompletableFuture<IMilliDBConnection> future = new CompletableFuture<>();
+            boolean grow = false;
+            synchronized (lock) {
+                if (closed) {
+                    future.completeExceptionally(new IllegalStateException("The pool has been closed"));
+                    return future;
+                }
+                PooledConnection pooled = idle.poll();
+                if (pooled != null) {
+                    future.complete(pooled.connection);
+                    return future;
+                }
+                waiters.add(future);
+                if (size < settings.getMaxSize()) {
+                    size++;
+                    grow = true;
+                }
+            }
+            future.orTimeout(settings.getCheckoutTimeout(), TimeUnit.MILLISECONDS).whenComplete((connection, throwable) -> {
+                if (throwable != null) {
+                    synchronized (lock) {
+                        waiters.remove(future);
+                    }
+                }
+            });
+            if (grow) grow();
+            return future;
+        }
+
+        /**
+         * Open one more connection in the background and hand it over to the first waiter; the size must have already been reserved
+         */
+        private void grow() {
+            try {
+                maintainer.execute(() -> {
+                    IMilliDBConnection connection = open(host, port, name, user, password, connectionSettings, this);
+                    if (connection == null) {
+                        synchronized (lock) {
+                            size--;
+                        }
+                        return;
+                    }
+                    release(connection);
+                });
+            } catch (RejectedExecutionException e) {
+                synchronized (lock) {
+                    size--;
+                }
+            }
+        }
+
+        private void release(@Nonnull IMilliDBConnection connection) {
+            if (connection.isClosed()) {
+                boolean grow;
+                synchronized (lock) {
+                    size--;
+                    grow = !closed && !waiters.isEmpty();
+                    if (grow) size++;
+                }
+                if (grow) grow();
+                return;
+            }
+            while (true) {
+                CompletableFuture<IMilliDBConnection> waiter;
+                synchronized (lock) {
+                    if (closed) {
+                        size--;
+                        break;
+                    }
+                    waiter = waiters.poll();
+                    if (waiter == null) {
+                        idle.push(new PooledConnection(connection));
+                        return;
+                    }
+                }
+                if (waiter.complete(connection)) return;
+            }
+            connection.close();
+        }
+
+        /**
+         * Evict the connections which have been idle for too long, validate the rest, and refill up to the minimum size
+         */
+        private void maintain() {
+            List<PooledConnection> checking;
+            long now = System.currentTimeMillis();
+            synchronized (lock) {
+                checking = new ArrayList<>(idle);
+                idle.clear();
+            }
+            for (PooledConnection pooled : checking) {
+                boolean evict;
+                synchronized (lock) {
+                    evict = size > settings.getMinSize() && now - pooled.released > settings.getIdleTimeout() && !pooled.connection.isWatching();
+                }
+                if (evict || !validate(pooled.connection)) {
+                    pooled.connection.close();
+                    synchronized (lock) {
+                        size--;
+                    }
+                } else {
+                    release(pooled.connection);
+                }
+            }
+            while (true) {
+                synchronized (lock) {
+                    if (closed || size >= settings.getMinSize()) return;
+                    size++;
+                }
+                IMilliDBConnection connection = open(host, port, name, user, password, connectionSettings, this);
+                if (connection == null) {
+                    synchronized (lock) {
+                        size--;
+                    }
+                    return;
+                }
+                release(connection);
+            }
+        }
+
+        @Override
+        public int getPoolSize() {
+            synchronized (lock) {
+                return size;
+            }
+        }
+
+        @Override
+        public int getPoolIdle() {
+            synchronized (lock) {
+                return idle.size();
+            }
+        }
+
+        @Override
+        public int getPoolWaiters() {
+            synchronized (lock) {
+                return waiters.size();
+            }
+        }
+
+        @Override
+        public int getPoolMaxSize() {
+            return settings.getMaxSize();
+        }
+
+        private boolean validate(@Nonnull IMilliDBConnection connection) {
+            if (connection.isClosed()) return false;
+            try {
+                return connection.submit(new MilliDBQuery(MilliDBQuery.Function.GET, new MilliValue(name)), settings.getCheckoutTimeout()).get().isSucceed();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                return false;
+            }
+        }
+
+        private static final class PooledConnection {
+            @Nonnull
+            private final IMilliDBConnection connection;
+            private final long released = System.currentTimeMillis();
+
+            private PooledConnection(@Nonnull IMilliDBConnection connection) {
+                this.connection = Validate.nonnull(connection);
+            }
+        }
+    }
+
+    private static final class ISubscription implements MilliDBSubscription {
+        @Nonnull
+        private final IMilliDBDatabase database;
+        @Nonnull
+        private final String path;
+        private final MilliDBFilter filter;
+        @Nonnull
+        private final Consumer<MilliDBEvent> listener;
+        /**
+         * The connection which the server pushes the events on, and the ID of the WATCH query sent on it; null while registering
+         */
+        private IMilliDBConnection connection;
+        private long id;
+        private volatile boolean active = true;
+
+        private ISubscription(@Nonnull IMilliDBDatabase database, @Nonnull String path, MilliDBFilter filter, @Nonnull Consumer<MilliDBEvent> listener) {
+            this.database = Validate.nonnull(database);
+            this.path = Validate.nonnull(path);
+            this.filter = filter;
+            this.listener = Validate.nonnull(listener);
+        }
+
+        @Override
+        @Nonnull
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public MilliDBFilter getFilter() {
+            return filter;
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+
+        /**
+         * Send WATCH through the database, which may pick any of its connections; the events can arrive as soon as it is sent, so the subscription is known by the ID of the query beforehand
+         */
+        @Nonnull
+        private CompletableFuture<Void> register() {
+            MilliMap metadata = new MilliMap("path", new MilliValue(path));
+            if (filter != null) metadata.put("filter", filter.toMilliMap());
+            MilliDBQuery query = new MilliDBQuery(MilliDBQuery.Function.WATCH, metadata);
+            database.subscriptions.put(query.getID(), this);
+            return database.executeAsync(query).thenAccept(result -> {
+                if (result.isSucceed()) return;
+                database.subscriptions.remove(query.getID(), this);
+                throw new MilliDBResultException("Failed to execute WATCH from the file path of '" + path + "'" + (filter == null ? "" : " with a filter of '" + filter.toMilliMap().toString() + "'"));
+            });
+        }
+
+        /**
+         * Called once the server has accepted WATCH on the connection
+         */
+        private void bind(@Nonnull IMilliDBConnection connection, long id) {
+            synchronized (this) {
+                if (active) {
+                    this.connection = connection;
+                    this.id = id;
+                    return;
+                }
+            }
+            database.subscriptions.remove(id, this);
+            unwatch(connection, id);
+        }
+
+        private synchronized boolean isOn(@Nonnull IMilliDBConnection connection) {
+            return this.connection == connection;
+        }
+
+        /**
+         * Register again elsewhere if the subscription was carried by the closed connection
+         *
+         * @param lost  true if the connection was not closed on purpose, which is reported to the listener even if the database cannot register again
+         */
+        private void abandon(@Nonnull IMilliDBConnection closed, boolean lost) {
+            synchronized (this) {
+                if (connection != closed) return;
+                connection = null;
+            }
+            database.subscriptions.remove(id, this);
+            boolean again = active && !database.isClosed();
+            if (again || lost) {
+                MilliDBEvent event = new MilliDBEvent(MilliDBEvent.Type.LOST, path, "");
+                database.forget(event);
+                deliver(event);
+            }
+            if (!again) {
+                active = false;
+                return;
+            }
+            register().whenComplete((registered, throwable) -> {
+                if (throwable == null) return;
+                active = false;
+                MilliDBLogger.warning("Couldn't register the subscription of '" + path + "' again: " + (throwable.getCause() != null ? throwable.getCause().getMessage() : throwable.getMessage()));
+            });
+        }
+
+        private void deliver(@Nonnull MilliDBEvent event) {
+            if (!active) return;
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {
+                MilliDBLogger.warning("The listener of the subscription of '" + path + "' has thrown: " + e);
+            }
+        }
+
+        @Override
+        public void close() {
+            IMilliDBConnection connection;
+            long id;
+            synchronized (this) {
+                if (!active) return;
+                active = false;
+                connection = this.connection;
+                id = this.id;
+                this.connection = null;
+            }
+            if (connection == null) return;
+            database.subscriptions.remove(id, this);
+            unwatch(connection, id);
+        }
+
+        private void unwatch(@Nonnull IMilliDBConnection connection, long id) {
+            if (!connection.isClosed()) connection.submit(new MilliDBQuery(MilliDBQuery.Function.UNWATCH, new MilliValue(id)), database.getRetryPolicy().getAttemptTimeout());
+        }
+    }
+
+    /**
+     * The SETs buffered for a database, each data path with only its last MilliData
+     */
+    private static final class IWriteBehind {
+        @Nonnull
+        private final IMilliDBDatabase database;
+        @Nonnull
+        private final MilliDBWriteBehindSettings settings;
+        /**
+         * The buffered SETs keyed by document, each document with its SETs in the order they must be applied
+         */
+        @Nonnull
+        private Map<String, Pending> pending = new LinkedHashMap<>();
+        /**
+         * The SETs which have been sent but not yet answered, oldest first, so that the fetches still see them
+         */
+        @Nonnull
+        private final List<Map<String, Pending>> sending = new ArrayList<>();
+        private int size = 0;
+        private boolean scheduled = false;
+        /**
+         * Completed once the last sent BATCH is answered; the next is only sent after it, so that the SETs of a data path are applied in order even on different connections
+         */
+        @Nonnull
+        private CompletableFuture<Void> last = CompletableFuture.completedFuture(null);
+
+        private IWriteBehind(@Nonnull IMilliDBDatabase database, @Nonnull MilliDBWriteBehindSettings settings) {
+            this.database = Validate.nonnull(database);
+            this.settings = Validate.nonnull(settings);
+        }
+
+        /**
+         * Buffer the SET, replacing the buffered SETs of the same data path and of the data paths inside it
+         */
+        private void write(@Nonnull IMilliDBDocument document, @Nonnull String path, @Nonnull MilliData value) {
+            boolean full;
+            boolean schedule = false;
+            synchronized (this) {
+                Map<String, MilliData> values = pending.computeIfAbsent(document.getPath(), file -> new Pending(document)).values;
+                int before = values.size();
+                values.keySet().removeIf(known -> MilliDBDataPath.contains(path, known));
+                values.put(path, value);
+                size += values.size() - before;
+                full = size >= settings.getMaxPending();
+                if (!full && !scheduled) scheduled = schedule = true;
+            }
+            if (full) {
+                flushQuietly();
+            } else if (schedule) {
+                CompletableFuture.runAsync(() -> {
+                    synchronized (this) {
+                        scheduled = false;
+                    }
+                    flushQuietly();
+                }, CompletableFuture.delayedExecutor(settings.getLinger(), TimeUnit.MILLISECONDS));
+            }
+        }
+
+        /**
+         * Drop the buffered SETs of the file and of the files inside it, which are about to be deleted
+         */
+        private synchronized void discard(@Nonnull String file) {
+            Iterator<Map.Entry<String, Pending>> iterator = pending.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Pending> entry = iterator.next();
+                if (!entry.getKey().equals(file) && !entry.getKey().startsWith(file + "/")) continue;
+                size -= entry.getValue().values.size();
+                iterator.remove();
+            }
+        }
+
+        private synchronized boolean isBuffering(@Nonnull String document) {
+            if (pending.containsKey(document)) return true;
+            for (Map<String, Pending> sent : sending) if (sent.containsKey(document)) return true;
+            return false;
+        }
+
+        /**
+         * @return  null if no buffered SET overlaps the data path
+         */
+        private synchronized Overlay overlay(@Nonnull String document, @Nonnull String path) {
+            Overlay overlay = new Overlay();
+            for (Map<String, Pending> sent : sending) overlay.add(sent.get(document), path);
+            overlay.add(pending.get(document), path);
+            return overlay.isEmpty() ? null : overlay;
+        }
+
+        /**
+         * Send the buffered SETs in a BATCH after the previous one is answered
+         *
+         * @return  the future which is completed exceptionally with a MilliDBResultException listing the failed SETs
+         */
+        @Nonnull
+        private CompletableFuture<Void> flush() {
+            synchronized (this) {
+                Map<String, Pending> sent = pending;
+                pending = new LinkedHashMap<>();
+                size = 0;
+                if (!sent.isEmpty()) sending.add(sent);
+                last = last.handle((ignored, throwable) -> null).thenCompose(ignored -> send(sent));
+                return last;
+            }
+        }
+
+        @Nonnull
+        private CompletableFuture<Void> flushQuietly() {
+            return flush().exceptionally(throwable -> {
+                MilliDBLogger.warning(String.valueOf(throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause().getMessage() : throwable.getMessage()));
+                return null;
+            });
+        }
+
+        @Nonnull
+        private CompletableFuture<Void> send(@Nonnull Map<String, Pending> sent) {
+            if (sent.isEmpty()) return CompletableFuture.completedFuture(null);
+            MilliDBBatch batch = database.batch();
+            for (Pending document : sent.values()) {
+                for (Map.Entry<String, MilliData> value : document.values.entrySet()) batch.set(document.document, value.getKey(), value.getValue());
+            }
+            return batch.executeAsync().handle((ignored, throwable) -> {
+                synchronized (this) {
+                    sending.remove(sent);
+                }
+                List<String> failed = new ArrayList<>();
+                for (MilliDBBatch.Operation<?> operation : batch.getOperations()) {
+                    MilliMap metadata = operation.getQuery().getMetadata().asMilliMap(new MilliMap());
+                    if (!operation.isSucceed()) failed.add(metadata.get("path").asMilliValue(new MilliValue()).asString() + ":" + metadata.get("data_path").asMilliValue(new MilliValue()).asString());
+                }
+                if (!failed.isEmpty()) throw new MilliDBResultException("Failed to execute the buffered SET of " + failed);
+                return null;
+            });
+        }
+
+        private static final class Pending {
+            @Nonnull
+            private final IMilliDBDocument document;
+            @Nonnull
+            private final Map<String, MilliData> values = new LinkedHashMap<>();
+
+            private Pending(@Nonnull IMilliDBDocument document) {
+                this.document = Validate.nonnull(document);
+            }
+        }
+
+        /**
+         * The buffered SETs overlapping a fetched data path, in the order they are applied
+         */
+        private static final class Overlay {
+            /**
+             * The MilliData of the last SET of the data path itself or of a parent, after which the rest are applied; null if there is none
+             */
+            private MilliData base;
+            @Nonnull
+            private final Map<String, MilliData> children = new LinkedHashMap<>();
+
+            private void add(Pending document, @Nonnull String path) {
+                if (document == null) return;
+                for (Map.Entry<String, MilliData> value : document.values.entrySet()) {
+                    String written = value.getKey();
+                    if (MilliDBDataPath.contains(written, path)) {
+                        base = MilliDBDataPath.resolve(value.getValue(), MilliDBDataPath.relative(written, path));
+                        children.clear();
+                    } else if (MilliDBDataPath.contains(path, written)) {
+                        String child = MilliDBDataPath.relative(path, written);
+                        children.remove(child);
+                        children.put(child, value.getValue());
+                    }
+                }
+            }
+
+            private boolean isEmpty() {
+                return base == null && children.isEmpty();
+            }
+
+            /**
+             * @return  true if the fetched MilliData is not needed
+             */
+            private boolean isComplete() {
+                return base != null;
+            }
+
+            /**
+             * @param current   the MilliData at the data path on the server, which is ignored if the overlay is complete
+             */
+            @Nonnull
+            private MilliData apply(@Nonnull MilliData current) {
+                MilliData data = base == null ? current : base;
+                for (Map.Entry<String, MilliData> child : children.entrySet()) {
+                    MilliData next = MilliDBDataPath.with(data, child.getKey(), child.getValue());
+                    if (next != null) data = next;
+                }
+                return data;
+            }
+        }
+    }
+
+    private static final class IMilliDBBatch implements MilliDBBatch {
+        @Nonnull
+        private final IMilliDBDatabase database;
+        @Nonnull
+        private final List<IOperation<?>> operations = new ArrayList<>();
+        private boolean executed = false;
+
+        private IMilliDBBatch(@Nonnull IMilliDBDatabase database) {
+            this.database = Validate.nonnull(database);
+        }
+
+        private synchronized <T> IOperation<T> add(@Nonnull IOperation<T> operation) {
+            if (executed) throw new IllegalStateException("The batch has already been executed");
+            operations.add(operation);
+            return operation;
+        }
+
+        @Override
+        @Nonnull
+        public Operation<MilliData> fetch(@Nonnull MilliDBDocument document, @Nonnull String path) {
+            String file = document.getPath();
+            MilliDBCache cache = database.cache;
+            long stamp = cache == null ? 0 : cache.stamp();
+            return add(new IOperation<>(new MilliDBQuery(MilliDBQuery.Function.FETCH, new MilliMap().append("path", new MilliValue(file)).append("data_path", new MilliValue(path))), result -> {
+                if (!result.isSucceed()) throw new MilliDBResultException("Failed to execute FETCH from the file path of '" + file + "' with the data path of '" + path + "'");
+                if (cache != null) cache.put(file, path, result.getMetadata(), stamp);
+                return result.getMetadata();
+            }));
+        }
+
+        @Override
+        @Nonnull
+        public Operation<Void> set(@Nonnull MilliDBDocument document, @Nonnull String path, @Nonnull MilliData value) {
+            String file = document.getPath();
+            return add(new IOperation<>(new MilliDBQuery(MilliDBQuery.Function.SET, new MilliMap().append("path", new MilliValue(file)).append("data_path", new MilliValue(path)).append("data_value", Validate.nonnull(value))), result -> {
+                MilliDBCache cache = database.cache;
+                if (!result.isSucceed()) {
+                    if (cache != null) cache.invalidate(file, path);
+                    throw new MilliDBResultException("Failed to execute SET from the file path of '" + file + "' with the data path of '" + path + "'");
+                }
+                if (cache != null) cache.write(file, path, value);
+                return null;
+            }));
+        }
+
+        @Override
+        @Nonnull
+        public Operation<Void> create(@Nonnull MilliDBCollection collection, @Nonnull String name, @Nonnull Class<? extends MilliDBFile> type, boolean force) {
+            String file = collection.getPath();
+            String t;
+            if (Validate.nonnull(type) == MilliDBDocument.class) t = "document";
+            else if (type == MilliDBCollection.class) t = "collection";
+            else t = "";
+            MilliMap metadata = new MilliMap().append("path", new MilliValue(file + "/" + name)).append("type", new MilliValue(t));
+            if (force) metadata.put("force", new MilliValue(true));
+            IOperation<Void> operation = add(new IOperation<>(new MilliDBQuery(MilliDBQuery.Function.CREATE, metadata), result -> {
+                database.handles.invalidate(file + "/" + name);
+                if (!result.isSucceed()) throw new MilliDBResultException("Failed to execute CREATE from the file path of '" + file + "' with a file name of '" + name + "', a file type of '" + t + "', and a force of '" + force + "'");
+                return null;
+            }));
+            if (Validate.nonnull(name).equals("") || t.equals("")) operation.future.complete(null);
+            return operation;
+        }
+
+        @Override
+        @Nonnull
+        public Operation<Void> delete(@Nonnull MilliDBFile file) {
+            String path = file.getPath();
+            IOperation<Void> operation = add(new IOperation<>(new MilliDBQuery(MilliDBQuery.Function.DELETE, new MilliValue(path)), result -> {
+                MilliDBCache cache = database.cache;
+                if (cache != null) cache.invalidate(path);
+                database.handles.invalidate(path);
+                if (!result.isSucceed()) throw new MilliDBResultException("Failed to execute DELETE from the file path of '" + path + "'");
+                return null;
+            }));
+            if (file.isMilliDBNone()) operation.future.complete(null);
+            return operation;
+        }
+
+        @Override
+        @Nonnull
+        public synchronized List<Operation<?>> getOperations() {
+            return new ArrayList<>(operations);
+        }
+
+        @Override
+        public void execute() throws MilliDBResultException {
+            await(executeAsync());
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<Void> executeAsync() {
+            List<IOperation<?>> pending = new ArrayList<>();
+            synchronized (this) {
+                if (executed) throw new IllegalStateException("The batch has already been executed");
+                executed = true;
+                for (IOperation<?> operation : operations) if (!operation.future.isDone()) pending.add(operation);
+            }
+            if (pending.isEmpty()) return CompletableFuture.completedFuture(null);
+            MilliList queries = new MilliList();
+            for (IOperation<?> operation : pending) queries.add(operation.query.asMilliMap());
+            return database.executeAsync(new MilliDBQuery(MilliDBQuery.Function.BATCH, new MilliMap("queries", queries))).thenAccept(result -> {
+                if (!result.isSucceed()) {
+                    MilliDBResultException exception = new MilliDBResultException("Failed to execute BATCH with " + pending.size() + " queries");
+                    for (IOperation<?> operation : pending) operation.future.completeExceptionally(exception);
+                    throw exception;
+                }
+                MilliList results = result.getMetadata().asMilliMap(new MilliMap()).get("results").asMilliList(new MilliList());
+                for (int i = 0; i < pending.size(); i++) {
+                    IOperation<?> operation = pending.get(i);
+                    MilliDBResult sub = new MilliDBResult(operation.query.getID(), false, MilliNull.INSTANCE);
+                    if (i < results.size()) {
+                        try {
+                            sub = MilliDBResult.Parser.parse(results.get(i).asMilliMap(new MilliMap()));
+                        } catch (MilliDBResultException e) {
+                            MilliDBLogger.warning("Discarded an unparsable sub-result of query '" + operation.query.getID() + "'");
+                        }
+                    }
+                    operation.resolve(sub);
+                }
+            });
+        }
+
+        private static final class IOperation<T> implements Operation<T> {
+            @Nonnull
+            private final MilliDBQuery query;
+            @Nonnull
+            private final java.util.function.Function<MilliDBResult, T> resolver;
+            @Nonnull
+            private final CompletableFuture<T> future = new CompletableFuture<>();
+
+            private IOperation(@Nonnull MilliDBQuery query, @Nonnull java.util.function.Function<MilliDBResult, T> resolver) {
+                this.query = Validate.nonnull(query);
+                this.resolver = Validate.nonnull(resolver);
+            }
+
+            private void resolve(@Nonnull MilliDBResult result) {
+                try {
+                    future.complete(resolver.apply(result));
+                } catch (MilliDBResultException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            @Nonnull
+            public MilliDBQuery getQuery() {
+                return query;
+            }
+
+            @Override
+            public boolean isSucceed() {
+                return future.isDone() && !future.isCompletedExceptionally();
+            }
+
+            @Override
+            public T get() throws MilliDBResultException {
+                if (!future.isDone()) throw new MilliDBResultException("The batch has not been executed yet");
+                return await(future);
+            }
+
+            @Override
+            @Nonnull
+            public CompletableFuture<T> getFuture() {
+                return future;
+            }
+        }
+    }
+
+    private static abstract class IMilliDBFile implements MilliDBFile {
+        @Nonnull
+        protected final IMilliDBDatabase database;
+        private final IMilliDBCollection parent;
+        @Nonnull
+        private final String name;
+        /**
+         * Computed once, since it is part of every query about this file
+         */
+        @Nonnull
+        private final String path;
+
+        private IMilliDBFile(@Nonnull IMilliDBDatabase database, IMilliDBCollection parent, @Nonnull String name) {
+            this.database = Validate.nonnull(database);
+            this.parent = parent;
+            this.name = Validate.nonnull(name);
+            this.path = parent == null ? name : parent.getPath() + "/" + name;
+        }
+
+        @Override
+        public final MilliDBCollection getParent() {
+            return parent;
+        }
+
+        @Override
+        @Nonnull
+        public final String getPath() {
+            return path;
+        }
+
+        @Override
+        @Nonnull
+        public final String getName() {
+            return name;
+        }
+
+        @Override
+        public final boolean isMilliDBNone() {
+            return this instanceof MilliDBNone;
+        }
+
+        @Override
+        public final boolean isMilliDBDocument() {
+            return this instanceof MilliDBDocument;
+        }
+
+        @Override
+        public final boolean isMilliDBCollection() {
+            return this instanceof MilliDBCollection;
+        }
+
+        @Override
+        @Nonnull
+        public final MilliDBDocument asMilliDBDocument() throws ClassCastException {
+            if (isMilliDBDocument()) return (MilliDBDocument) this;
+            throw new ClassCastException("Not a MilliDBDocument");
+        }
+
+        @Override
+        @Nonnull
+        public final MilliDBCollection asMilliDBCollection() throws ClassCastException {
+            if (isMilliDBCollection()) return (MilliDBCollection) this;
+            throw new ClassCastException("Not a MilliDBCollection");
+        }
+
+        @Override
+        public final void delete() throws MilliDBResultException {
+            if (isMilliDBNone()) return;
+            IWriteBehind writeBehind = database.writeBehind;
+            if (writeBehind != null) writeBehind.discard(getPath());
+            MilliDBResult result = database.execute(new MilliDBQuery(MilliDBQuery.Function.DELETE, new MilliValue(getPath())));
+            MilliDBCache cache = database.cache;
+            if (cache != null) cache.invalidate(getPath());
+            database.handles.invalidate(getPath());
+            forget();
+            if (!result.isSucceed()) throw new MilliDBResultException("Failed to execute DELETE from the file path of '" + getPath() + "'");
+        }
+
+        /**
+         * Drop whatever this handle knows about the content of the file
+         */
+        protected void forget() {
+        }
+    }
+
+    private static final class IMilliDBNone extends IMilliDBFile implements MilliDBNone {
+        private IMilliDBNone(@Nonnull IMilliDBDatabase database, IMilliDBCollection parent, @Nonnull String name) {
+            super(database, parent, name);
+        }
+    }
+
+    private static final class IMilliDBDocument extends IMilliDBFile implements MilliDBDocument {
+        /**
+         * The MilliData received along with the LIST which created this handle, keyed by data path; null if there is none or it is already served
+         */
+        private volatile Map<String, MilliData> prefetched;
+        /**
+         * The count of the database events when the LIST was sent
+         */
+        private final long prefetchedEvents;
+
+        private IMilliDBDocument(@Nonnull IMilliDBDatabase database, IMilliDBCollection parent, @Nonnull String name) {
+            this(database, parent, name, null, 0);
+        }
+
+        /**
+         * @param events    the count of the database events when the LIST was sent
+         */
+        private IMilliDBDocument(@Nonnull IMilliDBDatabase database, IMilliDBCollection parent, @Nonnull String name, Map<String, MilliData> prefetched, long events) {
+            super(database, parent, name);
+            this.prefetched = prefetched;
+            this.prefetchedEvents = events;
+        }
+
+        /**
+         * Take the prefetched MilliData, so that it is served once and later fetches go through the cache, which expires and is invalidated by the watches
+         *
+         * @return  null if there is none, it is already served, or an event has been received since the LIST was sent
+         */
+        private Map<String, MilliData> takePrefetched() {
+            Map<String, MilliData> values = prefetched;
+            if (values == null) return null;
+            prefetched = null;
+            return database.events.get() == prefetchedEvents ? values : null;
+        }
+
+        /**
+         * @param values    the prefetched MilliData; null if there is none
+         * @return          null if the data path is not covered by the prefetched MilliData
+         */
+        private static MilliData prefetched(Map<String, MilliData> values, @Nonnull String path) {
+            if (values == null) return null;
+            MilliData exact = values.get(path);
+            if (exact != null) return exact;
+            for (Map.Entry<String, MilliData> entry : values.entrySet()) {
+                String parent = entry.getKey();
+                if (MilliDBDataPath.contains(parent, path)) return MilliDBDataPath.resolve(entry.getValue(), parent.equals("") ? path : path.substring(parent.length() + 1));
+            }
+            return null;
+        }
+
+        @Override
+        protected void forget() {
+            prefetched = null;
+        }
+
+        @Override
+        @Nonnull
+        public MilliData fetch(@Nonnull String path) throws MilliDBResultException {
+            return await(fetchAsync(path));
+        }
+
+        @Override
+        @Nonnull
+        public Map<String, MilliData> fetch(@Nonnull Collection<String> paths) throws MilliDBResultException {
+            return await(fetchAsync(paths));
+        }
+
+        @Override
+        public void set(@Nonnull String path, @Nonnull MilliData value) throws MilliDBResultException {
+            await(setAsync(path, value));
+        }
+
+        @Override
+        @Nonnull
+        public MilliData fetchContent() throws MilliDBResultException {
+            return fetch("");
+        }
+
+        @Override
+        public void setContent(@Nonnull MilliData value) throws MilliDBResultException {
+            set("", value);
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<MilliData> fetchAsync(@Nonnull String path) {
+            return fetchAsync(path, null);
+        }
+
+        /**
+         * @param template  null to build the query from scratch
+         */
+        @Nonnull
+        private CompletableFuture<MilliData> fetchAsync(@Nonnull String path, MilliDBQueryTemplate template) {
+            IWriteBehind writeBehind = database.writeBehind;
+            IWriteBehind.Overlay overlay = writeBehind == null ? null : writeBehind.overlay(getPath(), Validate.nonnull(path));
+            if (overlay == null) return loadAsync(path, template);
+            if (overlay.isComplete()) return CompletableFuture.completedFuture(overlay.apply(MilliNull.INSTANCE));
+            return loadAsync(path, template).thenApply(overlay::apply);
+        }
+
+        /**
+         * Fetch without the SETs buffered by the write-behind
+         */
+        @Nonnull
+        private CompletableFuture<MilliData> loadAsync(@Nonnull String path, MilliDBQueryTemplate template) {
+            MilliData known = prefetched(takePrefetched(), path);
+            if (known != null) return CompletableFuture.completedFuture(known);
+            MilliDBCache cache = database.cache;
+            MilliData cached = cache == null ? null : cache.get(getPath(), path);
+            if (cached != null) return CompletableFuture.completedFuture(cached);
+            long stamp = cache == null ? 0 : cache.stamp();
+            MilliDBQuery query = template == null ? new MilliDBQuery(MilliDBQuery.Function.FETCH, new MilliMap().append("path", new MilliValue(getPath())).append("data_path", new MilliValue(path))) : template.query(path, null);
+            return database.executeAsync(query).thenApply(result -> {
+                if (!result.isSucceed()) throw new MilliDBResultException("Failed to execute FETCH from the file path of '" + getPath() + "' with the data path of '" + path + "'");
+                if (cache != null) cache.put(getPath(), path, result.getMetadata(), stamp);
+                return result.getMetadata();
+            });
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<Map<String, MilliData>> fetchAsync(@Nonnull Collection<String> paths) {
+            IWriteBehind writeBehind = database.writeBehind;
+            if (writeBehind != null && writeBehind.isBuffering(getPath())) {
+                Map<String, CompletableFuture<MilliData>> futures = new LinkedHashMap<>();
+                for (String path : Validate.nonnull(paths)) futures.computeIfAbsent(path, this::fetchAsync);
+                return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+                    Map<String, MilliData> fetched = new LinkedHashMap<>();
+                    for (Map.Entry<String, CompletableFuture<MilliData>> entry : futures.entrySet()) fetched.put(entry.getKey(), entry.getValue().join());
+                    return fetched;
+                });
+            }
+            Map<String, MilliData> known = new HashMap<>();
+            List<String> missing = new ArrayList<>();
+            MilliDBCache cache = database.cache;
+            Map<String, MilliData> values = takePrefetched();
+            for (String path : Validate.nonnull(paths)) {
+                if (known.containsKey(path) || missing.contains(path)) continue;
+                MilliData data = prefetched(values, path);
+                if (data == null && cache != null) data = cache.get(getPath(), path);
+                if (data != null) known.put(path, data);
+                else missing.add(path);
+            }
+            if (missing.isEmpty()) return CompletableFuture.completedFuture(ordered(paths, known));
+            long stamp = cache == null ? 0 : cache.stamp();
+            MilliList list = new MilliList();
+            for (String path : missing) list.add(new MilliValue(path));
+            return database.executeAsync(new MilliDBQuery(MilliDBQuery.Function.FETCH, new MilliMap().append("path", new MilliValue(getPath())).append("data_paths", list))).thenApply(result -> {
+                if (!result.isSucceed()) throw new MilliDBResultException("Failed to execute FETCH from the file path of '" + getPath() + "' with the data paths of '" + missing + "'");
+                MilliMap fetched = result.getMetadata().asMilliMap(new MilliMap());
+                for (String path : missing) {
+                    MilliData data = fetched.get(path);
+                    known.put(path, data);
+                    if (cache != null) cache.put(getPath(), path, data, stamp);
+                }
+                return ordered(paths, known);
+            });
+        }
+
+        /**
+         * @return  the MilliData in the order of the requested data paths
+         */
+        @Nonnull
+        private static Map<String, MilliData> ordered(@Nonnull Collection<String> paths, @Nonnull Map<String, MilliData> values) {
+            Map<String, MilliData> ordered = new LinkedHashMap<>();
+            for (String path : paths) ordered.put(path, values.get(path));
+            return ordered;
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<Void> setAsync(@Nonnull String path, @Nonnull MilliData value) {
+            return setAsync(path, value, null);
+        }
+
+        /**
+         * @param template  null to build the query from scratch
+         */
+        @Nonnull
+        private CompletableFuture<Void> setAsync(@Nonnull String path, @Nonnull MilliData value, MilliDBQueryTemplate template) {
+            IWriteBehind writeBehind = database.writeBehind;
+            if (writeBehind != null) {
+                MilliDBCache cache = database.cache;
+                Map<String, MilliData> values = prefetched;
+                if (values != null) values.keySet().removeIf(known -> MilliDBDataPath.overlaps(known, path));
+                if (cache != null) cache.invalidate(getPath(), path);
+                writeBehind.write(this, Validate.nonnull(path), Validate.nonnull(value));
+                return CompletableFuture.completedFuture(null);
+            }
+            MilliDBQuery query = template == null ? new MilliDBQuery(MilliDBQuery.Function.SET, new MilliMap().append("path", new MilliValue(getPath())).append("data_path", new MilliValue(path)).append("data_value", value)) : template.query(path, value);
+            return database.executeAsync(query).thenAccept(result -> {
+                MilliDBCache cache = database.cache;
+                Map<String, MilliData> values = prefetched;
+                if (values != null) values.keySet().removeIf(known -> MilliDBDataPath.overlaps(known, path));
+                if (!result.isSucceed()) {
+                    if (cache != null) cache.invalidate(getPath(), path);
+                    throw new MilliDBResultException("Failed to execute SET from the file path of '" + getPath() + "' with the data path of '" + path + "'");
+                }
+                if (cache != null) cache.write(getPath(), path, value);
+            });
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<MilliData> fetchContentAsync() {
+            return fetchAsync("");
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<Void> setContentAsync(@Nonnull MilliData value) {
+            return setAsync("", value);
+        }
+
+        @Override
+        public long increment(@Nonnull String path, long delta) throws MilliDBResultException {
+            return await(incrementAsync(path, delta));
+        }
+
+        @Override
+        public double increment(@Nonnull String path, double delta) throws MilliDBResultException {
+            return await(incrementAsync(path, delta));
+        }
+
+        @Override
+        public int append(@Nonnull String path, @Nonnull MilliData value) throws MilliDBResultException {
+            return await(appendAsync(path, value));
+        }
+
+        @Override
+        public int remove(@Nonnull String path, @Nonnull MilliData value) throws MilliDBResultException {
+            return await(removeAsync(path, value));
+        }
+
+        @Override
+        public void merge(@Nonnull String path, @Nonnull MilliMap value) throws MilliDBResultException {
+            await(mergeAsync(path, value));
+        }
+
+        @Override
+        public boolean removeKey(@Nonnull String path) throws MilliDBResultException {
+            return await(removeKeyAsync(path));
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<Long> incrementAsync(@Nonnull String path, long delta) {
+            return mutateAsync(MilliDBQuery.Function.INCREMENT, path, new MilliValue(delta)).thenApply(data -> {
+                String number = data.asMilliValue(new MilliValue()).asString();
+                try {
+                    return Long.parseLong(number);
+                } catch (NumberFormatException e) {
+                    throw new MilliDBResultException("Invalid result from the execution of INCREMENT from the file path of '" + getPath() + "' with the data path of '" + path + "'");
+                }
+            });
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<Double> incrementAsync(@Nonnull String path, double delta) {
+            return mutateAsync(MilliDBQuery.Function.INCREMENT, path, new MilliValue(delta)).thenApply(data -> {
+                String number = data.asMilliValue(new MilliValue()).asString();
+                try {
+                    return Double.parseDouble(number);
+                } catch (NumberFormatException e) {
+                    throw new MilliDBResultException("Invalid result from the execution of INCREMENT from the file path of '" + getPath() + "' with the data path of '" + path + "'");
+                }
+            });
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<Integer> appendAsync(@Nonnull String path, @Nonnull MilliData value) {
+            return mutateAsync(MilliDBQuery.Function.APPEND, path, Validate.nonnull(value)).thenApply(data -> data.asMilliValue(new MilliValue(0)).asInteger32());
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<Integer> removeAsync(@Nonnull String path, @Nonnull MilliData value) {
+            return mutateAsync(MilliDBQuery.Function.REMOVE, path, Validate.nonnull(value)).thenApply(data -> data.asMilliValue(new MilliValue(0)).asInteger32());
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<Void> mergeAsync(@Nonnull String path, @Nonnull MilliMap value) {
+            return mutateAsync(MilliDBQuery.Function.MERGE, path, Validate.nonnull(value)).thenAccept(data -> {
+            });
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<Boolean> removeKeyAsync(@Nonnull String path) {
+            return mutateAsync(MilliDBQuery.Function.REMOVE_KEY, path, null).thenApply(data -> data.asMilliValue(new MilliValue(false)).asBoolean());
+        }
+
+        /**
+         * Apply an atomic mutation at the data path, and forget the prefetched and cached MilliData which it changes
+         *
+         * @param value null for the mutations without a value
+         * @return      the future of the result metadata
+         */
+        @Nonnull
+        private CompletableFuture<MilliData> mutateAsync(@Nonnull MilliDBQuery.Function function, @Nonnull String path, MilliData value) {
+            MilliMap metadata = new MilliMap().append("path", new MilliValue(getPath())).append("data_path", new MilliValue(Validate.nonnull(path)));
+            if (value != null) metadata.put("data_value", value);
+            IWriteBehind writeBehind = database.writeBehind;
+            CompletableFuture<Void> flushed = writeBehind != null && writeBehind.isBuffering(getPath()) ? writeBehind.flushQuietly() : CompletableFuture.completedFuture(null);
+            return flushed.thenCompose(ignored -> database.executeAsync(new MilliDBQuery(function, metadata))).thenApply(result -> {
+                MilliDBCache cache = database.cache;
+                Map<String, MilliData> values = prefetched;
+                if (values != null) values.keySet().removeIf(known -> MilliDBDataPath.overlaps(known, path));
+                if (cache != null) cache.invalidate(getPath(), path);
+                if (!result.isSucceed()) throw new MilliDBResultException("Failed to execute " + function.name() + " from the file path of '" + getPath() + "' with the data path of '" + path + "'");
+                return result.getMetadata();
+            });
+        }
+
+        @Override
+        @Nonnull
+        public MilliDBPreparedFetch prepareFetch(@Nonnull String path) {
+            return new IMilliDBPreparedFetch(this, new MilliDBQueryTemplate(MilliDBQuery.Function.FETCH, getPath(), path), path);
+        }
+
+        @Override
+        @Nonnull
+        public MilliDBPreparedSet prepareSet(@Nonnull String path) {
+            return new IMilliDBPreparedSet(this, new MilliDBQueryTemplate(MilliDBQuery.Function.SET, getPath(), path), path);
+        }
+    }
+
+    private static final class IMilliDBPreparedFetch implements MilliDBPreparedFetch {
+        @Nonnull
+        private final IMilliDBDocument document;
+        @Nonnull
+        private final MilliDBQueryTemplate template;
+        @Nonnull
+        private final String dataPath;
+
+        private IMilliDBPreparedFetch(@Nonnull IMilliDBDocument document, @Nonnull MilliDBQueryTemplate template, @Nonnull String dataPath) {
+            this.document = Validate.nonnull(document);
+            this.template = Validate.nonnull(template);
+            this.dataPath = Validate.nonnull(dataPath);
+        }
+
+        @Override
+        @Nonnull
+        public MilliDBDocument getDocument() {
+            return document;
+        }
+
+        @Override
+        @Nonnull
+        public String getDataPath() {
+            return dataPath;
+        }
+
+        @Override
+        @Nonnull
+        public MilliData fetch(@Nonnull String... arguments) throws MilliDBResultException {
+            return await(fetchAsync(arguments));
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<MilliData> fetchAsync(@Nonnull String... arguments) {
+            return document.fetchAsync(template.dataPath(arguments), template);
+        }
+    }
+
+    private static final class IMilliDBPreparedSet implements MilliDBPreparedSet {
+        @Nonnull
+        private final IMilliDBDocument document;
+        @Nonnull
+        private final MilliDBQueryTemplate template;
+        @Nonnull
+        private final String dataPath;
+
+        private IMilliDBPreparedSet(@Nonnull IMilliDBDocument document, @Nonnull MilliDBQueryTemplate template, @Nonnull String dataPath) {
+            this.document = Validate.nonnull(document);
+            this.template = Validate.nonnull(template);
+            this.dataPath = Validate.nonnull(dataPath);
+        }
+
+        @Override
+        @Nonnull
+        public MilliDBDocument getDocument() {
+            return document;
+        }
+
+        @Override
+        @Nonnull
+        public String getDataPath() {
+            return dataPath;
+        }
+
+        @Override
+        public void set(@Nonnull MilliData value, @Nonnull String... arguments) throws MilliDBResultException {
+            await(setAsync(value, arguments));
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<Void> setAsync(@Nonnull MilliData value, @Nonnull String... arguments) {
+            return document.setAsync(template.dataPath(arguments), Validate.nonnull(value), template);
+        }
+    }
+
+    private static final class IMilliDBCollection extends IMilliDBFile implements MilliDBCollection {
+        private IMilliDBCollection(@Nonnull IMilliDBDatabase database, IMilliDBCollection parent, @Nonnull String name) {
+            super(database, parent, name);
+        }
+
+        @Override
+        @Nonnull
+        public List<MilliDBFile> list() throws MilliDBResultException {
+            return list(null);
+        }
+
+        @Override
+        @Nonnull
+        public List<MilliDBFile> list(MilliDBFilter filter) throws MilliDBResultException {
+            return await(listAsync(filter));
+        }
+
+        @Override
+        @Nonnull
+        public MilliDBFile get(@Nonnull String name) throws MilliDBResultException {
+            return await(getAsync(name));
+        }
+
+        @Override
+        public void create(@Nonnull String name, @Nonnull Class<? extends MilliDBFile> type, boolean force) throws MilliDBResultException {
+            await(createAsync(name, type, force));
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<List<MilliDBFile>> listAsync() {
+            return listAsync(null);
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<List<MilliDBFile>> listAsync(MilliDBFilter filter) {
+            return database.executeAsync(new MilliDBQuery(MilliDBQuery.Function.LIST, filter == null ? new MilliMap("path", new MilliValue(getPath())) : new MilliMap().append("path", new MilliValue(getPath())).append("filter", filter.toMilliMap()))).thenApply(result -> {
+                if (!result.isSucceed()) throw new MilliDBResultException("Failed to execute LIST from the file path of '" + getPath() + "'" + (filter == null ? "" : " with a filter of '" + filter.toMilliMap().toString() + "'"));
+                return files(result.getMetadata().asMilliMap(new MilliMap()));
+            });
+        }
+
+        @Override
+        @Nonnull
+        public List<MilliDBFile> listWithContents(MilliDBFilter filter, Collection<String> paths) throws MilliDBResultException {
+            return await(listWithContentsAsync(filter, paths));
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<List<MilliDBFile>> listWithContentsAsync(MilliDBFilter filter, Collection<String> paths) {
+            MilliMap metadata = new MilliMap("path", new MilliValue(getPath()));
+            if (filter != null) metadata.put("filter", filter.toMilliMap());
+            if (paths == null) {
+                metadata.put("contents", new MilliValue(true));
+            } else {
+                MilliList projections = new MilliList();
+                for (String path : paths) projections.add(new MilliValue(path));
+                metadata.put("projections", projections);
+            }
+            MilliDBCache cache = database.cache;
+            long stamp = cache == null ? 0 : cache.stamp();
+            long events = database.events.get();
+            return database.executeAsync(new MilliDBQuery(MilliDBQuery.Function.LIST, metadata)).thenApply(result -> {
+                if (!result.isSucceed()) throw new MilliDBResultException("Failed to execute LIST with contents from the file path of '" + getPath() + "'" + (filter == null ? "" : " with a filter of '" + filter.toMilliMap().toString() + "'"));
+                MilliMap map = result.getMetadata().asMilliMap(new MilliMap());
+                MilliMap contents = map.get("contents").asMilliMap(new MilliMap());
+                List<MilliDBFile> files = new ArrayList<>();
+                for (MilliData document : map.get("documents").asMilliList(new MilliList())) {
+                    if (!document.isMilliValue()) continue;
+                    String name = document.asMilliValue().asString();
+                    Map<String, MilliData> values = null;
+                    if (contents.keySet().contains(name)) {
+                        values = new ConcurrentHashMap<>();
+                        MilliData content = contents.get(name);
+                        if (paths == null) {
+                            values.put("", content);
+                        } else {
+                            MilliMap projected = content.asMilliMap(new MilliMap());
+                            for (String path : projected.keySet()) if (paths.contains(path)) values.put(path, projected.get(path));
+                        }
+                        if (cache != null) for (Map.Entry<String, MilliData> entry : values.entrySet()) cache.put(getPath() + "/" + name, entry.getKey(), entry.getValue(), stamp);
+                    }
+                    files.add(new IMilliDBDocument(database, this, name, values, events));
+                }
+                for (MilliData collection : map.get("collections").asMilliList(new MilliList())) {
+                    if (collection.isMilliValue()) files.add(new IMilliDBCollection(database, this, collection.asMilliValue().asString()));
+                }
+                return files;
+            });
+        }
+
+        @Override
+        @Nonnull
+        public Iterator<MilliDBFile> iterate(MilliDBFilter filter, int pageSize) {
+            return new ICursor(this, filter, Math.max(1, pageSize));
+        }
+
+        @Override
+        @Nonnull
+        public Stream<MilliDBFile> stream(MilliDBFilter filter, int pageSize) {
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterate(filter, pageSize), Spliterator.ORDERED | Spliterator.NONNULL), false);
+        }
+
+        /**
+         * The walk runs on its own ForkJoinPool of the parallelism, whose workers block on the LISTs by design; the calling thread waits for it through a ManagedBlocker, so that a ForkJoinPool which the caller belongs to can compensate
+         */
+        @Override
+        public void walk(int parallelism, @Nonnull Consumer<MilliDBFile> visitor) throws MilliDBResultException {
+            AtomicReference<RuntimeException> failure = new AtomicReference<>();
+            ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+            IWalk walk = new IWalk(this, Validate.nonnull(visitor), failure);
+            try {
+                pool.execute(walk);
+                ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                    @Override
+                    public boolean block() {
+                        walk.quietlyJoin();
+                        return true;
+                    }
+
+                    @Override
+                    public boolean isReleasable() {
+                        return walk.isDone();
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, new MilliDBResultException("Interrupted while walking the collection of '" + getPath() + "'"));
+            } finally {
+                pool.shutdownNow();
+            }
+            if (failure.get() != null) throw failure.get();
+        }
+
+        @Override
+        public long exportTo(@Nonnull Path file, int parallelism) throws MilliDBResultException, IOException {
+            int prefix = getPath().length() + 1;
+            AtomicLong documents = new AtomicLong();
+            try (MilliDBArchive.Writer writer = MilliDBArchive.create(file)) {
+                walk(parallelism, visited -> {
+                    try {
+                        if (visited.isMilliDBCollection()) {
+                            writer.writeCollection(visited.getPath().substring(prefix));
+                        } else if (visited.isMilliDBDocument()) {
+                            writer.writeDocument(visited.getPath().substring(prefix), visited.asMilliDBDocument().fetchContent());
+                            documents.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return documents.get();
+        }
+
+        @Override
+        public long importFrom(@Nonnull Path file, int batchSize, int parallelism) throws MilliDBResultException, IOException {
+            Map<String, IMilliDBCollection> collections = new HashMap<>();
+            collections.put("", this);
+            IImport sender = new IImport(Math.max(1, parallelism));
+            MilliDBBatch created = null;
+            MilliDBBatch documents = null;
+            int size = 0;
+            try (MilliDBArchive.Reader reader = MilliDBArchive.open(file)) {
+                MilliDBArchive.Record record;
+                while ((record = reader.next()) != null) {
+                    String path = record.getPath();
+                    int slash = path.lastIndexOf('/');
+                    IMilliDBCollection parent = collections.get(slash < 0 ? "" : path.substring(0, slash));
+                    String name = path.substring(slash + 1);
+                    if (parent == null || name.equals("")) throw new IOException("The record of '" + path + "' is not inside a recorded collection");
+                    if (record.getType() == MilliDBArchive.COLLECTION) {
+                        if (created == null) created = database.batch();
+                        created.create(parent, name, MilliDBCollection.class, true);
+                        collections.put(path, new IMilliDBCollection(database, parent, name));
+                        continue;
+                    }
+                    if (created != null) {
+                        createCollections(created);
+                        created = null;
+                    }
+                    if (documents == null) documents = database.batch();
+                    documents.create(parent, name, MilliDBDocument.class, true);
+                    documents.set(new IMilliDBDocument(database, parent, name), "", record.getContent());
+                    if (++size == Math.max(1, batchSize)) {
+                        sender.send(documents);
+                        documents = null;
+                        size = 0;
+                    }
+                }
+                if (created != null) createCollections(created);
+                if (documents != null) sender.send(documents);
+            } finally {
+                sender.await();
+            }
+            if (!sender.failed.isEmpty()) throw new MilliDBResultException("Failed to import " + sender.failed.size() + " of the documents, such as '" + sender.failed.get(0) + "'");
+            return sender.imported.get();
+        }
+
+        /**
+         * Execute the CREATEs of the collections of an import, which must have succeeded before the files inside them are sent
+         */
+        private void createCollections(@Nonnull MilliDBBatch batch) throws MilliDBResultException {
+            batch.execute();
+            for (MilliDBBatch.Operation<?> operation : batch.getOperations()) {
+                if (!operation.isSucceed()) throw new MilliDBResultException("Failed to import the collection of '" + operation.getQuery().getMetadata().asMilliMap(new MilliMap()).get("path").asMilliValue(new MilliValue()).asString() + "'");
+            }
+        }
+
+        /**
+         * @param cursor    null for the first page
+         */
+        @Nonnull
+        private CompletableFuture<Page> listPageAsync(MilliDBFilter filter, int pageSize, String cursor) {
+            MilliMap metadata = new MilliMap().append("path", new MilliValue(getPath())).append("limit", new MilliValue(pageSize));
+            if (filter != null) metadata.put("filter", filter.toMilliMap());
+            if (cursor != null) metadata.put("cursor", new MilliValue(cursor));
+            return database.executeAsync(new MilliDBQuery(MilliDBQuery.Function.LIST, metadata)).thenApply(result -> {
+                if (!result.isSucceed()) throw new MilliDBResultException("Failed to execute LIST from the file path of '" + getPath() + "' with a page size of '" + pageSize + "'" + (cursor == null ? "" : " and a cursor of '" + cursor + "'"));
+                MilliMap map = result.getMetadata().asMilliMap(new MilliMap());
+                MilliData next = map.get("cursor");
+                return new Page(files(map), next.isMilliValue() && !next.asMilliValue().asString().equals("") ? next.asMilliValue().asString() : null);
+            });
+        }
+
+        @Nonnull
+        private List<MilliDBFile> files(@Nonnull MilliMap metadata) {
+            List<MilliDBFile> files = new ArrayList<>();
+            for (MilliData document : metadata.get("documents").asMilliList(new MilliList())) {
+                if (document.isMilliValue()) files.add(new IMilliDBDocument(database, this, document.asMilliValue().asString()));
+            }
+            for (MilliData collection : metadata.get("collections").asMilliList(new MilliList())) {
+                if (collection.isMilliValue()) files.add(new IMilliDBCollection(database, this, collection.asMilliValue().asString()));
+            }
+            return files;
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<MilliDBFile> getAsync(@Nonnull String name) {
+            if (Validate.nonnull(name).equals("")) return CompletableFuture.completedFuture(new IMilliDBNone(database, this, name));
+            String path = getPath() + "/" + name;
+            MilliDBFile known = database.handles.getFresh(path);
+            if (known != null) return CompletableFuture.completedFuture(known);
+            return database.executeAsync(new MilliDBQuery(MilliDBQuery.Function.GET, new MilliValue(path))).thenApply(result -> {
+                if (!result.isSucceed()) throw new MilliDBResultException("Failed to execute GET from the file path of '" + getPath() + "' with a file name of '" + name + "'");
+                String type = result.getMetadata().asMilliValue(new MilliValue()).asString();
+                IMilliDBFile file;
+                switch (type) {
+                    case "none":
+                        return new IMilliDBNone(database, this, name);
+                    case "document":
+                        file = new IMilliDBDocument(database, this, name);
+                        database.handles.put(path, file);
+                        return file;
+                    case "collection":
+                        file = new IMilliDBCollection(database, this, name);
+                        database.handles.put(path, file);
+                        return file;
+                    default:
+                        throw new MilliDBResultException("Invalid result from the execution of GET from the file path of '" + getPath() + "' with a file name of '" + name + "'");
+                }
+            });
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<Void> createAsync(@Nonnull String name, @Nonnull Class<? extends MilliDBFile> type, boolean force) {
+            if (Validate.nonnull(name).equals("")) return CompletableFuture.completedFuture(null);
+            String t;
             if (Validate.nonnull(type) == MilliDBDocument.class) t = "document";
             else if (type == MilliDBCollection.class) t = "collection";
-            else return;
+            else return CompletableFuture.completedFuture(null);
             MilliMap metadata = new MilliMap().append("path", new MilliValue(getPath() + "/" + name)).append("type", new MilliValue(t));
             if (force) metadata.put("force", new MilliValue(true));
-            MilliDBResult result = database.execute(new MilliDBQuery(MilliDBQuery.Function.CREATE, metadata));
-            if (!result.isSucceed()) throw new MilliDBResultException("Failed to execute CREATE from the file path of '" + getPath() + "' with a file name of '" + name + "', a file type of '" + t + "', and a force of '" + force + "'");
+            return database.executeAsync(new MilliDBQuery(MilliDBQuery.Function.CREATE, metadata)).thenAccept(result -> {
+                database.handles.invalidate(getPath() + "/" + name);
+                if (!result.isSucceed()) throw new MilliDBResultException("Failed to execute CREATE from the file path of '" + getPath() + "' with a file name of '" + name + "', a file type of '" + t + "', and a force of '" + force + "'");
+            });
+        }
+    }
+
+    private static final class Page {
+        @Nonnull
+        private final List<MilliDBFile> files;
+        /**
+         * null if this is the last page
+         */
+        private final String cursor;
+
+        private Page(@Nonnull List<MilliDBFile> files, String cursor) {
+            this.files = Validate.nonnull(files);
+            this.cursor = cursor;
+        }
+    }
+
+    /**
+     * Lists a collection and forks the walks of the collections inside it; the first failure is kept and stops the walks which have not started yet
+     */
+    private static final class IWalk extends RecursiveAction {
+        @Nonnull
+        private final IMilliDBCollection collection;
+        @Nonnull
+        private final Consumer<MilliDBFile> visitor;
+        @Nonnull
+        private final AtomicReference<RuntimeException> failure;
+
+        private IWalk(@Nonnull IMilliDBCollection collection, @Nonnull Consumer<MilliDBFile> visitor, @Nonnull AtomicReference<RuntimeException> failure) {
+            this.collection = collection;
+            this.visitor = visitor;
+            this.failure = failure;
+        }
+
+        @Override
+        protected void compute() {
+            if (failure.get() != null) return;
+            List<IWalk> walks = new ArrayList<>();
+            try {
+                for (MilliDBFile file : collection.listWithContents(null, null)) {
+                    visitor.accept(file);
+                    if (file.isMilliDBCollection()) walks.add(new IWalk((IMilliDBCollection) file, visitor, failure));
+                }
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+                return;
+            }
+            invokeAll(walks);
+        }
+    }
+
+    /**
+     * Sends the BATCHes of an import with a bounded number in flight, counting the documents of which both the CREATE and the SET succeed
+     */
+    private static final class IImport {
+        @Nonnull
+        private final Semaphore permits;
+        private final int parallelism;
+        @Nonnull
+        private final AtomicLong imported = new AtomicLong();
+        @Nonnull
+        private final List<String> failed = Collections.synchronizedList(new ArrayList<>());
+
+        private IImport(int parallelism) {
+            this.permits = new Semaphore(parallelism);
+            this.parallelism = parallelism;
+        }
+
+        /**
+         * @param batch the pairs of a CREATE and a SET of each document
+         */
+        private void send(@Nonnull MilliDBBatch batch) throws MilliDBResultException {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MilliDBResultException("Interrupted while waiting for a BATCH to be answered");
+            }
+            batch.executeAsync().whenComplete((ignored, throwable) -> {
+                List<MilliDBBatch.Operation<?>> operations = batch.getOperations();
+                for (int i = 0; i + 1 < operations.size(); i += 2) {
+                    if (operations.get(i).isSucceed() && operations.get(i + 1).isSucceed()) imported.incrementAndGet();
+                    else failed.add(operations.get(i).getQuery().getMetadata().asMilliMap(new MilliMap()).get("path").asMilliValue(new MilliValue()).asString());
+                }
+                permits.release();
+            });
+        }
+
+        /**
+         * Wait for every sent BATCH to be answered
+         */
+        private void await() throws MilliDBResultException {
+            try {
+                permits.acquire(parallelism);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MilliDBResultException("Interrupted while waiting for a BATCH to be answered");
+            }
+            permits.release(parallelism);
+        }
+    }
+
+    /**
+     * Iterates the pages of a LIST, requesting the next page as soon as the current one arrives
+     */
+    private static final class ICursor implements Iterator<MilliDBFile> {
+        @Nonnull
+        private final IMilliDBCollection collection;
+        private final MilliDBFilter filter;
+        private final int pageSize;
+        @Nonnull
+        private Iterator<MilliDBFile> current = Collections.emptyIterator();
+        /**
+         * null once the last page has been received
+         */
+        private CompletableFuture<Page> next;
+
+        private ICursor(@Nonnull IMilliDBCollection collection, MilliDBFilter filter, int pageSize) {
+            this.collection = Validate.nonnull(collection);
+            this.filter = filter;
+            this.pageSize = pageSize;
+            this.next = collection.listPageAsync(filter, pageSize, null);
+        }
+
+        @Override
+        public boolean hasNext() throws MilliDBResultException {
+            while (!current.hasNext()) {
+                if (next == null) return false;
+                Page page = await(next);
+                next = page.cursor == null ? null : collection.listPageAsync(filter, pageSize, page.cursor);
+                current = page.files.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public MilliDBFile next() throws MilliDBResultException {
+            if (!hasNext()) throw new NoSuchElementException();
+            return current.next();
         }
     }
 }
@@ -0,0 +1,98 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnull;
+import com.sivannsan.millidata.MilliData;
+import com.sivannsan.millidata.MilliList;
+import com.sivannsan.millidata.MilliMap;
+import com.sivannsan.millidata.MilliNull;
+
+/**
+ * Client-side handling of the dot-delimited data paths used by FETCH and SET
+ */
+final class MilliDBDataPath {
+    private MilliDBDataPath() {
+    }
+
+    /**
+     * Follow the data path the same way as FETCH does: a number is used for MilliList index first, then MilliMap key
+     *
+     * @return  MilliNull if the data path does not exist; the data itself for an empty data path
+     */
+    @Nonnull
+    static MilliData resolve(@Nonnull MilliData data, @Nonnull String path) {
+        if (path.equals("")) return data;
+        MilliData current = data;
+        int start = 0;
+        while (start <= path.length()) {
+            int end = path.indexOf('.', start);
+            if (end < 0) end = path.length();
+            String key = path.substring(start, end);
+            if (current.isMilliList()) {
+                MilliList list = current.asMilliList();
+                int index = index(key);
+                current = index >= 0 && index < list.size() ? list.get(index) : MilliNull.INSTANCE;
+            } else if (current.isMilliMap()) {
+                current = current.asMilliMap().get(key);
+            } else {
+                return MilliNull.INSTANCE;
+            }
+            start = end + 1;
+        }
+        return current;
+    }
+
+    /**
+     * Copy the MilliMaps along the data path, creating the missing ones, the same way as SET changes a content
+     *
+     * @return  the copy with the value at the data path; null if the data path goes through a MilliData which is not a MilliMap
+     */
+    static MilliData with(@Nonnull MilliData data, @Nonnull String path, @Nonnull MilliData value) {
+        if (path.equals("")) return value;
+        int dot = path.indexOf('.');
+        String key = dot < 0 ? path : path.substring(0, dot);
+        if (!data.isMilliMap() && !(data instanceof MilliNull)) return null;
+        MilliMap copy = new MilliMap();
+        if (data.isMilliMap()) for (String known : data.asMilliMap().keySet()) copy.put(known, data.asMilliMap().get(known));
+        MilliData child = dot < 0 ? value : with(copy.get(key), path.substring(dot + 1), value);
+        if (child == null) return null;
+        copy.put(key, child);
+        return copy;
+    }
+
+    /**
+     * @return  the data path relative to the parent, which must contain it
+     */
+    @Nonnull
+    static String relative(@Nonnull String parent, @Nonnull String child) {
+        return parent.equals("") ? child : child.equals(parent) ? "" : child.substring(parent.length() + 1);
+    }
+
+    /**
+     * @return  true if one of the data paths is the same as or is the parent of the other
+     */
+    static boolean overlaps(@Nonnull String a, @Nonnull String b) {
+        if (a.length() > b.length()) return overlaps(b, a);
+        return a.equals("") || b.equals(a) || (b.startsWith(a) && b.charAt(a.length()) == '.');
+    }
+
+    /**
+     * @return  true if the parent is the same as or is the parent of the child
+     */
+    static boolean contains(@Nonnull String parent, @Nonnull String child) {
+        return parent.equals("") || child.equals(parent) || (child.startsWith(parent) && child.length() > parent.length() && child.charAt(parent.length()) == '.');
+    }
+
+    /**
+     * @return  -1 if the key is not a non-negative number
+     */
+    private static int index(@Nonnull String key) {
+        if (key.isEmpty() || key.length() > 9) return -1;
+        int index = 0;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            index = index * 10 + (c - '0');
+        }
+        return index;
+    }
+}
@@ -1,9 +1,16 @@
 package com.sivannsan.millidb;
 
+import com.sivannsan.foundation.annotation.Nonnegative;
 import com.sivannsan.foundation.annotation.Nonnull;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
 @SuppressWarnings("unused")
 public interface MilliDBDatabase {
+    /**
+     * Send the SETs buffered by the write-behind and wait for them before closing
+     */
     void close();
 
     @Nonnull
@@ -31,4 +38,90 @@ public interface MilliDBDatabase {
      * @param force if false, it won't create if the root already exists; if true, it will delete the old root and create a new root if the type is different
      */
     void createRoot(@Nonnull Class<? extends MilliDBFile> type, boolean force) throws MilliDBResultException;
+
+    /**
+     * Subscribe to the changes which the server pushes over the connection, instead of polling the file; the cache of this database is invalidated by the received events
+     * <p> The listener is called by the event loop in the order of the changes, so it must be quick and must not block; passing the submit method of a SubmissionPublisher delivers the events to a Flow.Publisher instead
+     *
+     * @param path      the same as the path of get method; a collection also delivers the events of every file inside
+     * @param filter    null to deliver the events of every document
+     */
+    @Nonnull
+    MilliDBSubscription watch(@Nonnull String path, MilliDBFilter filter, @Nonnull Consumer<MilliDBEvent> listener) throws MilliDBResultException;
+
+    /**
+     * The same as watch method without blocking the calling thread
+     *
+     * @return  the future which is completed exceptionally with a MilliDBResultException if the execution fails
+     */
+    @Nonnull
+    CompletableFuture<MilliDBSubscription> watchAsync(@Nonnull String path, MilliDBFilter filter, @Nonnull Consumer<MilliDBEvent> listener);
+
+    /**
+     * @return  a new batch whose operations are sent together in a single BATCH query
+     */
+    @Nonnull
+    MilliDBBatch batch();
+
+    /**
+     * Cache the fetched MilliData of the documents of this database; the cache is written through by set and invalidated by delete
+     *
+     * @param cache null to disable the caching
+     */
+    void setCache(MilliDBCache cache);
+
+    /**
+     * @return  null if the caching is disabled
+     */
+    MilliDBCache getCache();
+
+    /**
+     * Buffer the SETs of the documents of this database, so that a data path which is set many times is only sent with its last MilliData; the buffered SETs are sent together in a BATCH once the first has waited for the linger or once there are too many of them
+     * <p> set and setAsync return as soon as the MilliData is buffered, and their failures are only reported by flush; the fetches of this database see the buffered MilliData, while the other clients only see it once it is sent
+     *
+     * @param settings  null to send the buffered SETs and stop buffering, which is the default
+     */
+    void setWriteBehind(MilliDBWriteBehindSettings settings);
+
+    /**
+     * @return  null if the write-behind is disabled
+     */
+    MilliDBWriteBehindSettings getWriteBehind();
+
+    /**
+     * Send the buffered SETs now, and wait for them and for the ones sent before; nothing is sent if the write-behind is disabled
+     *
+     * @throws MilliDBResultException   if any of the SETs sent now fails
+     */
+    void flush() throws MilliDBResultException;
+
+    @Nonnull
+    CompletableFuture<Void> flushAsync();
+
+    /**
+     * Let get method reuse the handle it resolved for the same path without executing GET again, which is only safe while no other client changes the type of the files
+     *
+     * @param freshness the milliseconds during which a resolved handle is reused; 0 to always execute GET, which is the default
+     */
+    void setHandleFreshness(@Nonnegative long freshness);
+
+    long getHandleFreshness();
+
+    /**
+     * @param retryPolicy   how the queries of this database are sent again after they time out or their connection fails; the retry budget starts full again
+     */
+    void setRetryPolicy(@Nonnull MilliDBRetryPolicy retryPolicy);
+
+    @Nonnull
+    MilliDBRetryPolicy getRetryPolicy();
+
+    /**
+     * @param metrics   receives the latency of every query and the activity of the connections; null to disable the measuring
+     */
+    void setMetricsListener(MilliDBMetricsListener metrics);
+
+    /**
+     * @return  null if the measuring is disabled
+     */
+    MilliDBMetricsListener getMetricsListener();
 }
@@ -2,6 +2,11 @@ package com.sivannsan.millidb;
 
 import com.sivannsan.foundation.annotation.Nonnull;
 import com.sivannsan.millidata.MilliData;
+import com.sivannsan.millidata.MilliMap;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @SuppressWarnings("unused")
 public interface MilliDBDocument extends MilliDBFile {
@@ -11,6 +16,15 @@ public interface MilliDBDocument extends MilliDBFile {
     @Nonnull
     MilliData fetch(@Nonnull String path) throws MilliDBResultException;
 
+    /**
+     * Fetch several data paths in a single FETCH, receiving only the requested MilliData instead of the whole content
+     *
+     * @param paths the same as the path of fetch method
+     * @return      the fetched MilliData keyed by data path, in the order of the provided data paths
+     */
+    @Nonnull
+    Map<String, MilliData> fetch(@Nonnull Collection<String> paths) throws MilliDBResultException;
+
     /**
      * @param path  delimited by dot; provided with number will be used for MilliList index to update first, but if it does not exist, then MilliMap key to put; empty string will set the content (the same as setContent method)
      */
@@ -20,4 +34,113 @@ public interface MilliDBDocument extends MilliDBFile {
     MilliData fetchContent() throws MilliDBResultException;
 
     void setContent(@Nonnull MilliData value) throws MilliDBResultException;
+
+    /**
+     * The same as fetch method without blocking the calling thread
+     *
+     * @return  the future which is completed exceptionally with a MilliDBResultException if the execution fails
+     */
+    @Nonnull
+    CompletableFuture<MilliData> fetchAsync(@Nonnull String path);
+
+    /**
+     * The same as fetch method with several data paths without blocking the calling thread
+     *
+     * @return  the future which is completed exceptionally with a MilliDBResultException if the execution fails
+     */
+    @Nonnull
+    CompletableFuture<Map<String, MilliData>> fetchAsync(@Nonnull Collection<String> paths);
+
+    /**
+     * The same as set method without blocking the calling thread
+     *
+     * @return  the future which is completed exceptionally with a MilliDBResultException if the execution fails
+     */
+    @Nonnull
+    CompletableFuture<Void> setAsync(@Nonnull String path, @Nonnull MilliData value);
+
+    @Nonnull
+    CompletableFuture<MilliData> fetchContentAsync();
+
+    @Nonnull
+    CompletableFuture<Void> setContentAsync(@Nonnull MilliData value);
+
+    /**
+     * Add to the number at the data path on the server, without the race of fetching and setting it
+     *
+     * @param path  the same as the path of set method; a missing number counts as 0
+     * @param delta negative to decrement
+     * @return      the number after the addition
+     */
+    long increment(@Nonnull String path, long delta) throws MilliDBResultException;
+
+    /**
+     * The same as increment method with a fractional number
+     */
+    double increment(@Nonnull String path, double delta) throws MilliDBResultException;
+
+    /**
+     * Add the value to the end of the MilliList at the data path on the server, creating the MilliList if it is missing
+     *
+     * @return  the size of the MilliList after the addition
+     */
+    int append(@Nonnull String path, @Nonnull MilliData value) throws MilliDBResultException;
+
+    /**
+     * Remove every element which equals the value from the MilliList at the data path on the server
+     *
+     * @return  the number of removed elements
+     */
+    int remove(@Nonnull String path, @Nonnull MilliData value) throws MilliDBResultException;
+
+    /**
+     * Put every entry of the value into the MilliMap at the data path on the server, creating the MilliMap if it is missing, while the other entries are kept
+     */
+    void merge(@Nonnull String path, @Nonnull MilliMap value) throws MilliDBResultException;
+
+    /**
+     * Remove the last key of the data path from its MilliMap, or the index from its MilliList, on the server
+     *
+     * @return  false if the key did not exist
+     */
+    boolean removeKey(@Nonnull String path) throws MilliDBResultException;
+
+    /**
+     * The same as increment method without blocking the calling thread
+     *
+     * @return  the future which is completed exceptionally with a MilliDBResultException if the execution fails
+     */
+    @Nonnull
+    CompletableFuture<Long> incrementAsync(@Nonnull String path, long delta);
+
+    @Nonnull
+    CompletableFuture<Double> incrementAsync(@Nonnull String path, double delta);
+
+    @Nonnull
+    CompletableFuture<Integer> appendAsync(@Nonnull String path, @Nonnull MilliData value);
+
+    @Nonnull
+    CompletableFuture<Integer> removeAsync(@Nonnull String path, @Nonnull MilliData value);
+
+    @Nonnull
+    CompletableFuture<Void> mergeAsync(@Nonnull String path, @Nonnull MilliMap value);
+
+    @Nonnull
+    CompletableFuture<Boolean> removeKeyAsync(@Nonnull String path);
+
+    /**
+     * Prepare a FETCH which is executed many times, so that its constant parts are encoded once for the binary protocol
+     *
+     * @param path  the same as the path of fetch method, in which each {} is a placeholder filled when executing
+     */
+    @Nonnull
+    MilliDBPreparedFetch prepareFetch(@Nonnull String path);
+
+    /**
+     * Prepare a SET which is executed many times, so that only the value is encoded per execution for the binary protocol
+     *
+     * @param path  the same as the path of set method, in which each {} is a placeholder filled when executing
+     */
+    @Nonnull
+    MilliDBPreparedSet prepareSet(@Nonnull String path);
 }
@@ -0,0 +1,99 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnull;
+import com.sivannsan.foundation.common.Validate;
+import com.sivannsan.millidata.MilliData;
+import com.sivannsan.millidata.MilliMap;
+import com.sivannsan.millidata.MilliValue;
+
+/**
+ * A change of a file which the server pushes to a subscription (see MilliDBDatabase.watch)
+ */
+@SuppressWarnings("unused")
+public final class MilliDBEvent {
+    @Nonnull
+    private final Type type;
+    @Nonnull
+    private final String path;
+    @Nonnull
+    private final String dataPath;
+
+    /**
+     * @param path      the full path of the changed file, the same as MilliDBFile.getPath
+     * @param dataPath  the changed data path for CHANGE; empty string for the whole content or for the other types
+     */
+    public MilliDBEvent(@Nonnull Type type, @Nonnull String path, @Nonnull String dataPath) {
+        this.type = Validate.nonnull(type);
+        this.path = Validate.nonnull(path);
+        this.dataPath = Validate.nonnull(dataPath);
+    }
+
+    @Nonnull
+    public Type getType() {
+        return type;
+    }
+
+    @Nonnull
+    public String getPath() {
+        return path;
+    }
+
+    @Nonnull
+    public String getDataPath() {
+        return dataPath;
+    }
+
+    @Nonnull
+    public MilliMap toMilliMap() {
+        MilliMap map = new MilliMap().append("type", new MilliValue(type.toString())).append("path", new MilliValue(path));
+        if (!dataPath.equals("")) map.put("data_path", new MilliValue(dataPath));
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return toMilliMap().toString();
+    }
+
+    public enum Type {
+        CREATE,
+        /**
+         * The content of a document has been changed by SET or one of the atomic mutations
+         */
+        CHANGE,
+        DELETE,
+        /**
+         * Never sent by the server; delivered once the connection carrying the subscription is gone, as the changes since then may have been missed
+         */
+        LOST;
+
+        @Override
+        public String toString() {
+            switch (this) {
+                case CREATE: return "create";
+                case CHANGE: return "change";
+                case DELETE: return "delete";
+                case LOST: return "lost";
+                default: throw new IllegalStateException("Unexpected value: " + this);
+            }
+        }
+
+        public static Type fromString(@Nonnull String string) {
+            Validate.nonnull(string);
+            for (Type t : values()) if (t.toString().equalsIgnoreCase(string)) return t;
+            return null;
+        }
+    }
+
+    public static final class Parser {
+        /**
+         * @return  null if the MilliData is not a valid event
+         */
+        public static MilliDBEvent parse(@Nonnull MilliData event) {
+            MilliMap map = Validate.nonnull(event).asMilliMap(new MilliMap());
+            Type type = Type.fromString(map.get("type").asMilliValue(new MilliValue()).asString());
+            if (type == null || !map.get("path").isMilliValue()) return null;
+            return new MilliDBEvent(type, map.get("path").asMilliValue().asString(), map.get("data_path").asMilliValue(new MilliValue("")).asString());
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnull;
+import com.sivannsan.foundation.common.Validate;
+
+import java.io.IOException;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>A few selector threads which serve the sockets of every connection assigned to them, so that the number of threads does not grow with the number of connections</p>
+ * <p>Completions of the queries run on these threads, so the callbacks attached to the asynchronous operations should not block</p>
+ */
+@SuppressWarnings("unused")
+public final class MilliDBEventLoopGroup {
+    private static volatile MilliDBEventLoopGroup DEFAULT;
+
+    @Nonnull
+    private final EventLoop[] loops;
+    @Nonnull
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param threads   the number of selector threads; at least 1
+     */
+    public MilliDBEventLoopGroup(int threads) {
+        this.loops = new EventLoop[Math.max(1, threads)];
+        try {
+            for (int i = 0; i < loops.length; i++) loops[i] = new EventLoop(Selector.open(), "MilliDB-EventLoop-" + i);
+        } catch (IOException e) {
+            close();
+            throw new IllegalStateException("Couldn't open a selector", e);
+        }
+        for (EventLoop loop : loops) loop.thread.start();
+    }
+
+    /**
+     * @return  the group shared by the connections which are not configured with their own group
+     */
+    @Nonnull
+    public static MilliDBEventLoopGroup getDefault() {
+        if (DEFAULT == null) {
+            synchronized (MilliDBEventLoopGroup.class) {
+                if (DEFAULT == null) DEFAULT = new MilliDBEventLoopGroup(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+            }
+        }
+        return DEFAULT;
+    }
+
+    public int getThreads() {
+        return loops.length;
+    }
+
+    /**
+     * Stop every selector thread; the sockets still registered are closed
+     */
+    public void close() {
+        for (EventLoop loop : loops) {
+            if (loop == null) continue;
+            loop.closed = true;
+            loop.selector.wakeup();
+        }
+    }
+
+    /**
+     * Register the non-blocking channel with the next selector thread in turn
+     *
+     * @return  the loop the channel is registered with
+     */
+    @Nonnull
+    EventLoop register(@Nonnull SelectableChannel channel, @Nonnull Handler handler) throws IOException {
+        EventLoop loop = loops[Math.floorMod(next.getAndIncrement(), loops.length)];
+        loop.register(channel, handler);
+        return loop;
+    }
+
+    interface Handler {
+        /**
+         * Called on the selector thread when the registered channel has data to read
+         */
+        void onReadable() throws IOException;
+
+        /**
+         * Called on the selector thread when the registered channel can accept more bytes
+         */
+        void onWritable() throws IOException;
+
+        /**
+         * Called on the selector thread when the channel fails or the loop is closed
+         */
+        void onClosed(IOException cause);
+    }
+
+    static final class EventLoop implements Runnable {
+        @Nonnull
+        private final Selector selector;
+        @Nonnull
+        private final Thread thread;
+        @Nonnull
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private volatile boolean closed = false;
+
+        private EventLoop(@Nonnull Selector selector, @Nonnull String name) {
+            this.selector = Validate.nonnull(selector);
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        private void register(@Nonnull SelectableChannel channel, @Nonnull Handler handler) throws IOException {
+            if (closed) throw new IOException("The event loop has been closed");
+            CompletableFuture<Void> registered = new CompletableFuture<>();
+            execute(() -> {
+                try {
+                    channel.register(selector, SelectionKey.OP_READ, handler);
+                    registered.complete(null);
+                } catch (IOException | RuntimeException e) {
+                    registered.completeExceptionally(e);
+                }
+            });
+            try {
+                registered.get(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while registering a channel");
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            } catch (TimeoutException e) {
+                throw new IOException("Timed out while registering a channel");
+            }
+        }
+
+        boolean inEventLoop() {
+            return Thread.currentThread() == thread;
+        }
+
+        /**
+         * Run the task on the selector thread
+         */
+        void execute(@Nonnull Runnable task) {
+            tasks.add(task);
+            if (Thread.currentThread() != thread) selector.wakeup();
+        }
+
+        /**
+         * Ask for onWritable once the channel can accept more bytes; can be called from any thread
+         */
+        void requestWrite(@Nonnull SelectableChannel channel) {
+            execute(() -> {
+                SelectionKey key = channel.keyFor(selector);
+                if (key != null && key.isValid()) key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            });
+        }
+
+        /**
+         * Stop asking for onWritable; must be called on the selector thread
+         */
+        void cancelWrite(@Nonnull SelectableChannel channel) {
+            SelectionKey key = channel.keyFor(selector);
+            if (key != null && key.isValid()) key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+
+        @Override
+        public void run() {
+            while (!closed) {
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    MilliDBLogger.warning("IOException occurs while selecting the MilliDB sockets");
+                    e.printStackTrace();
+                    break;
+                }
+                Runnable task;
+                while ((task = tasks.poll()) != null) task.run();
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    Handler handler = (Handler) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) handler.onReadable();
+                        if (key.isValid() && key.isWritable()) handler.onWritable();
+                    } catch (IOException | CancelledKeyException e) {
+                        key.cancel();
+                        handler.onClosed(e instanceof IOException ? (IOException) e : new IOException(e));
+                    }
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                key.cancel();
+                ((Handler) key.attachment()).onClosed(new IOException("The event loop has been closed"));
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+            Runnable task;
+            while ((task = tasks.poll()) != null) task.run();
+        }
+    }
+}
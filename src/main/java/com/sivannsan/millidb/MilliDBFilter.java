@@ -2,9 +2,9 @@ package com.sivannsan.millidb;
 
 import com.sivannsan.foundation.annotation.Nonnull;
 import com.sivannsan.foundation.common.Validate;
-import com.sivannsan.millidata.MilliData;
-import com.sivannsan.millidata.MilliMap;
-import com.sivannsan.millidata.MilliValue;
+import com.sivannsan.millidata.*;
+
+import java.util.*;
 
 @SuppressWarnings("unused")
 public abstract class MilliDBFilter {
@@ -27,24 +27,146 @@ public abstract class MilliDBFilter {
         return superOf(subMilliData, 0);
     }
 
+    /**
+     * Used to check if the searched documents match every provided filter; no filter matches every document
+     */
+    public static And and(@Nonnull MilliDBFilter... filters) {
+        return new And(Arrays.asList(filters));
+    }
+
+    /**
+     * Used to check if the searched documents match at least one of the provided filters; no filter matches no document
+     */
+    public static Or or(@Nonnull MilliDBFilter... filters) {
+        return new Or(Arrays.asList(filters));
+    }
+
+    /**
+     * Used to check if the searched documents do not match the provided filter
+     */
+    public static Not not(@Nonnull MilliDBFilter filter) {
+        return new Not(filter);
+    }
+
+    /**
+     * Used to check if the MilliData at the data path of the searched documents equals the provided value
+     * @param path  the same as MilliDBDocument.fetch
+     */
+    public static EqualsAt equalsAt(@Nonnull String path, @Nonnull MilliData value) {
+        return new EqualsAt(path, value);
+    }
+
+    /**
+     * Used to check if the MilliData at the data path of the searched documents is a MilliValue within the range; the values are compared as numbers if both are numbers, or else as strings
+     * @param min   null for no lower bound
+     * @param max   null for no upper bound
+     */
+    public static Range range(@Nonnull String path, MilliValue min, boolean minInclusive, MilliValue max, boolean maxInclusive) {
+        return new Range(path, min, minInclusive, max, maxInclusive);
+    }
+
+    /**
+     * The same as range method with both bounds inclusive
+     */
+    public static Range between(@Nonnull String path, @Nonnull MilliValue min, @Nonnull MilliValue max) {
+        return range(path, Validate.nonnull(min), true, Validate.nonnull(max), true);
+    }
+
+    public static Range greaterThan(@Nonnull String path, @Nonnull MilliValue min) {
+        return range(path, Validate.nonnull(min), false, null, false);
+    }
+
+    public static Range lessThan(@Nonnull String path, @Nonnull MilliValue max) {
+        return range(path, null, false, Validate.nonnull(max), false);
+    }
+
+    /**
+     * Used to check if the data path of the searched documents exists, that is, its MilliData is not MilliNull
+     */
+    public static Exists exists(@Nonnull String path) {
+        return new Exists(path);
+    }
+
+    /**
+     * Used to check if the MilliData at the data path of the searched documents equals one of the provided values
+     */
+    public static In in(@Nonnull String path, @Nonnull Collection<? extends MilliData> values) {
+        return new In(path, values);
+    }
+
     @Nonnull
     public abstract String getType();
 
     @Nonnull
     public abstract MilliMap toMilliMap();
 
+    /**
+     * Evaluate this filter locally, for example on cached or prefetched contents
+     *
+     * @param content   the content of a document
+     */
+    public abstract boolean test(@Nonnull MilliData content);
+
     public static final class Parser {
         public static MilliDBFilter parse(@Nonnull String filter) {
             return parse(MilliData.Parser.parse(filter, new MilliMap()).asMilliMap(new MilliMap()));
         }
 
+        /**
+         * @return  null if the filter, or any filter inside it, is unknown or malformed
+         */
         public static MilliDBFilter parse(@Nonnull MilliMap filter) {
             String type = filter.get("_t").asMilliValue(new MilliValue()).asString();
-            if (type.equals("")) return null;
-            if (type.equals("so")) {
-                return superOf(filter.get("s"), filter.get("l").asMilliValue(new MilliValue(0)).asInteger32());
+            switch (type) {
+                case "so":
+                    return superOf(filter.get("s"), filter.get("l").asMilliValue(new MilliValue(0)).asInteger32());
+                case "and": {
+                    List<MilliDBFilter> parsed = parseAll(filter.get("f"));
+                    return parsed == null ? null : new And(parsed);
+                }
+                case "or": {
+                    List<MilliDBFilter> parsed = parseAll(filter.get("f"));
+                    return parsed == null ? null : new Or(parsed);
+                }
+                case "not": {
+                    MilliDBFilter parsed = parse(filter.get("f").asMilliMap(new MilliMap()));
+                    return parsed == null ? null : not(parsed);
+                }
+                case "eq":
+                    return equalsAt(path(filter), filter.get("v"));
+                case "r": {
+                    MilliData min = filter.get("min");
+                    MilliData max = filter.get("max");
+                    return range(path(filter), min.isMilliValue() ? min.asMilliValue() : null, filter.get("mini").asMilliValue(new MilliValue(false)).asBoolean(), max.isMilliValue() ? max.asMilliValue() : null, filter.get("maxi").asMilliValue(new MilliValue(false)).asBoolean());
+                }
+                case "ex":
+                    return exists(path(filter));
+                case "in": {
+                    List<MilliData> values = new ArrayList<>();
+                    for (MilliData value : filter.get("v").asMilliList(new MilliList())) values.add(value);
+                    return in(path(filter), values);
+                }
+                default:
+                    return null;
+            }
+        }
+
+        @Nonnull
+        private static String path(@Nonnull MilliMap filter) {
+            return filter.get("p").asMilliValue(new MilliValue()).asString();
+        }
+
+        /**
+         * @return  null if any of the filters is unknown or malformed, as skipping it would widen an AND or narrow an OR
+         */
+        private static List<MilliDBFilter> parseAll(@Nonnull MilliData filters) {
+            List<MilliDBFilter> parsed = new ArrayList<>();
+            for (MilliData filter : filters.asMilliList(new MilliList())) {
+                MilliDBFilter f = parse(filter.asMilliMap(new MilliMap()));
+                if (f == null) return null;
+                parsed.add(f);
             }
-            return null;
+            return parsed;
         }
     }
 
@@ -77,5 +199,344 @@ public abstract class MilliDBFilter {
         public MilliMap toMilliMap() {
             return new MilliMap("_t", new MilliValue(getType())).append("s", subMilliData).append("l", new MilliValue(level));
         }
+
+        @Override
+        public boolean test(@Nonnull MilliData content) {
+            return superOf(content, subMilliData, level);
+        }
+
+        /**
+         * @return  true if every key or index of the sub-data exists in the data with a matching MilliData, checked with equals method once the level reaches 0
+         */
+        private static boolean superOf(@Nonnull MilliData data, @Nonnull MilliData sub, int level) {
+            if (sub.isMilliMap()) {
+                if (!data.isMilliMap()) return false;
+                MilliMap map = data.asMilliMap();
+                MilliMap subMap = sub.asMilliMap();
+                for (String key : subMap.keySet()) {
+                    if (!map.keySet().contains(key)) return false;
+                    if (level == 0 ? !map.get(key).equals(subMap.get(key)) : !superOf(map.get(key), subMap.get(key), level - 1)) return false;
+                }
+                return true;
+            }
+            if (sub.isMilliList()) {
+                if (!data.isMilliList()) return false;
+                MilliList list = data.asMilliList();
+                MilliList subList = sub.asMilliList();
+                if (subList.size() > list.size()) return false;
+                for (int i = 0; i < subList.size(); i++) {
+                    if (level == 0 ? !list.get(i).equals(subList.get(i)) : !superOf(list.get(i), subList.get(i), level - 1)) return false;
+                }
+                return true;
+            }
+            return data.equals(sub);
+        }
+    }
+
+    public static final class And extends MilliDBFilter {
+        @Nonnull
+        private final List<MilliDBFilter> filters;
+
+        private And(@Nonnull List<MilliDBFilter> filters) {
+            this.filters = Collections.unmodifiableList(new ArrayList<>(filters));
+        }
+
+        @Override
+        @Nonnull
+        public String getType() {
+            return "and";
+        }
+
+        @Nonnull
+        public List<MilliDBFilter> getFilters() {
+            return filters;
+        }
+
+        @Override
+        @Nonnull
+        public MilliMap toMilliMap() {
+            MilliList list = new MilliList();
+            for (MilliDBFilter filter : filters) list.add(filter.toMilliMap());
+            return new MilliMap("_t", new MilliValue(getType())).append("f", list);
+        }
+
+        @Override
+        public boolean test(@Nonnull MilliData content) {
+            for (MilliDBFilter filter : filters) if (!filter.test(content)) return false;
+            return true;
+        }
+    }
+
+    public static final class Or extends MilliDBFilter {
+        @Nonnull
+        private final List<MilliDBFilter> filters;
+
+        private Or(@Nonnull List<MilliDBFilter> filters) {
+            this.filters = Collections.unmodifiableList(new ArrayList<>(filters));
+        }
+
+        @Override
+        @Nonnull
+        public String getType() {
+            return "or";
+        }
+
+        @Nonnull
+        public List<MilliDBFilter> getFilters() {
+            return filters;
+        }
+
+        @Override
+        @Nonnull
+        public MilliMap toMilliMap() {
+            MilliList list = new MilliList();
+            for (MilliDBFilter filter : filters) list.add(filter.toMilliMap());
+            return new MilliMap("_t", new MilliValue(getType())).append("f", list);
+        }
+
+        @Override
+        public boolean test(@Nonnull MilliData content) {
+            for (MilliDBFilter filter : filters) if (filter.test(content)) return true;
+            return false;
+        }
+    }
+
+    public static final class Not extends MilliDBFilter {
+        @Nonnull
+        private final MilliDBFilter filter;
+
+        private Not(@Nonnull MilliDBFilter filter) {
+            this.filter = Validate.nonnull(filter);
+        }
+
+        @Override
+        @Nonnull
+        public String getType() {
+            return "not";
+        }
+
+        @Nonnull
+        public MilliDBFilter getFilter() {
+            return filter;
+        }
+
+        @Override
+        @Nonnull
+        public MilliMap toMilliMap() {
+            return new MilliMap("_t", new MilliValue(getType())).append("f", filter.toMilliMap());
+        }
+
+        @Override
+        public boolean test(@Nonnull MilliData content) {
+            return !filter.test(content);
+        }
+    }
+
+    public static final class EqualsAt extends MilliDBFilter {
+        @Nonnull
+        private final String path;
+        @Nonnull
+        private final MilliData value;
+
+        private EqualsAt(@Nonnull String path, @Nonnull MilliData value) {
+            this.path = Validate.nonnull(path);
+            this.value = Validate.nonnull(value);
+        }
+
+        @Override
+        @Nonnull
+        public String getType() {
+            return "eq";
+        }
+
+        @Nonnull
+        public String getPath() {
+            return path;
+        }
+
+        @Nonnull
+        public MilliData getValue() {
+            return value;
+        }
+
+        @Override
+        @Nonnull
+        public MilliMap toMilliMap() {
+            return new MilliMap("_t", new MilliValue(getType())).append("p", new MilliValue(path)).append("v", value);
+        }
+
+        @Override
+        public boolean test(@Nonnull MilliData content) {
+            return MilliDBDataPath.resolve(content, path).equals(value);
+        }
+    }
+
+    public static final class Range extends MilliDBFilter {
+        @Nonnull
+        private final String path;
+        private final MilliValue min;
+        private final boolean minInclusive;
+        private final MilliValue max;
+        private final boolean maxInclusive;
+        /**
+         * The bounds parsed once as numbers; NaN if the bound is absent or not a number
+         */
+        private final double minNumber;
+        private final double maxNumber;
+
+        private Range(@Nonnull String path, MilliValue min, boolean minInclusive, MilliValue max, boolean maxInclusive) {
+            this.path = Validate.nonnull(path);
+            this.min = min;
+            this.minInclusive = minInclusive;
+            this.max = max;
+            this.maxInclusive = maxInclusive;
+            this.minNumber = min == null ? Double.NaN : number(min.asString());
+            this.maxNumber = max == null ? Double.NaN : number(max.asString());
+        }
+
+        @Override
+        @Nonnull
+        public String getType() {
+            return "r";
+        }
+
+        @Nonnull
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return  null if there is no lower bound
+         */
+        public MilliValue getMin() {
+            return min;
+        }
+
+        public boolean isMinInclusive() {
+            return minInclusive;
+        }
+
+        /**
+         * @return  null if there is no upper bound
+         */
+        public MilliValue getMax() {
+            return max;
+        }
+
+        public boolean isMaxInclusive() {
+            return maxInclusive;
+        }
+
+        @Override
+        @Nonnull
+        public MilliMap toMilliMap() {
+            MilliMap map = new MilliMap("_t", new MilliValue(getType())).append("p", new MilliValue(path));
+            if (min != null) map.append("min", min).append("mini", new MilliValue(minInclusive));
+            if (max != null) map.append("max", max).append("maxi", new MilliValue(maxInclusive));
+            return map;
+        }
+
+        @Override
+        public boolean test(@Nonnull MilliData content) {
+            MilliData data = MilliDBDataPath.resolve(content, path);
+            if (!data.isMilliValue()) return false;
+            String string = data.asMilliValue().asString();
+            double number = number(string);
+            if (min != null) {
+                int c = Double.isNaN(number) || Double.isNaN(minNumber) ? string.compareTo(min.asString()) : Double.compare(number, minNumber);
+                if (c < 0 || (c == 0 && !minInclusive)) return false;
+            }
+            if (max != null) {
+                int c = Double.isNaN(number) || Double.isNaN(maxNumber) ? string.compareTo(max.asString()) : Double.compare(number, maxNumber);
+                if (c > 0 || (c == 0 && !maxInclusive)) return false;
+            }
+            return true;
+        }
+
+        /**
+         * @return  NaN if the string is not a number
+         */
+        private static double number(@Nonnull String string) {
+            if (string.isEmpty()) return Double.NaN;
+            char c = string.charAt(0);
+            if ((c < '0' || c > '9') && c != '-' && c != '+' && c != '.') return Double.NaN;
+            try {
+                return Double.parseDouble(string);
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+    }
+
+    public static final class Exists extends MilliDBFilter {
+        @Nonnull
+        private final String path;
+
+        private Exists(@Nonnull String path) {
+            this.path = Validate.nonnull(path);
+        }
+
+        @Override
+        @Nonnull
+        public String getType() {
+            return "ex";
+        }
+
+        @Nonnull
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        @Nonnull
+        public MilliMap toMilliMap() {
+            return new MilliMap("_t", new MilliValue(getType())).append("p", new MilliValue(path));
+        }
+
+        @Override
+        public boolean test(@Nonnull MilliData content) {
+            return !MilliDBDataPath.resolve(content, path).isMilliNull();
+        }
+    }
+
+    public static final class In extends MilliDBFilter {
+        @Nonnull
+        private final String path;
+        @Nonnull
+        private final Set<MilliData> values;
+
+        private In(@Nonnull String path, @Nonnull Collection<? extends MilliData> values) {
+            this.path = Validate.nonnull(path);
+            this.values = Collections.unmodifiableSet(new LinkedHashSet<>(values));
+        }
+
+        @Override
+        @Nonnull
+        public String getType() {
+            return "in";
+        }
+
+        @Nonnull
+        public String getPath() {
+            return path;
+        }
+
+        @Nonnull
+        public Set<MilliData> getValues() {
+            return values;
+        }
+
+        @Override
+        @Nonnull
+        public MilliMap toMilliMap() {
+            MilliList list = new MilliList();
+            for (MilliData value : values) list.add(value);
+            return new MilliMap("_t", new MilliValue(getType())).append("p", new MilliValue(path)).append("v", list);
+        }
+
+        @Override
+        public boolean test(@Nonnull MilliData content) {
+            return values.contains(MilliDBDataPath.resolve(content, path));
+        }
     }
 }
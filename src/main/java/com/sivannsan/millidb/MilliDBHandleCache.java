@@ -0,0 +1,101 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnegative;
+import com.sivannsan.foundation.annotation.Nonnull;
+import com.sivannsan.foundation.common.Validate;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>The file handles resolved by a database keyed by their paths, so that resolving the same path again reuses the handle and its parents</p>
+ * <p>The handles are weakly referenced and the least recently used entries are evicted beyond the bound; a handle is only returned without executing GET while its type is fresh</p>
+ */
+final class MilliDBHandleCache {
+    @Nonnegative
+    private final int maxEntries;
+    /**
+     * Access ordered, so that the eldest entry is the least recently used one
+     */
+    @Nonnull
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    @Nonnegative
+    private volatile long freshness = 0;
+
+    MilliDBHandleCache(@Nonnegative int maxEntries) {
+        this.maxEntries = Validate.nonnegative(maxEntries);
+    }
+
+    void setFreshness(@Nonnegative long freshness) {
+        this.freshness = Validate.nonnegative(freshness);
+    }
+
+    long getFreshness() {
+        return freshness;
+    }
+
+    /**
+     * @return  null if the handle is absent, collected, or resolved longer ago than the freshness
+     */
+    MilliDBFile getFresh(@Nonnull String path) {
+        long freshness = this.freshness;
+        if (freshness == 0) return null;
+        synchronized (this) {
+            Entry entry = entries.get(path);
+            if (entry == null || System.currentTimeMillis() - entry.resolved > freshness) return null;
+            return live(path, entry);
+        }
+    }
+
+    /**
+     * @return  null if the handle is absent or collected, regardless of its freshness
+     */
+    synchronized MilliDBFile get(@Nonnull String path) {
+        Entry entry = entries.get(path);
+        return entry == null ? null : live(path, entry);
+    }
+
+    private MilliDBFile live(@Nonnull String path, @Nonnull Entry entry) {
+        MilliDBFile handle = entry.handle.get();
+        if (handle == null) entries.remove(path);
+        return handle;
+    }
+
+    /**
+     * Remember the handle as resolved now
+     */
+    synchronized void put(@Nonnull String path, @Nonnull MilliDBFile handle) {
+        entries.put(path, new Entry(handle));
+        if (entries.size() > maxEntries) {
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Forget the file and every file inside it, after it is created or deleted
+     */
+    synchronized void invalidate(@Nonnull String path) {
+        String prefix = path + "/";
+        entries.keySet().removeIf(key -> key.equals(path) || key.startsWith(prefix));
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    private static final class Entry {
+        @Nonnull
+        private final WeakReference<MilliDBFile> handle;
+        private final long resolved = System.currentTimeMillis();
+
+        private Entry(@Nonnull MilliDBFile handle) {
+            this.handle = new WeakReference<>(handle);
+        }
+    }
+}
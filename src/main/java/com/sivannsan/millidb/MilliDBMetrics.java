@@ -0,0 +1,319 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnull;
+import com.sivannsan.foundation.common.Validate;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Collects the measurements of a database into counters and per-function latency histograms, readable directly or through JMX</p>
+ * <p>The histograms have 16 buckets per power of two microseconds, so that a percentile is accurate to about 6%</p>
+ */
+@SuppressWarnings("unused")
+public final class MilliDBMetrics implements MilliDBMetricsListener, MilliDBMetricsMXBean {
+    @Nonnull
+    private final Histogram[] histograms = new Histogram[MilliDBQuery.Function.values().length];
+    @Nonnull
+    private final LongAdder failures = new LongAdder();
+    @Nonnull
+    private final LongAdder retries = new LongAdder();
+    @Nonnull
+    private final LongAdder timeouts = new LongAdder();
+    @Nonnull
+    private final LongAdder discarded = new LongAdder();
+    @Nonnull
+    private final LongAdder reconnects = new LongAdder();
+    @Nonnull
+    private final LongAdder bytesSent = new LongAdder();
+    @Nonnull
+    private final LongAdder bytesReceived = new LongAdder();
+    @Nonnull
+    private final LongAdder compressionRaw = new LongAdder();
+    @Nonnull
+    private final LongAdder compressionCompressed = new LongAdder();
+    @Nonnull
+    private final LongAdder compressionNanos = new LongAdder();
+    private volatile Gauges gauges;
+
+    public MilliDBMetrics() {
+        for (int i = 0; i < histograms.length; i++) histograms[i] = new Histogram();
+    }
+
+    /**
+     * Register this as an MXBean of the platform MBean server
+     *
+     * @param name  distinguishes the databases, such as the database name
+     * @return      the object name under com.sivannsan.millidb
+     */
+    @Nonnull
+    public ObjectName register(@Nonnull String name) throws JMException {
+        ObjectName objectName = new ObjectName("com.sivannsan.millidb:type=Metrics,name=" + ObjectName.quote(Validate.nonnull(name)));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public void onAttach(@Nonnull Gauges gauges) {
+        this.gauges = gauges;
+    }
+
+    @Override
+    public void onQuery(@Nonnull MilliDBQuery.Function function, long nanos, boolean succeed) {
+        histograms[function.ordinal()].record(nanos / 1000);
+        if (!succeed) failures.increment();
+    }
+
+    @Override
+    public void onBytesSent(int bytes) {
+        bytesSent.add(bytes);
+    }
+
+    @Override
+    public void onBytesReceived(int bytes) {
+        bytesReceived.add(bytes);
+    }
+
+    @Override
+    public void onRetry(@Nonnull MilliDBQuery.Function function) {
+        retries.increment();
+    }
+
+    @Override
+    public void onTimeout(@Nonnull MilliDBQuery.Function function) {
+        timeouts.increment();
+    }
+
+    @Override
+    public void onDiscarded(long id) {
+        discarded.increment();
+    }
+
+    @Override
+    public void onReconnect() {
+        reconnects.increment();
+    }
+
+    @Override
+    public void onCompressed(int raw, int compressed, long nanos) {
+        compressionRaw.add(raw);
+        compressionCompressed.add(compressed);
+        compressionNanos.add(nanos);
+    }
+
+    @Override
+    public void onInflated(int compressed, int raw, long nanos) {
+        compressionRaw.add(raw);
+        compressionCompressed.add(compressed);
+        compressionNanos.add(nanos);
+    }
+
+    /**
+     * @return  the number of executed queries of the function
+     */
+    public long getQueries(@Nonnull MilliDBQuery.Function function) {
+        return histograms[function.ordinal()].count();
+    }
+
+    /**
+     * @param percentile    between 0 and 1, such as 0.99
+     * @return              the latency in milliseconds below which the percentile of the queries of the function completed; 0 if there is none
+     */
+    public double getLatency(@Nonnull MilliDBQuery.Function function, double percentile) {
+        return histograms[function.ordinal()].percentile(percentile) / 1000.0;
+    }
+
+    @Override
+    public long getQueries() {
+        long queries = 0;
+        for (Histogram histogram : histograms) queries += histogram.count();
+        return queries;
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public long getDiscarded() {
+        return discarded.sum();
+    }
+
+    @Override
+    public long getReconnects() {
+        return reconnects.sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public double getCompressionRatio() {
+        long compressed = compressionCompressed.sum();
+        return compressed == 0 ? 0 : (double) compressionRaw.sum() / compressed;
+    }
+
+    @Override
+    public double getCompressionTime() {
+        return compressionNanos.sum() / 1_000_000.0;
+    }
+
+    @Override
+    public int getInFlight() {
+        Gauges gauges = this.gauges;
+        return gauges == null ? 0 : gauges.getInFlight();
+    }
+
+    @Override
+    public int getPoolSize() {
+        Gauges gauges = this.gauges;
+        return gauges == null ? 0 : gauges.getPoolSize();
+    }
+
+    @Override
+    public int getPoolIdle() {
+        Gauges gauges = this.gauges;
+        return gauges == null ? 0 : gauges.getPoolIdle();
+    }
+
+    @Override
+    public int getPoolWaiters() {
+        Gauges gauges = this.gauges;
+        return gauges == null ? 0 : gauges.getPoolWaiters();
+    }
+
+    @Override
+    public int getPoolMaxSize() {
+        Gauges gauges = this.gauges;
+        return gauges == null ? 0 : gauges.getPoolMaxSize();
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP50() {
+        return latencies(0.5);
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP99() {
+        return latencies(0.99);
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP999() {
+        return latencies(0.999);
+    }
+
+    @Nonnull
+    private Map<String, Double> latencies(double percentile) {
+        Map<String, Double> latencies = new LinkedHashMap<>();
+        for (MilliDBQuery.Function function : MilliDBQuery.Function.values()) {
+            if (getQueries(function) > 0) latencies.put(function.name(), getLatency(function, percentile));
+        }
+        return latencies;
+    }
+
+    /**
+     * Zero every counter and histogram; the measurements recorded meanwhile may be partly lost
+     */
+    @Override
+    public void reset() {
+        for (Histogram histogram : histograms) histogram.reset();
+        failures.reset();
+        retries.reset();
+        timeouts.reset();
+        discarded.reset();
+        reconnects.reset();
+        bytesSent.reset();
+        bytesReceived.reset();
+        compressionRaw.reset();
+        compressionCompressed.reset();
+        compressionNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "MilliDBMetrics{queries=" + getQueries() + ", failures=" + getFailures() + ", retries=" + getRetries() + ", timeouts=" + getTimeouts() + ", discarded=" + getDiscarded() + ", bytesSent=" + getBytesSent() + ", bytesReceived=" + getBytesReceived() + ", compressionRatio=" + getCompressionRatio() + ", compressionTime=" + getCompressionTime() + ", inFlight=" + getInFlight() + ", p99=" + getLatencyP99() + "}";
+    }
+
+    /**
+     * Log-linear buckets of microseconds: the values below 16 have their own bucket, and every power of two above is split into 16 buckets
+     */
+    private static final class Histogram {
+        private static final int SUB_BUCKETS = 16;
+        private static final int SUB_BITS = 4;
+
+        @Nonnull
+        private final AtomicLongArray buckets = new AtomicLongArray(SUB_BUCKETS * (64 - SUB_BITS + 1));
+        @Nonnull
+        private final LongAdder count = new LongAdder();
+
+        private void record(long value) {
+            buckets.incrementAndGet(index(Math.max(0, value)));
+            count.increment();
+        }
+
+        private long count() {
+            return count.sum();
+        }
+
+        private void reset() {
+            for (int i = 0; i < buckets.length(); i++) buckets.set(i, 0);
+            count.reset();
+        }
+
+        private long percentile(double percentile) {
+            long total = 0;
+            long[] snapshot = new long[buckets.length()];
+            for (int i = 0; i < snapshot.length; i++) total += snapshot[i] = buckets.get(i);
+            if (total == 0) return 0;
+            long target = Math.max(1, (long) Math.ceil(Math.max(0, Math.min(1, percentile)) * total));
+            long seen = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= target) return value(i);
+            }
+            return value(snapshot.length - 1);
+        }
+
+        private static int index(long value) {
+            if (value < SUB_BUCKETS) return (int) value;
+            int msb = 63 - Long.numberOfLeadingZeros(value);
+            return (msb - SUB_BITS + 1) * SUB_BUCKETS + (int) ((value >>> (msb - SUB_BITS)) & (SUB_BUCKETS - 1));
+        }
+
+        /**
+         * @return  the middle of the bucket
+         */
+        private static long value(int index) {
+            if (index < SUB_BUCKETS) return index;
+            int shift = index / SUB_BUCKETS - 1;
+            long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+            return lower + ((1L << shift) >>> 1);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnull;
+
+/**
+ * <p>Receives the measurements of a database; set through MilliDBDatabase.setMetricsListener</p>
+ * <p>The methods are called by the threads which complete the queries, including the event loop, so they must be quick and must not block</p>
+ */
+@SuppressWarnings("unused")
+public interface MilliDBMetricsListener {
+    /**
+     * Called once when the listener is set, with the live gauges of the database
+     */
+    default void onAttach(@Nonnull Gauges gauges) {
+    }
+
+    /**
+     * @param nanos     from the execution of the query to its result, over every attempt
+     * @param succeed   false if the server failed it or it could not be executed
+     */
+    default void onQuery(@Nonnull MilliDBQuery.Function function, long nanos, boolean succeed) {
+    }
+
+    /**
+     * @param bytes the size of an encoded query queued for the socket
+     */
+    default void onBytesSent(int bytes) {
+    }
+
+    /**
+     * @param bytes the number of bytes read from the socket at once
+     */
+    default void onBytesReceived(int bytes) {
+    }
+
+    /**
+     * Called before a query is sent again by the retry policy
+     */
+    default void onRetry(@Nonnull MilliDBQuery.Function function) {
+    }
+
+    /**
+     * Called when an attempt does not receive its result in time
+     */
+    default void onTimeout(@Nonnull MilliDBQuery.Function function) {
+    }
+
+    /**
+     * Called when a result arrives for a query which is not in flight, usually because it has already timed out
+     */
+    default void onDiscarded(long id) {
+    }
+
+    /**
+     * Called when a lost connection starts to be replaced
+     */
+    default void onReconnect() {
+    }
+
+    /**
+     * Called for every outgoing frame which reaches the compression threshold
+     *
+     * @param raw           the size of the original payload
+     * @param compressed    the size of the sent payload, which is the original size if compressing did not shrink it
+     * @param nanos         the time spent in the Deflater
+     */
+    default void onCompressed(int raw, int compressed, long nanos) {
+    }
+
+    /**
+     * Called for every incoming compressed frame
+     *
+     * @param nanos the time spent in the Inflater
+     */
+    default void onInflated(int compressed, int raw, long nanos) {
+    }
+
+    /**
+     * The current state of a database, read on demand
+     */
+    interface Gauges {
+        /**
+         * @return  the number of queries being executed since the listener was set
+         */
+        int getInFlight();
+
+        /**
+         * @return  the number of connections of the pool, or 0 if the database is not a pool
+         */
+        int getPoolSize();
+
+        int getPoolIdle();
+
+        /**
+         * @return  the number of queries waiting for a connection of the pool
+         */
+        int getPoolWaiters();
+
+        int getPoolMaxSize();
+    }
+}
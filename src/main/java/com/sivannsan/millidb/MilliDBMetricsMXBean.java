@@ -0,0 +1,53 @@
+package com.sivannsan.millidb;
+
+import java.util.Map;
+
+/**
+ * The JMX view of MilliDBMetrics; latencies are in milliseconds keyed by the function name
+ */
+@SuppressWarnings("unused")
+public interface MilliDBMetricsMXBean {
+    long getQueries();
+
+    long getFailures();
+
+    long getRetries();
+
+    long getTimeouts();
+
+    long getDiscarded();
+
+    long getReconnects();
+
+    long getBytesSent();
+
+    long getBytesReceived();
+
+    /**
+     * @return  the original size divided by the sent or received size of the frames which reached the compression threshold; 0 if there is none
+     */
+    double getCompressionRatio();
+
+    /**
+     * @return  the milliseconds spent compressing and decompressing the frames
+     */
+    double getCompressionTime();
+
+    int getInFlight();
+
+    int getPoolSize();
+
+    int getPoolIdle();
+
+    int getPoolWaiters();
+
+    int getPoolMaxSize();
+
+    Map<String, Double> getLatencyP50();
+
+    Map<String, Double> getLatencyP99();
+
+    Map<String, Double> getLatencyP999();
+
+    void reset();
+}
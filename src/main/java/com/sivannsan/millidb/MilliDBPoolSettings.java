@@ -0,0 +1,84 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnegative;
+import com.sivannsan.foundation.annotation.Nonnull;
+import com.sivannsan.foundation.common.Validate;
+
+/**
+ * Settings of MilliDBConnector.pool; every duration is in milliseconds
+ */
+@SuppressWarnings("unused")
+public final class MilliDBPoolSettings {
+    private int minSize = 1;
+    private int maxSize = 8;
+    private long idleTimeout = 60000;
+    private long validationInterval = 30000;
+    private long checkoutTimeout = 5000;
+
+    /**
+     * @param minSize   the number of connections kept open even if they are idle
+     */
+    @Nonnull
+    public MilliDBPoolSettings minSize(@Nonnegative int minSize) {
+        this.minSize = Validate.nonnegative(minSize);
+        if (maxSize < minSize) maxSize = minSize;
+        return this;
+    }
+
+    /**
+     * @param maxSize   the number of connections which can be opened at the same time; at least 1
+     */
+    @Nonnull
+    public MilliDBPoolSettings maxSize(@Nonnegative int maxSize) {
+        this.maxSize = Math.max(1, Validate.nonnegative(maxSize));
+        if (minSize > this.maxSize) minSize = this.maxSize;
+        return this;
+    }
+
+    /**
+     * @param idleTimeout   the idle duration after which a connection above the minimum size is closed
+     */
+    @Nonnull
+    public MilliDBPoolSettings idleTimeout(@Nonnegative long idleTimeout) {
+        this.idleTimeout = Validate.nonnegative(idleTimeout);
+        return this;
+    }
+
+    /**
+     * @param validationInterval    the delay between two background validations of the idle connections; 0 disables the validation and the eviction
+     */
+    @Nonnull
+    public MilliDBPoolSettings validationInterval(@Nonnegative long validationInterval) {
+        this.validationInterval = Validate.nonnegative(validationInterval);
+        return this;
+    }
+
+    /**
+     * @param checkoutTimeout   how long a query waits for a connection when all of them are busy before it fails
+     */
+    @Nonnull
+    public MilliDBPoolSettings checkoutTimeout(@Nonnegative long checkoutTimeout) {
+        this.checkoutTimeout = Validate.nonnegative(checkoutTimeout);
+        return this;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public long getValidationInterval() {
+        return validationInterval;
+    }
+
+    public long getCheckoutTimeout() {
+        return checkoutTimeout;
+    }
+}
@@ -0,0 +1,36 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnull;
+import com.sivannsan.millidata.MilliData;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>A FETCH of a fixed document and data path, whose constant parts are encoded once (see MilliDBDocument.prepareFetch)</p>
+ * <p>It reads the prefetched MilliData and the cache the same way as MilliDBDocument.fetch</p>
+ */
+@SuppressWarnings("unused")
+public interface MilliDBPreparedFetch {
+    @Nonnull
+    MilliDBDocument getDocument();
+
+    /**
+     * @return  the data path as prepared, including its placeholders
+     */
+    @Nonnull
+    String getDataPath();
+
+    /**
+     * @param arguments one for each {} placeholder of the data path, in order
+     */
+    @Nonnull
+    MilliData fetch(@Nonnull String... arguments) throws MilliDBResultException;
+
+    /**
+     * The same as fetch method without blocking the calling thread
+     *
+     * @return  the future which is completed exceptionally with a MilliDBResultException if the execution fails
+     */
+    @Nonnull
+    CompletableFuture<MilliData> fetchAsync(@Nonnull String... arguments);
+}
@@ -0,0 +1,35 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnull;
+import com.sivannsan.millidata.MilliData;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>A SET of a fixed document and data path, whose constant parts are encoded once so that only the value is encoded per execution (see MilliDBDocument.prepareSet)</p>
+ * <p>It updates the prefetched MilliData and the cache the same way as MilliDBDocument.set</p>
+ */
+@SuppressWarnings("unused")
+public interface MilliDBPreparedSet {
+    @Nonnull
+    MilliDBDocument getDocument();
+
+    /**
+     * @return  the data path as prepared, including its placeholders
+     */
+    @Nonnull
+    String getDataPath();
+
+    /**
+     * @param arguments one for each {} placeholder of the data path, in order
+     */
+    void set(@Nonnull MilliData value, @Nonnull String... arguments) throws MilliDBResultException;
+
+    /**
+     * The same as set method without blocking the calling thread
+     *
+     * @return  the future which is completed exceptionally with a MilliDBResultException if the execution fails
+     */
+    @Nonnull
+    CompletableFuture<Void> setAsync(@Nonnull MilliData value, @Nonnull String... arguments);
+}
@@ -0,0 +1,149 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>The framing of the queries and the results on the wire</p>
+ * <p>Every connection starts with TEXT for VERIFY; the client lists the protocols it accepts in the VERIFY metadata, and both sides switch to the one the server answers with</p>
+ */
+@SuppressWarnings("unused")
+public enum MilliDBProtocol {
+    /**
+     * One MilliMap per line in the form of MilliDBQuery.asMilliMap or MilliDBResult.toMilliMap
+     * <p>The whole line is parsed on decoding, as the ID is only known once the MilliMap is; only BINARY defers parsing the metadata</p>
+     */
+    TEXT {
+        @Override
+        @Nonnull
+        public ByteBuffer encode(@Nonnull MilliDBQuery query, @Nonnull ByteBuffer buffer) {
+            return line(query.asMilliMap().toString(), buffer);
+        }
+
+        @Override
+        @Nonnull
+        public ByteBuffer encode(@Nonnull MilliDBResult result, @Nonnull ByteBuffer buffer) {
+            return line(result.toMilliMap().toString(), buffer);
+        }
+
+        @Override
+        public MilliDBQuery decodeQuery(@Nonnull ByteBuffer buffer, int from) throws MilliDBQueryParsedException {
+            String line = line(buffer, from);
+            return line == null ? null : MilliDBQuery.Parser.parse(line);
+        }
+
+        @Override
+        public MilliDBResult decodeResult(@Nonnull ByteBuffer buffer, int from) throws MilliDBResultException {
+            String line = line(buffer, from);
+            return line == null ? null : MilliDBResult.Parser.parse(line);
+        }
+
+        @Nonnull
+        private ByteBuffer line(@Nonnull String line, @Nonnull ByteBuffer buffer) {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            buffer = MilliDBBinaryCodec.ensure(buffer, bytes.length + 1);
+            return buffer.put(bytes).put((byte) '\n');
+        }
+
+        private String line(@Nonnull ByteBuffer buffer, int from) {
+            for (int i = Math.max(buffer.position(), from); i < buffer.limit(); i++) {
+                if (buffer.get(i) != '\n') continue;
+                int end = i > buffer.position() && buffer.get(i - 1) == '\r' ? i - 1 : i;
+                byte[] bytes = new byte[end - buffer.position()];
+                buffer.get(bytes);
+                buffer.position(i + 1);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            return null;
+        }
+    },
+    /**
+     * Length-prefixed frames of MilliDBBinaryCodec, which are cheaper to decode and safe for values containing line breaks
+     */
+    BINARY {
+        @Override
+        @Nonnull
+        public ByteBuffer encode(@Nonnull MilliDBQuery query, @Nonnull ByteBuffer buffer) {
+            return MilliDBBinaryCodec.encode(query, buffer);
+        }
+
+        @Override
+        @Nonnull
+        public ByteBuffer encode(@Nonnull MilliDBResult result, @Nonnull ByteBuffer buffer) {
+            return MilliDBBinaryCodec.encode(result, buffer);
+        }
+
+        @Override
+        public MilliDBQuery decodeQuery(@Nonnull ByteBuffer buffer, int from) throws MilliDBQueryParsedException {
+            return MilliDBBinaryCodec.decodeQuery(buffer);
+        }
+
+        @Override
+        public MilliDBResult decodeResult(@Nonnull ByteBuffer buffer, int from) throws MilliDBResultException {
+            return MilliDBBinaryCodec.decodeResult(buffer);
+        }
+    };
+
+    /**
+     * Append the query as a frame, allocating a larger buffer if the remaining space is not enough
+     *
+     * @param buffer    in write mode
+     * @return          the buffer holding the appended frame, in write mode
+     */
+    @Nonnull
+    public abstract ByteBuffer encode(@Nonnull MilliDBQuery query, @Nonnull ByteBuffer buffer);
+
+    /**
+     * Append the result as a frame, allocating a larger buffer if the remaining space is not enough
+     *
+     * @param buffer    in write mode
+     * @return          the buffer holding the appended frame, in write mode
+     */
+    @Nonnull
+    public abstract ByteBuffer encode(@Nonnull MilliDBResult result, @Nonnull ByteBuffer buffer);
+
+    /**
+     * @param buffer    in read mode; its position is moved past the frame only if the whole frame is available
+     * @return          null if the buffer does not hold the whole frame yet
+     */
+    public MilliDBQuery decodeQuery(@Nonnull ByteBuffer buffer) throws MilliDBQueryParsedException {
+        return decodeQuery(buffer, buffer.position());
+    }
+
+    /**
+     * The same as decodeQuery without searching again the bytes of an incomplete frame which an earlier call has already searched
+     *
+     * @param from  the index from which the end of the frame is searched, which is at most the limit of the buffer when the earlier call returned null; only used by TEXT
+     */
+    public abstract MilliDBQuery decodeQuery(@Nonnull ByteBuffer buffer, int from) throws MilliDBQueryParsedException;
+
+    /**
+     * @param buffer    in read mode; its position is moved past the frame only if the whole frame is available
+     * @return          null if the buffer does not hold the whole frame yet
+     */
+    public MilliDBResult decodeResult(@Nonnull ByteBuffer buffer) throws MilliDBResultException {
+        return decodeResult(buffer, buffer.position());
+    }
+
+    /**
+     * The same as decodeResult without searching again the bytes of an incomplete frame which an earlier call has already searched
+     *
+     * @param from  the index from which the end of the frame is searched, which is at most the limit of the buffer when the earlier call returned null; only used by TEXT
+     */
+    public abstract MilliDBResult decodeResult(@Nonnull ByteBuffer buffer, int from) throws MilliDBResultException;
+
+    /**
+     * @return  the name used in the VERIFY negotiation
+     */
+    @Override
+    public String toString() {
+        return name().toLowerCase();
+    }
+
+    public static MilliDBProtocol fromString(@Nonnull String string) {
+        for (MilliDBProtocol protocol : values()) if (protocol.toString().equalsIgnoreCase(string)) return protocol;
+        return null;
+    }
+}
@@ -3,30 +3,53 @@ package com.sivannsan.millidb;
 import com.sivannsan.foundation.annotation.Nonnegative;
 import com.sivannsan.foundation.annotation.Nonnull;
 import com.sivannsan.foundation.common.Validate;
-import com.sivannsan.millidata.MilliData;
-import com.sivannsan.millidata.MilliMap;
-import com.sivannsan.millidata.MilliNull;
-import com.sivannsan.millidata.MilliValue;
+import com.sivannsan.millidata.*;
+
+import java.util.concurrent.atomic.AtomicLong;
 
 @SuppressWarnings("unused")
 public final class MilliDBQuery {
     private final long id;
     @Nonnull
     private final Function function;
-    @Nonnull
-    private final MilliData metadata;
+    /**
+     * Null until built from the template
+     */
+    private volatile MilliData metadata;
+    private final MilliDBQueryTemplate template;
+    private final String templateDataPath;
+    private final MilliData templateValue;
+    /**
+     * @deprecated  no longer updated; the attempts are counted by the retry policy of the executing database
+     */
+    @Deprecated
     public int executes = 0;
+    private volatile long timeout = 0;
 
     public MilliDBQuery(@Nonnegative long id, @Nonnull Function function, @Nonnull MilliData metadata) {
         this.id = Validate.nonnegative(id);
         this.function = Validate.nonnull(function);
         this.metadata = Validate.nonnull(metadata);
+        this.template = null;
+        this.templateDataPath = null;
+        this.templateValue = null;
     }
 
     public MilliDBQuery(@Nonnull Function function, @Nonnull MilliData metadata) {
         this(IDGenerator.generateNewID(), function, metadata);
     }
 
+    /**
+     * A prepared query, whose metadata is only built if it is needed by something other than the binary encoding
+     */
+    MilliDBQuery(@Nonnull MilliDBQueryTemplate template, @Nonnull String dataPath, MilliData value) {
+        this.id = IDGenerator.generateNewID();
+        this.function = template.getFunction();
+        this.template = template;
+        this.templateDataPath = Validate.nonnull(dataPath);
+        this.templateValue = value;
+    }
+
     public long getID() {
         return id;
     }
@@ -38,12 +61,55 @@ public final class MilliDBQuery {
 
     @Nonnull
     public MilliData getMetadata() {
+        MilliData metadata = this.metadata;
+        if (metadata == null) this.metadata = metadata = template.metadata(templateDataPath, templateValue);
         return metadata;
     }
 
+    MilliDBQueryTemplate getTemplate() {
+        return template;
+    }
+
+    String getTemplateDataPath() {
+        return templateDataPath;
+    }
+
+    MilliData getTemplateValue() {
+        return templateValue;
+    }
+
+    /**
+     * @param timeout   the milliseconds this query may take over all of its attempts; 0 for the deadline of the retry policy
+     */
+    @Nonnull
+    public MilliDBQuery timeout(@Nonnegative long timeout) {
+        this.timeout = Validate.nonnegative(timeout);
+        return this;
+    }
+
+    /**
+     * @return  0 if this query uses the deadline of the retry policy
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return  true if applying this query twice has the same effect as applying it once, so that it can be sent again after its result is lost
+     */
+    public boolean isIdempotent() {
+        if (function != Function.BATCH) return function.isIdempotent();
+        for (MilliData query : getMetadata().asMilliMap(new MilliMap()).get("queries").asMilliList(new MilliList())) {
+            Function f = Function.fromString(query.asMilliMap(new MilliMap()).get("f").asMilliValue(new MilliValue()).asString());
+            if (f == null || !f.isIdempotent()) return false;
+        }
+        return true;
+    }
+
     @Nonnull
     public MilliMap asMilliMap() {
         MilliMap map = new MilliMap().append("id", new MilliValue(id)).append("f", new MilliValue(function.toString()));
+        MilliData metadata = getMetadata();
         if (metadata != MilliNull.INSTANCE) map.put("m", metadata);
         return map;
     }
@@ -61,7 +127,11 @@ public final class MilliDBQuery {
         @Nonnull
         public static MilliDBQuery parse(String query) throws MilliDBQueryParsedException {
             if (query == null) throw new MilliDBQueryParsedException("The provided argument is null!");
-            MilliMap map = MilliData.Parser.parse(Validate.nonnull(query), new MilliMap()).asMilliMap(new MilliMap());
+            return parse(MilliData.Parser.parse(Validate.nonnull(query), new MilliMap()).asMilliMap(new MilliMap()));
+        }
+
+        @Nonnull
+        public static MilliDBQuery parse(@Nonnull MilliMap map) throws MilliDBQueryParsedException {
             long parsedID = map.get("id").asMilliValue(new MilliValue(-1)).asInteger64();
             if (parsedID < 0) throw new MilliDBQueryParsedException("The parsed ID is invalid!");
             Function parsedFunction = Function.fromString(map.get("f").asMilliValue(new MilliValue()).asString());
@@ -72,10 +142,10 @@ public final class MilliDBQuery {
     }
 
     private static final class IDGenerator {
-        private static long LAST_ID = 0;
+        private static final AtomicLong LAST_ID = new AtomicLong();
 
         public static long generateNewID() {
-            return ++LAST_ID;
+            return LAST_ID.incrementAndGet();
         }
     }
 
@@ -86,8 +156,8 @@ public final class MilliDBQuery {
          */
         VERIFY,
         /**
-         * <p> query metadata: path, filter
-         * <p> result metadata: documents, collections
+         * <p> query metadata: path, filter, limit (optional page size), cursor (optional, from the previous page), contents (optional, true to receive the whole contents), projections (optional, the data paths to receive)
+         * <p> result metadata: documents, collections, cursor (only if there are more files after this page), contents (only if requested, the whole content or the MilliMap from data path to MilliData keyed by document name)
          */
         LIST,
         /**
@@ -104,8 +174,8 @@ public final class MilliDBQuery {
          */
         DELETE,
         /**
-         * <p> query metadata: path, data_path
-         * <p> result metadata: data
+         * <p> query metadata: path, data_path or data_paths (the list of data paths to fetch at once)
+         * <p> result metadata: data, or the MilliMap from each data path to its data if data_paths is provided
          */
         FETCH,
         /**
@@ -115,7 +185,68 @@ public final class MilliDBQuery {
         /**
          * <p> close the socket at the server
          */
-        CLOSE;
+        CLOSE,
+        /**
+         * <p> query metadata: queries (the sub-queries, each in the form of MilliDBQuery.asMilliMap)
+         * <p> result metadata: results (the sub-results in the same order, each in the form of MilliDBResult.toMilliMap)
+         */
+        BATCH,
+        /**
+         * <p> add a number to the MilliValue at the data path atomically; a missing MilliValue counts as 0
+         * <p> query metadata: path, data_path, data_value (the number to add, negative to subtract)
+         * <p> result metadata: the new MilliValue
+         */
+        INCREMENT,
+        /**
+         * <p> add an element to the end of the MilliList at the data path atomically; a missing MilliList is created
+         * <p> query metadata: path, data_path, data_value
+         * <p> result metadata: the new size of the MilliList
+         */
+        APPEND,
+        /**
+         * <p> remove every element which equals the value from the MilliList at the data path atomically
+         * <p> query metadata: path, data_path, data_value
+         * <p> result metadata: the number of removed elements
+         */
+        REMOVE,
+        /**
+         * <p> put every entry of the MilliMap into the MilliMap at the data path atomically; a missing MilliMap is created
+         * <p> query metadata: path, data_path, data_value
+         */
+        MERGE,
+        /**
+         * <p> remove the last key of the data path from its MilliMap, or the index from its MilliList
+         * <p> query metadata: path, data_path
+         * <p> result metadata: true if the key existed
+         */
+        REMOVE_KEY,
+        /**
+         * <p> subscribe to the changes of a file, or of every file in a collection; the changes are pushed as event results carrying the ID of this query until UNWATCH or until the connection is closed
+         * <p> query metadata: path, filter (optional, only the documents whose content matches it; the content before the change for a deletion)
+         * <p> event metadata: in the form of MilliDBEvent.toMilliMap
+         */
+        WATCH,
+        /**
+         * <p> cancel a subscription of the same connection
+         * <p> query metadata: the ID of the WATCH query
+         */
+        UNWATCH;
+
+        /**
+         * @return  true for the functions which only read; BATCH depends on its sub-queries (see MilliDBQuery.isIdempotent)
+         */
+        public boolean isIdempotent() {
+            switch (this) {
+                case VERIFY:
+                case LIST:
+                case GET:
+                case FETCH:
+                case CLOSE:
+                    return true;
+                default:
+                    return false;
+            }
+        }
 
         @Override
         public String toString() {
@@ -128,6 +259,14 @@ public final class MilliDBQuery {
                 case FETCH: return "f";
                 case SET: return "s";
                 case CLOSE: return "close";
+                case BATCH: return "b";
+                case INCREMENT: return "i";
+                case APPEND: return "a";
+                case REMOVE: return "r";
+                case MERGE: return "m";
+                case REMOVE_KEY: return "k";
+                case WATCH: return "w";
+                case UNWATCH: return "u";
                 default: throw new IllegalStateException("Unexpected value: " + this);
             }
         }
@@ -0,0 +1,162 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnull;
+import com.sivannsan.foundation.common.Validate;
+import com.sivannsan.millidata.MilliData;
+import com.sivannsan.millidata.MilliMap;
+import com.sivannsan.millidata.MilliValue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>The FETCH or SET of a fixed document whose constant parts are encoded once in the form of MilliDBBinaryCodec</p>
+ * <p>The data path may contain {} placeholders which are filled by the arguments of every execution; a data path without placeholder is encoded once as well</p>
+ */
+final class MilliDBQueryTemplate {
+    static final String PLACEHOLDER = "{}";
+
+    @Nonnull
+    private final MilliDBQuery.Function function;
+    @Nonnull
+    private final String path;
+    /**
+     * The data path split around its placeholders
+     */
+    @Nonnull
+    private final String[] segments;
+    /**
+     * The payload after the ID up to the data path, or up to the value if the data path is constant
+     */
+    @Nonnull
+    private final byte[] head;
+    /**
+     * The payload between a variable data path and the value
+     */
+    @Nonnull
+    private final byte[] tail;
+
+    /**
+     * @param function  FETCH or SET
+     * @param path      the path of the document
+     * @param dataPath  the data path, possibly with placeholders
+     */
+    MilliDBQueryTemplate(@Nonnull MilliDBQuery.Function function, @Nonnull String path, @Nonnull String dataPath) {
+        if (function != MilliDBQuery.Function.FETCH && function != MilliDBQuery.Function.SET) throw new IllegalArgumentException("Only FETCH and SET can be prepared");
+        this.function = function;
+        this.path = Validate.nonnull(path);
+        this.segments = split(Validate.nonnull(dataPath));
+        ByteBuffer head = ByteBuffer.allocate(256);
+        head = put(head, function.toString());
+        head = MilliDBBinaryCodec.ensure(head, 1 + MilliDBBinaryCodec.sizeOf(hasValue() ? 3 : 2));
+        head.put(MilliDBBinaryCodec.MAP);
+        MilliDBBinaryCodec.writeVarint(head, hasValue() ? 3 : 2);
+        head = put(head, "path");
+        head = MilliDBBinaryCodec.ensure(head, 1);
+        head.put(MilliDBBinaryCodec.VALUE);
+        head = put(head, path);
+        head = put(head, "data_path");
+        head = MilliDBBinaryCodec.ensure(head, 1);
+        head.put(MilliDBBinaryCodec.VALUE);
+        ByteBuffer tail = ByteBuffer.allocate(16);
+        if (isConstant()) head = put(head, dataPath);
+        if (hasValue()) {
+            if (isConstant()) head = put(head, "data_value");
+            else tail = put(tail, "data_value");
+        }
+        this.head = bytes(head);
+        this.tail = bytes(tail);
+    }
+
+    @Nonnull
+    private static String[] split(@Nonnull String dataPath) {
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        int index;
+        while ((index = dataPath.indexOf(PLACEHOLDER, start)) >= 0) {
+            segments.add(dataPath.substring(start, index));
+            start = index + PLACEHOLDER.length();
+        }
+        segments.add(dataPath.substring(start));
+        return segments.toArray(new String[0]);
+    }
+
+    @Nonnull
+    private static ByteBuffer put(@Nonnull ByteBuffer buffer, @Nonnull String string) {
+        buffer = MilliDBBinaryCodec.ensure(buffer, MilliDBBinaryCodec.sizeOf(string));
+        MilliDBBinaryCodec.writeString(buffer, string);
+        return buffer;
+    }
+
+    @Nonnull
+    private static byte[] bytes(@Nonnull ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Nonnull
+    MilliDBQuery.Function getFunction() {
+        return function;
+    }
+
+    boolean hasValue() {
+        return function == MilliDBQuery.Function.SET;
+    }
+
+    boolean isConstant() {
+        return segments.length == 1;
+    }
+
+    /**
+     * @return  the data path with the placeholders filled in order
+     */
+    @Nonnull
+    String dataPath(@Nonnull String... arguments) {
+        if (arguments.length != segments.length - 1) throw new IllegalArgumentException("Expected " + (segments.length - 1) + " arguments for the data path but got " + arguments.length);
+        if (isConstant()) return segments[0];
+        StringBuilder builder = new StringBuilder(segments[0]);
+        for (int i = 0; i < arguments.length; i++) builder.append(Validate.nonnull(arguments[i])).append(segments[i + 1]);
+        return builder.toString();
+    }
+
+    /**
+     * @param dataPath  from the dataPath method
+     * @param value     null for FETCH
+     */
+    @Nonnull
+    MilliDBQuery query(@Nonnull String dataPath, MilliData value) {
+        return new MilliDBQuery(this, dataPath, value);
+    }
+
+    /**
+     * @return  the same metadata as the unprepared query
+     */
+    @Nonnull
+    MilliMap metadata(@Nonnull String dataPath, MilliData value) {
+        MilliMap metadata = new MilliMap().append("path", new MilliValue(path)).append("data_path", new MilliValue(dataPath));
+        if (hasValue()) metadata.put("data_value", value);
+        return metadata;
+    }
+
+    /**
+     * Append the frame by copying the constant bytes and encoding only the ID, a variable data path and the value
+     */
+    @Nonnull
+    ByteBuffer encode(long id, @Nonnull String dataPath, MilliData value, @Nonnull ByteBuffer buffer) {
+        int payload = MilliDBBinaryCodec.sizeOf(id) + head.length;
+        if (!isConstant()) payload += MilliDBBinaryCodec.sizeOf(dataPath) + tail.length;
+        if (hasValue()) payload += MilliDBBinaryCodec.sizeOf(value);
+        buffer = MilliDBBinaryCodec.beginFrame(buffer, payload);
+        MilliDBBinaryCodec.writeVarint(buffer, id);
+        buffer.put(head);
+        if (!isConstant()) {
+            MilliDBBinaryCodec.writeString(buffer, dataPath);
+            buffer.put(tail);
+        }
+        if (hasValue()) MilliDBBinaryCodec.writeData(buffer, value);
+        return buffer;
+    }
+}
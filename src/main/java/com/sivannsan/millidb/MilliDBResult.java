@@ -8,23 +8,52 @@ import com.sivannsan.millidata.MilliMap;
 import com.sivannsan.millidata.MilliNull;
 import com.sivannsan.millidata.MilliValue;
 
+import java.nio.ByteBuffer;
+
 @SuppressWarnings({"unused", "BooleanMethodIsAlwaysInverted"})
 public final class MilliDBResult {
     private final long id;
     private final boolean succeed;
-    @Nonnull
-    private final MilliData metadata;
+    private final boolean event;
+    /**
+     * Null until the encoded metadata is parsed
+     */
+    private volatile MilliData metadata;
+    /**
+     * The metadata in the form of MilliDBBinaryCodec.writeData, kept until it is parsed
+     * <p>Only MilliDBProtocol.BINARY defers the parsing; it is a copy of the frame, as the read buffer of the connection is reused for the next frames</p>
+     */
+    private byte[] encoded;
 
     /**
      * @param id    0 for unknown id
      * @param succeed   true only if there is no obstacle with the operation
      */
     public MilliDBResult(@Nonnegative long id, boolean succeed, @Nonnull MilliData metadata) {
+        this(id, succeed, metadata, false);
+    }
+
+    /**
+     * @param id    the ID of the WATCH query for an event
+     * @param event true if the result is pushed by the server for a subscription rather than answering a query
+     */
+    public MilliDBResult(@Nonnegative long id, boolean succeed, @Nonnull MilliData metadata, boolean event) {
         this.id = Validate.nonnegative(id);
         this.succeed = succeed;
+        this.event = event;
         this.metadata = Validate.nonnull(metadata);
     }
 
+    /**
+     * @param encoded   the well-formed binary metadata, which is parsed on the first call of getMetadata; owned by the result from now on
+     */
+    MilliDBResult(@Nonnegative long id, boolean succeed, @Nonnull byte[] encoded, boolean event) {
+        this.id = Validate.nonnegative(id);
+        this.succeed = succeed;
+        this.event = event;
+        this.encoded = Validate.nonnull(encoded);
+    }
+
     public long getID() {
         return id;
     }
@@ -33,15 +62,32 @@ public final class MilliDBResult {
         return succeed;
     }
 
+    /**
+     * @return  true if the result is an event of the subscription registered by the query with the same ID, which never completes that query
+     */
+    public boolean isEvent() {
+        return event;
+    }
+
     @Nonnull
     public MilliData getMetadata() {
-        return metadata;
+        MilliData metadata = this.metadata;
+        if (metadata != null) return metadata;
+        synchronized (this) {
+            if (this.metadata == null) {
+                this.metadata = MilliDBBinaryCodec.readData(ByteBuffer.wrap(encoded));
+                encoded = null;
+            }
+            return this.metadata;
+        }
     }
 
     @Nonnull
     public MilliMap toMilliMap() {
         MilliMap map = new MilliMap("id", new MilliValue(id));
         if (succeed) map.put("s", new MilliValue(true));
+        if (event) map.put("e", new MilliValue(true));
+        MilliData metadata = getMetadata();
         if (metadata != MilliNull.INSTANCE) map.put("m", metadata);
         return map;
     }
@@ -58,12 +104,17 @@ public final class MilliDBResult {
 
         @Nonnull
         public static MilliDBResult parse(@Nonnull String result) throws MilliDBResultException {
-            MilliMap map = MilliData.Parser.parse(Validate.nonnull(result), new MilliMap()).asMilliMap(new MilliMap());
+            return parse(MilliData.Parser.parse(Validate.nonnull(result), new MilliMap()).asMilliMap(new MilliMap()));
+        }
+
+        @Nonnull
+        public static MilliDBResult parse(@Nonnull MilliMap map) throws MilliDBResultException {
             long parsedID = map.get("id").asMilliValue(new MilliValue(-1)).asInteger64();
             if (parsedID < 0) throw new MilliDBResultException("Invalid ID for parsing!");
             boolean parsedSucceed = map.get("s").asMilliValue(new MilliValue(false)).asBoolean();
+            boolean parsedEvent = map.get("e").asMilliValue(new MilliValue(false)).asBoolean();
             MilliData parsedMetadata = map.get("m");
-            return new MilliDBResult(parsedID, parsedSucceed, parsedMetadata);
+            return new MilliDBResult(parsedID, parsedSucceed, parsedMetadata, parsedEvent);
         }
     }
 }
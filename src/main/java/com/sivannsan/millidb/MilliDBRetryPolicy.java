@@ -0,0 +1,170 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnegative;
+import com.sivannsan.foundation.annotation.Nonnull;
+import com.sivannsan.foundation.common.Validate;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <p>How a database sends a query again after it times out or its connection fails; every duration is in milliseconds</p>
+ * <p>A query which may have reached the server is only sent again if it is idempotent (see MilliDBQuery.isIdempotent), and every retry spends a token of the retry budget, which is refilled by a fraction of a token per query, so that retries cannot multiply the load of an already struggling server</p>
+ */
+@SuppressWarnings("unused")
+public final class MilliDBRetryPolicy {
+    private int maxAttempts = 5;
+    private long attemptTimeout = 5000;
+    private long deadline = 15000;
+    private long baseDelay = 50;
+    private long maxDelay = 2000;
+    private double multiplier = 2;
+    private double jitter = 0.5;
+    private double budgetRatio = 0.1;
+    private int budgetCapacity = 10;
+
+    /**
+     * @return  the policy which sends every query once
+     */
+    @Nonnull
+    public static MilliDBRetryPolicy none() {
+        return new MilliDBRetryPolicy().maxAttempts(1);
+    }
+
+    /**
+     * @param maxAttempts   the number of times a query is sent at most, including the first time; at least 1
+     */
+    @Nonnull
+    public MilliDBRetryPolicy maxAttempts(@Nonnegative int maxAttempts) {
+        this.maxAttempts = Math.max(1, Validate.nonnegative(maxAttempts));
+        return this;
+    }
+
+    /**
+     * @param attemptTimeout    how long a single attempt waits for its result
+     */
+    @Nonnull
+    public MilliDBRetryPolicy attemptTimeout(@Nonnegative long attemptTimeout) {
+        this.attemptTimeout = Validate.nonnegative(attemptTimeout);
+        return this;
+    }
+
+    /**
+     * @param deadline  how long a query may take over all of its attempts, unless the query has its own timeout
+     */
+    @Nonnull
+    public MilliDBRetryPolicy deadline(@Nonnegative long deadline) {
+        this.deadline = Validate.nonnegative(deadline);
+        return this;
+    }
+
+    /**
+     * @param baseDelay     the delay before the first retry
+     * @param maxDelay      the upper bound of the delay
+     * @param multiplier    the growth of the delay per retry; at least 1
+     */
+    @Nonnull
+    public MilliDBRetryPolicy backoff(@Nonnegative long baseDelay, @Nonnegative long maxDelay, double multiplier) {
+        this.baseDelay = Validate.nonnegative(baseDelay);
+        this.maxDelay = Math.max(baseDelay, Validate.nonnegative(maxDelay));
+        this.multiplier = Math.max(1, multiplier);
+        return this;
+    }
+
+    /**
+     * @param jitter    the fraction of each delay which is randomized, between 0 and 1
+     */
+    @Nonnull
+    public MilliDBRetryPolicy jitter(double jitter) {
+        this.jitter = Math.max(0, Math.min(1, jitter));
+        return this;
+    }
+
+    /**
+     * @param ratio     the fraction of a token gained per query
+     * @param capacity  the maximum number of tokens, which is also the initial number
+     */
+    @Nonnull
+    public MilliDBRetryPolicy budget(double ratio, @Nonnegative int capacity) {
+        this.budgetRatio = Math.max(0, ratio);
+        this.budgetCapacity = Validate.nonnegative(capacity);
+        return this;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getAttemptTimeout() {
+        return attemptTimeout;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public long getBaseDelay() {
+        return baseDelay;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    public double getBudgetRatio() {
+        return budgetRatio;
+    }
+
+    public int getBudgetCapacity() {
+        return budgetCapacity;
+    }
+
+    /**
+     * @param retry the number of the retry, starting from 1
+     * @return      the exponential delay before the retry with its jitter applied
+     */
+    public long delay(int retry) {
+        double delay = Math.min(maxDelay, baseDelay * Math.pow(multiplier, Math.max(0, retry - 1)));
+        return (long) (delay * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+    }
+
+    /**
+     * The tokens shared by the queries of a database
+     */
+    @Nonnull
+    Budget newBudget() {
+        return new Budget(budgetRatio, budgetCapacity);
+    }
+
+    static final class Budget {
+        private final double ratio;
+        private final int capacity;
+        private double tokens;
+
+        private Budget(double ratio, int capacity) {
+            this.ratio = ratio;
+            this.capacity = capacity;
+            this.tokens = capacity;
+        }
+
+        synchronized void deposit() {
+            tokens = Math.min(capacity, tokens + ratio);
+        }
+
+        /**
+         * @return  false if there is no token left for a retry
+         */
+        synchronized boolean withdraw() {
+            if (tokens < 1) return false;
+            tokens -= 1;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,824 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnegative;
+import com.sivannsan.foundation.annotation.Nonnull;
+import com.sivannsan.foundation.common.Validate;
+import com.sivannsan.millidata.MilliData;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>A MilliDBDatabase spread over several MilliDB servers, each of them holding a part of the files</p>
+ * <p>A file is placed on a shard by consistent hashing of the first segments of its path, so that the files sharing those segments stay on the same shard, and adding a shard only moves the files of about one key in every number of shards</p>
+ * <p>The collections whose path is shorter than the shard key exist on every shard; getting, listing and walking them fan out to the shards in parallel and merge the results, while the files at or below the shard key are the handles of their own shard</p>
+ */
+@SuppressWarnings("unused")
+public final class MilliDBShardedDatabase implements MilliDBDatabase {
+    /**
+     * The number of points of each shard on the hash ring, which evens out the share of the keys
+     */
+    private static final int POINTS = 128;
+
+    @Nonnull
+    private final List<String> names = new ArrayList<>();
+    @Nonnull
+    private final List<MilliDBDatabase> shards = new ArrayList<>();
+    @Nonnull
+    private final TreeMap<Long, Integer> ring = new TreeMap<>();
+    private final int segments;
+    /**
+     * Runs the blocking calls to the shards which have no asynchronous form, on at most one thread per shard
+     * <p>A call submitted while every thread is busy runs on the submitting thread instead, so that a call waiting for calls it submitted itself cannot starve them</p>
+     */
+    @Nonnull
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Shard by the first path segment, which is the collection directly inside the root
+     */
+    public MilliDBShardedDatabase(@Nonnull Map<String, MilliDBDatabase> shards) {
+        this(shards, 1);
+    }
+
+    /**
+     * @param shards    the databases made by MilliDBConnector.connect or MilliDBConnector.pool, keyed by a name which places them on the hash ring and so must stay the same across restarts; all of them must have the same database name
+     * @param segments  the number of leading path segments hashed to choose the shard; at least 1
+     */
+    public MilliDBShardedDatabase(@Nonnull Map<String, MilliDBDatabase> shards, @Nonnegative int segments) {
+        if (Validate.nonnull(shards).isEmpty()) throw new IllegalArgumentException("No shard is provided");
+        this.segments = Math.max(1, Validate.nonnegative(segments));
+        for (Map.Entry<String, MilliDBDatabase> shard : shards.entrySet()) {
+            int index = this.shards.size();
+            names.add(Validate.nonnull(shard.getKey()));
+            this.shards.add(Validate.nonnull(shard.getValue()));
+            for (int i = 0; i < POINTS; i++) ring.put(hash(shard.getKey() + "#" + i), index);
+        }
+        String name = this.shards.get(0).getName();
+        this.executor = new ThreadPoolExecutor(0, this.shards.size(), 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "MilliDB-Shard-" + name);
+            thread.setDaemon(true);
+            return thread;
+        }, (runnable, executor) -> {
+            if (executor.isShutdown()) throw new RejectedExecutionException("The sharded database of '" + name + "' is closed");
+            runnable.run();
+        });
+    }
+
+    /**
+     * @param path  the same as the path of get method
+     * @return      the shard which holds the file, or which holds the files inside it if the path is shorter than the shard key
+     */
+    @Nonnull
+    public MilliDBDatabase getShard(@Nonnull String path) {
+        return shards.get(shardOf(Validate.nonnull(path)));
+    }
+
+    @Nonnull
+    public List<MilliDBDatabase> getShards() {
+        return Collections.unmodifiableList(shards);
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    @Override
+    public void close() {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (MilliDBDatabase shard : shards) futures.add(CompletableFuture.runAsync(shard::close, executor));
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).exceptionally(throwable -> null).join();
+        executor.shutdown();
+    }
+
+    @Override
+    @Nonnull
+    public String getName() {
+        return shards.get(0).getName();
+    }
+
+    @Override
+    @Nonnull
+    public MilliDBFile get(@Nonnull String path) throws MilliDBResultException {
+        if (depth(Validate.nonnull(path)) >= segments) return shards.get(shardOf(path)).get(path);
+        List<MilliDBFile> files = all(shard -> shard.get(path));
+        MilliDBCollection[] collections = new MilliDBCollection[shards.size()];
+        boolean found = false;
+        for (int i = 0; i < files.size(); i++) {
+            if (!files.get(i).isMilliDBCollection()) continue;
+            collections[i] = files.get(i).asMilliDBCollection();
+            found = true;
+        }
+        return found ? new ShardedCollection(path, collections) : files.get(shardOf(path));
+    }
+
+    /**
+     * A collection whose path is shorter than the shard key is created on every shard
+     */
+    @Override
+    public void create(@Nonnull String path, @Nonnull Class<? extends MilliDBFile> type, boolean force) throws MilliDBResultException {
+        if (Validate.nonnull(type) == MilliDBCollection.class && depth(Validate.nonnull(path)) < segments) {
+            all(shard -> {
+                shard.create(path, type, force);
+                return null;
+            });
+        } else {
+            shards.get(shardOf(path)).create(path, type, force);
+        }
+    }
+
+    @Override
+    @Nonnull
+    public MilliDBFile getRoot() throws MilliDBResultException {
+        return get("");
+    }
+
+    @Override
+    public void createRoot(@Nonnull Class<? extends MilliDBFile> type, boolean force) throws MilliDBResultException {
+        create("", type, force);
+    }
+
+    @Override
+    @Nonnull
+    public MilliDBSubscription watch(@Nonnull String path, MilliDBFilter filter, @Nonnull Consumer<MilliDBEvent> listener) throws MilliDBResultException {
+        return await(watchAsync(path, filter, listener));
+    }
+
+    /**
+     * A path shorter than the shard key is watched on every shard, and the listener is then called by the event loops of several shards at the same time
+     */
+    @Override
+    @Nonnull
+    public CompletableFuture<MilliDBSubscription> watchAsync(@Nonnull String path, MilliDBFilter filter, @Nonnull Consumer<MilliDBEvent> listener) {
+        if (depth(Validate.nonnull(path)) >= segments) return shards.get(shardOf(path)).watchAsync(path, filter, listener);
+        List<CompletableFuture<MilliDBSubscription>> futures = new ArrayList<>();
+        for (MilliDBDatabase shard : shards) futures.add(shard.watchAsync(path, filter, listener));
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).handle((ignored, throwable) -> {
+            if (throwable != null) {
+                for (CompletableFuture<MilliDBSubscription> future : futures) {
+                    if (future.isDone() && !future.isCompletedExceptionally()) future.join().close();
+                }
+                throw throwable instanceof CompletionException ? (CompletionException) throwable : new CompletionException(throwable);
+            }
+            List<MilliDBSubscription> subscriptions = new ArrayList<>();
+            for (CompletableFuture<MilliDBSubscription> future : futures) subscriptions.add(future.join());
+            return new ShardedSubscription(subscriptions);
+        });
+    }
+
+    /**
+     * @return  a new batch whose operations are sent in a single BATCH query to each shard they touch, the BATCHes of the shards in parallel
+     */
+    @Override
+    @Nonnull
+    public MilliDBBatch batch() {
+        return new ShardedBatch();
+    }
+
+    /**
+     * The cache is shared by every shard, as their documents never overlap
+     */
+    @Override
+    public void setCache(MilliDBCache cache) {
+        for (MilliDBDatabase shard : shards) shard.setCache(cache);
+    }
+
+    @Override
+    public MilliDBCache getCache() {
+        return shards.get(0).getCache();
+    }
+
+    /**
+     * Each shard buffers its own SETs with the same settings
+     */
+    @Override
+    public void setWriteBehind(MilliDBWriteBehindSettings settings) {
+        for (MilliDBDatabase shard : shards) shard.setWriteBehind(settings);
+    }
+
+    @Override
+    public MilliDBWriteBehindSettings getWriteBehind() {
+        return shards.get(0).getWriteBehind();
+    }
+
+    @Override
+    public void flush() throws MilliDBResultException {
+        await(flushAsync());
+    }
+
+    @Override
+    @Nonnull
+    public CompletableFuture<Void> flushAsync() {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (MilliDBDatabase shard : shards) futures.add(shard.flushAsync());
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    @Override
+    public void setHandleFreshness(@Nonnegative long freshness) {
+        for (MilliDBDatabase shard : shards) shard.setHandleFreshness(freshness);
+    }
+
+    @Override
+    public long getHandleFreshness() {
+        return shards.get(0).getHandleFreshness();
+    }
+
+    @Override
+    public void setRetryPolicy(@Nonnull MilliDBRetryPolicy retryPolicy) {
+        for (MilliDBDatabase shard : shards) shard.setRetryPolicy(retryPolicy);
+    }
+
+    @Override
+    @Nonnull
+    public MilliDBRetryPolicy getRetryPolicy() {
+        return shards.get(0).getRetryPolicy();
+    }
+
+    /**
+     * The listener receives the queries of every shard
+     */
+    @Override
+    public void setMetricsListener(MilliDBMetricsListener metrics) {
+        for (MilliDBDatabase shard : shards) shard.setMetricsListener(metrics);
+    }
+
+    @Override
+    public MilliDBMetricsListener getMetricsListener() {
+        return shards.get(0).getMetricsListener();
+    }
+
+    /**
+     * @param path  delimited by slash, relative to the root
+     */
+    private int shardOf(@Nonnull String path) {
+        int end = -1;
+        for (int i = 0; i < segments; i++) {
+            end = path.indexOf('/', end + 1);
+            if (end < 0) break;
+        }
+        Map.Entry<Long, Integer> point = ring.ceilingEntry(hash(end < 0 ? path : path.substring(0, end)));
+        return (point == null ? ring.firstEntry() : point).getValue();
+    }
+
+    /**
+     * @return  the number of segments of the path relative to the root
+     */
+    private static int depth(@Nonnull String path) {
+        if (path.equals("")) return 0;
+        int depth = 1;
+        for (int i = 0; i < path.length(); i++) if (path.charAt(i) == '/') depth++;
+        return depth;
+    }
+
+    /**
+     * @return  the path of the file relative to the root
+     */
+    @Nonnull
+    private String relative(@Nonnull MilliDBFile file) {
+        String path = file.getPath();
+        String root = getName();
+        if (path.equals(root)) return "";
+        return path.startsWith(root + "/") ? path.substring(root.length() + 1) : path;
+    }
+
+    /**
+     * 64-bit FNV-1a of the UTF-8 bytes followed by the MurmurHash3 finalizer, which stays the same across JVMs unlike String.hashCode
+     */
+    private static long hash(@Nonnull String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Call every shard in parallel and wait for all of them
+     *
+     * @return  the results in the order of the shards
+     */
+    @Nonnull
+    private <T> List<T> all(@Nonnull Function<MilliDBDatabase, T> call) throws MilliDBResultException {
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        for (MilliDBDatabase shard : shards) futures.add(CompletableFuture.supplyAsync(() -> call.apply(shard), executor));
+        return await(joined(futures));
+    }
+
+    @Nonnull
+    private static <T> CompletableFuture<List<T>> joined(@Nonnull List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<T> results = new ArrayList<>();
+            for (CompletableFuture<T> future : futures) results.add(future.join());
+            return results;
+        });
+    }
+
+    /**
+     * Wait for the future, rethrowing its failure as it would have been thrown synchronously
+     */
+    private static <T> T await(@Nonnull CompletableFuture<T> future) throws MilliDBResultException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MilliDBResultException("Interrupted while waiting for a result");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new MilliDBResultException(String.valueOf(e.getCause()));
+        }
+    }
+
+    /**
+     * A collection whose path is shorter than the shard key, made of its collection on each shard
+     */
+    private final class ShardedCollection implements MilliDBCollection {
+        /**
+         * Relative to the root
+         */
+        @Nonnull
+        private final String path;
+        /**
+         * In the order of the shards; null where the shard does not have the collection
+         */
+        @Nonnull
+        private final MilliDBCollection[] collections;
+
+        private ShardedCollection(@Nonnull String path, @Nonnull MilliDBCollection[] collections) {
+            this.path = path;
+            this.collections = collections;
+        }
+
+        @Nonnull
+        private MilliDBCollection any() {
+            for (MilliDBCollection collection : collections) if (collection != null) return collection;
+            throw new IllegalStateException("No shard has the collection of '" + path + "'");
+        }
+
+        /**
+         * @return  the path of the file inside this collection relative to the root
+         */
+        @Nonnull
+        private String child(@Nonnull String name) {
+            return path.equals("") ? name : path + "/" + name;
+        }
+
+        @Override
+        public MilliDBCollection getParent() {
+            if (path.equals("")) return null;
+            MilliDBCollection[] parents = new MilliDBCollection[collections.length];
+            for (int i = 0; i < collections.length; i++) if (collections[i] != null) parents[i] = collections[i].getParent();
+            int slash = path.lastIndexOf('/');
+            return new ShardedCollection(slash < 0 ? "" : path.substring(0, slash), parents);
+        }
+
+        @Override
+        @Nonnull
+        public String getPath() {
+            return any().getPath();
+        }
+
+        @Override
+        @Nonnull
+        public String getName() {
+            return any().getName();
+        }
+
+        @Override
+        public boolean isMilliDBNone() {
+            return false;
+        }
+
+        @Override
+        public boolean isMilliDBDocument() {
+            return false;
+        }
+
+        @Override
+        public boolean isMilliDBCollection() {
+            return true;
+        }
+
+        @Override
+        @Nonnull
+        public MilliDBDocument asMilliDBDocument() throws ClassCastException {
+            throw new ClassCastException("Not a MilliDBDocument");
+        }
+
+        @Override
+        @Nonnull
+        public MilliDBCollection asMilliDBCollection() throws ClassCastException {
+            return this;
+        }
+
+        /**
+         * Delete the collection from every shard in parallel
+         */
+        @Override
+        public void delete() throws MilliDBResultException {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (MilliDBCollection collection : collections) {
+                if (collection != null) futures.add(CompletableFuture.runAsync(collection::delete, executor));
+            }
+            await(joined(futures));
+        }
+
+        @Override
+        @Nonnull
+        public List<MilliDBFile> list() throws MilliDBResultException {
+            return list(null);
+        }
+
+        @Override
+        @Nonnull
+        public List<MilliDBFile> list(MilliDBFilter filter) throws MilliDBResultException {
+            return await(listAsync(filter));
+        }
+
+        @Override
+        @Nonnull
+        public List<MilliDBFile> listWithContents(MilliDBFilter filter, Collection<String> paths) throws MilliDBResultException {
+            return await(listWithContentsAsync(filter, paths));
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<List<MilliDBFile>> listWithContentsAsync(MilliDBFilter filter, Collection<String> paths) {
+            return merge(collection -> collection.listWithContentsAsync(filter, paths));
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<List<MilliDBFile>> listAsync() {
+            return listAsync(null);
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<List<MilliDBFile>> listAsync(MilliDBFilter filter) {
+            return merge(collection -> collection.listAsync(filter));
+        }
+
+        /**
+         * List on every shard in parallel; the collections shorter than the shard key, which every shard has, are merged into one
+         */
+        @Nonnull
+        private CompletableFuture<List<MilliDBFile>> merge(@Nonnull Function<MilliDBCollection, CompletableFuture<List<MilliDBFile>>> list) {
+            List<CompletableFuture<List<MilliDBFile>>> futures = new ArrayList<>();
+            for (MilliDBCollection collection : collections) futures.add(collection == null ? CompletableFuture.completedFuture(Collections.emptyList()) : list.apply(collection));
+            return joined(futures).thenApply(listed -> {
+                List<MilliDBFile> files = new ArrayList<>();
+                List<MilliDBFile> routed = new ArrayList<>();
+                Map<String, MilliDBCollection[]> merged = new LinkedHashMap<>();
+                for (int i = 0; i < listed.size(); i++) {
+                    for (MilliDBFile file : listed.get(i)) {
+                        if (!file.isMilliDBCollection()) {
+                            files.add(file);
+                        } else if (depth(child(file.getName())) < segments) {
+                            merged.computeIfAbsent(file.getName(), name -> new MilliDBCollection[shards.size()])[i] = file.asMilliDBCollection();
+                        } else {
+                            routed.add(file);
+                        }
+                    }
+                }
+                files.addAll(routed);
+                for (Map.Entry<String, MilliDBCollection[]> collection : merged.entrySet()) files.add(new ShardedCollection(child(collection.getKey()), collection.getValue()));
+                return files;
+            });
+        }
+
+        /**
+         * Iterate the shards one after another; a collection which every shard has is returned once
+         */
+        @Override
+        @Nonnull
+        public Iterator<MilliDBFile> iterate(MilliDBFilter filter, int pageSize) {
+            Set<String> seen = new HashSet<>();
+            return Arrays.stream(collections).filter(Objects::nonNull).flatMap(collection -> collection.stream(filter, pageSize)).map(file -> {
+                if (!file.isMilliDBCollection() || depth(child(file.getName())) >= segments) return file;
+                return seen.add(file.getName()) ? MilliDBShardedDatabase.this.get(child(file.getName())) : null;
+            }).filter(Objects::nonNull).iterator();
+        }
+
+        @Override
+        @Nonnull
+        public Stream<MilliDBFile> stream(MilliDBFilter filter, int pageSize) {
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterate(filter, pageSize), Spliterator.ORDERED | Spliterator.NONNULL), false);
+        }
+
+        /**
+         * Visit the files down to the shard key from the merged lists first, then walk the rest of every shard in parallel
+         */
+        @Override
+        public void walk(int parallelism, @Nonnull Consumer<MilliDBFile> visitor) throws MilliDBResultException {
+            Validate.nonnull(visitor);
+            visit(this, visitor);
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (MilliDBCollection collection : collections) {
+                if (collection == null) continue;
+                futures.add(CompletableFuture.runAsync(() -> collection.walk(parallelism, file -> {
+                    if (depth(relative(file)) > segments) visitor.accept(file);
+                }), executor));
+            }
+            await(joined(futures));
+        }
+
+        private void visit(@Nonnull ShardedCollection collection, @Nonnull Consumer<MilliDBFile> visitor) throws MilliDBResultException {
+            for (MilliDBFile file : collection.list()) {
+                visitor.accept(file);
+                if (file instanceof ShardedCollection) visit((ShardedCollection) file, visitor);
+            }
+        }
+
+        @Override
+        public long exportTo(@Nonnull Path file, int parallelism) throws MilliDBResultException, IOException {
+            int prefix = getPath().length() + 1;
+            AtomicLong documents = new AtomicLong();
+            try (MilliDBArchive.Writer writer = MilliDBArchive.create(file)) {
+                walk(parallelism, visited -> {
+                    try {
+                        if (visited.isMilliDBCollection()) {
+                            writer.writeCollection(visited.getPath().substring(prefix));
+                        } else if (visited.isMilliDBDocument()) {
+                            writer.writeDocument(visited.getPath().substring(prefix), visited.asMilliDBDocument().fetchContent());
+                            documents.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return documents.get();
+        }
+
+        /**
+         * Split the records into a temporary archive for each shard, then import them into every shard in parallel
+         * <p>The collection is created without force on the shards which lack it, so that another file in its place fails the import instead of being replaced</p>
+         */
+        @Override
+        public long importFrom(@Nonnull Path file, int batchSize, int parallelism) throws MilliDBResultException, IOException {
+            for (int i = 0; i < collections.length; i++) {
+                if (collections[i] != null) continue;
+                try {
+                    shards.get(i).create(path, MilliDBCollection.class, false);
+                } catch (MilliDBResultException ignored) {
+                }
+                MilliDBFile created = shards.get(i).get(path);
+                if (!created.isMilliDBCollection()) throw new MilliDBResultException("Failed to import the collection of '" + path + "' into the shard of '" + names.get(i) + "', as another file is in its place");
+                collections[i] = created.asMilliDBCollection();
+            }
+            Path[] parts = new Path[shards.size()];
+            try {
+                MilliDBArchive.Writer[] writers = new MilliDBArchive.Writer[shards.size()];
+                try (MilliDBArchive.Reader reader = MilliDBArchive.open(file)) {
+                    for (int i = 0; i < parts.length; i++) {
+                        parts[i] = Files.createTempFile("millidb-shard-", ".mldb");
+                        writers[i] = MilliDBArchive.create(parts[i]);
+                    }
+                    MilliDBArchive.Record record;
+                    while ((record = reader.next()) != null) {
+                        String relative = child(record.getPath());
+                        if (record.getType() == MilliDBArchive.COLLECTION && depth(relative) < segments) {
+                            for (MilliDBArchive.Writer writer : writers) writer.writeCollection(record.getPath());
+                        } else if (record.getType() == MilliDBArchive.COLLECTION) {
+                            writers[shardOf(relative)].writeCollection(record.getPath());
+                        } else {
+                            writers[shardOf(relative)].writeDocument(record.getPath(), record.getContent());
+                        }
+                    }
+                } finally {
+                    for (MilliDBArchive.Writer writer : writers) if (writer != null) writer.close();
+                }
+                List<CompletableFuture<Long>> futures = new ArrayList<>();
+                for (int i = 0; i < parts.length; i++) {
+                    MilliDBCollection collection = collections[i];
+                    Path part = parts[i];
+                    futures.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return collection.importFrom(part, batchSize, parallelism);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }, executor));
+                }
+                long imported = 0;
+                for (long count : await(joined(futures))) imported += count;
+                return imported;
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                for (Path part : parts) if (part != null) Files.deleteIfExists(part);
+            }
+        }
+
+        @Override
+        @Nonnull
+        public MilliDBFile get(@Nonnull String name) throws MilliDBResultException {
+            return await(getAsync(name));
+        }
+
+        @Override
+        public void create(@Nonnull String name, @Nonnull Class<? extends MilliDBFile> type, boolean force) throws MilliDBResultException {
+            await(createAsync(name, type, force));
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<MilliDBFile> getAsync(@Nonnull String name) {
+            if (Validate.nonnull(name).equals("")) return any().getAsync(name);
+            String child = child(name);
+            MilliDBCollection collection = collections[shardOf(child)];
+            if (depth(child) >= segments && collection != null) return collection.getAsync(name);
+            return CompletableFuture.supplyAsync(() -> MilliDBShardedDatabase.this.get(child), executor);
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<Void> createAsync(@Nonnull String name, @Nonnull Class<? extends MilliDBFile> type, boolean force) {
+            if (Validate.nonnull(name).equals("")) return CompletableFuture.completedFuture(null);
+            String child = child(name);
+            MilliDBCollection collection = collections[shardOf(child)];
+            if ((Validate.nonnull(type) != MilliDBCollection.class || depth(child) >= segments) && collection != null) return collection.createAsync(name, type, force);
+            return CompletableFuture.runAsync(() -> MilliDBShardedDatabase.this.create(child, type, force), executor);
+        }
+    }
+
+    private static final class ShardedSubscription implements MilliDBSubscription {
+        @Nonnull
+        private final List<MilliDBSubscription> subscriptions;
+
+        private ShardedSubscription(@Nonnull List<MilliDBSubscription> subscriptions) {
+            this.subscriptions = subscriptions;
+        }
+
+        @Override
+        @Nonnull
+        public String getPath() {
+            return subscriptions.get(0).getPath();
+        }
+
+        @Override
+        public MilliDBFilter getFilter() {
+            return subscriptions.get(0).getFilter();
+        }
+
+        /**
+         * @return  false once closed, or once the subscription of any shard has become inactive
+         */
+        @Override
+        public boolean isActive() {
+            for (MilliDBSubscription subscription : subscriptions) if (!subscription.isActive()) return false;
+            return true;
+        }
+
+        @Override
+        public void close() {
+            for (MilliDBSubscription subscription : subscriptions) subscription.close();
+        }
+    }
+
+    /**
+     * Keeps a batch for each shard which an operation is added to
+     */
+    private final class ShardedBatch implements MilliDBBatch {
+        @Nonnull
+        private final MilliDBBatch[] batches = new MilliDBBatch[shards.size()];
+        @Nonnull
+        private final List<Operation<?>> operations = new ArrayList<>();
+
+        @Nonnull
+        private MilliDBBatch batch(int shard) {
+            if (batches[shard] == null) batches[shard] = shards.get(shard).batch();
+            return batches[shard];
+        }
+
+        @Nonnull
+        private <T> Operation<T> add(@Nonnull Operation<T> operation) {
+            operations.add(operation);
+            return operation;
+        }
+
+        @Override
+        @Nonnull
+        public Operation<MilliData> fetch(@Nonnull MilliDBDocument document, @Nonnull String path) {
+            return add(batch(shardOf(relative(document))).fetch(document, path));
+        }
+
+        @Override
+        @Nonnull
+        public Operation<Void> set(@Nonnull MilliDBDocument document, @Nonnull String path, @Nonnull MilliData value) {
+            return add(batch(shardOf(relative(document))).set(document, path, value));
+        }
+
+        /**
+         * @throws MilliDBResultException   if the collection is shorter than the shard key and the shard of the created file does not have it
+         */
+        @Override
+        @Nonnull
+        public Operation<Void> create(@Nonnull MilliDBCollection collection, @Nonnull String name, @Nonnull Class<? extends MilliDBFile> type, boolean force) {
+            if (!(collection instanceof ShardedCollection)) {
+                String parent = relative(collection);
+                return add(batch(shardOf(parent.equals("") ? name : parent + "/" + name)).create(collection, name, type, force));
+            }
+            ShardedCollection sharded = (ShardedCollection) collection;
+            String child = sharded.child(name);
+            if (type == MilliDBCollection.class && depth(child) < segments) {
+                List<Operation<Void>> created = new ArrayList<>();
+                for (int i = 0; i < sharded.collections.length; i++) {
+                    if (sharded.collections[i] != null) created.add(batch(i).create(sharded.collections[i], name, type, force));
+                }
+                return add(new ShardedOperation(created));
+            }
+            int shard = shardOf(child);
+            if (sharded.collections[shard] == null) throw new MilliDBResultException("The collection of '" + sharded.getPath() + "' does not exist on the shard of '" + names.get(shard) + "'");
+            return add(batch(shard).create(sharded.collections[shard], name, type, force));
+        }
+
+        @Override
+        @Nonnull
+        public Operation<Void> delete(@Nonnull MilliDBFile file) {
+            if (!(file instanceof ShardedCollection)) return add(batch(shardOf(relative(file))).delete(file));
+            ShardedCollection sharded = (ShardedCollection) file;
+            List<Operation<Void>> deleted = new ArrayList<>();
+            for (int i = 0; i < sharded.collections.length; i++) {
+                if (sharded.collections[i] != null) deleted.add(batch(i).delete(sharded.collections[i]));
+            }
+            return add(new ShardedOperation(deleted));
+        }
+
+        @Override
+        @Nonnull
+        public List<Operation<?>> getOperations() {
+            return Collections.unmodifiableList(operations);
+        }
+
+        @Override
+        public void execute() throws MilliDBResultException {
+            await(executeAsync());
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<Void> executeAsync() {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (MilliDBBatch batch : batches) if (batch != null) futures.add(batch.executeAsync());
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+        }
+    }
+
+    /**
+     * The same operation added to the batches of several shards
+     */
+    private static final class ShardedOperation implements MilliDBBatch.Operation<Void> {
+        @Nonnull
+        private final List<MilliDBBatch.Operation<Void>> operations;
+
+        private ShardedOperation(@Nonnull List<MilliDBBatch.Operation<Void>> operations) {
+            this.operations = operations;
+        }
+
+        @Override
+        @Nonnull
+        public MilliDBQuery getQuery() {
+            return operations.get(0).getQuery();
+        }
+
+        @Override
+        public boolean isSucceed() {
+            for (MilliDBBatch.Operation<Void> operation : operations) if (!operation.isSucceed()) return false;
+            return true;
+        }
+
+        @Override
+        public Void get() throws MilliDBResultException {
+            for (MilliDBBatch.Operation<Void> operation : operations) operation.get();
+            return null;
+        }
+
+        @Override
+        @Nonnull
+        public CompletableFuture<Void> getFuture() {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (MilliDBBatch.Operation<Void> operation : operations) futures.add(operation.getFuture());
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnull;
+
+/**
+ * A registration for the changes of a file, created by MilliDBDatabase.watch
+ * <p> If the connection carrying it is lost, the listener receives a LOST event and the subscription is registered again on another connection of the same database; it becomes inactive if that fails
+ */
+@SuppressWarnings("unused")
+public interface MilliDBSubscription {
+    /**
+     * @return  the full path of the watched file
+     */
+    @Nonnull
+    String getPath();
+
+    /**
+     * @return  null if the events of every document are delivered
+     */
+    MilliDBFilter getFilter();
+
+    /**
+     * @return  false once closed, or once it could not be registered again after its connection was lost
+     */
+    boolean isActive();
+
+    /**
+     * Stop delivering the events, and tell the server with UNWATCH without waiting for its result
+     */
+    void close();
+}
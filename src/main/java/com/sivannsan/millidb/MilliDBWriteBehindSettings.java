@@ -0,0 +1,40 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.foundation.annotation.Nonnegative;
+import com.sivannsan.foundation.annotation.Nonnull;
+import com.sivannsan.foundation.common.Validate;
+
+/**
+ * Settings of MilliDBDatabase.setWriteBehind; every duration is in milliseconds
+ */
+@SuppressWarnings("unused")
+public final class MilliDBWriteBehindSettings {
+    private long linger = 100;
+    private int maxPending = 1000;
+
+    /**
+     * @param linger    how long the first buffered SET waits for the later ones before they are sent together
+     */
+    @Nonnull
+    public MilliDBWriteBehindSettings linger(@Nonnegative long linger) {
+        this.linger = Validate.nonnegative(linger);
+        return this;
+    }
+
+    /**
+     * @param maxPending    the number of buffered data paths which makes them sent without waiting for the linger; at least 1
+     */
+    @Nonnull
+    public MilliDBWriteBehindSettings maxPending(@Nonnegative int maxPending) {
+        this.maxPending = Math.max(1, Validate.nonnegative(maxPending));
+        return this;
+    }
+
+    public long getLinger() {
+        return linger;
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+}
@@ -0,0 +1,84 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.millidata.MilliList;
+import com.sivannsan.millidata.MilliMap;
+import com.sivannsan.millidata.MilliNull;
+import com.sivannsan.millidata.MilliValue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MilliDBArchiveTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsRoundTripInOrder() throws IOException {
+        Path file = directory.resolve("export.mldb");
+        MilliMap small = new MilliMap("a", new MilliValue("b"));
+        MilliMap large = new MilliMap("text", new MilliValue(new String(new char[200000]).replace('\0', 'x'))).append("list", new MilliList());
+        try (MilliDBArchive.Writer writer = MilliDBArchive.create(file)) {
+            writer.writeCollection("c");
+            writer.writeDocument("c/small.mll", small);
+            writer.writeCollection("c/sub");
+            writer.writeDocument("c/sub/large.mll", large);
+        }
+        try (MilliDBArchive.Reader reader = MilliDBArchive.open(file)) {
+            assertRecord(reader.next(), MilliDBArchive.COLLECTION, "c", MilliNull.INSTANCE);
+            assertRecord(reader.next(), MilliDBArchive.DOCUMENT, "c/small.mll", small);
+            assertRecord(reader.next(), MilliDBArchive.COLLECTION, "c/sub", MilliNull.INSTANCE);
+            assertRecord(reader.next(), MilliDBArchive.DOCUMENT, "c/sub/large.mll", large);
+            assertNull(reader.next());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void creatingTruncatesTheFile() throws IOException {
+        Path file = directory.resolve("export.mldb");
+        try (MilliDBArchive.Writer writer = MilliDBArchive.create(file)) {
+            writer.writeDocument("old.mll", new MilliMap());
+        }
+        MilliDBArchive.create(file).close();
+        try (MilliDBArchive.Reader reader = MilliDBArchive.open(file)) {
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void otherFilesAreRejected() throws IOException {
+        Path file = directory.resolve("other.mldb");
+        Files.write(file, new byte[]{'M', 'L', 'D', 'X', 1});
+        assertThrows(IOException.class, () -> MilliDBArchive.open(file));
+        Files.write(file, new byte[]{'M', 'L', 'D', 'B', MilliDBArchive.VERSION + 1});
+        assertThrows(IOException.class, () -> MilliDBArchive.open(file));
+        Files.write(file, new byte[]{'M', 'L'});
+        assertThrows(IOException.class, () -> MilliDBArchive.open(file));
+    }
+
+    @Test
+    void truncatedRecordsAreRejected() throws IOException {
+        Path file = directory.resolve("export.mldb");
+        try (MilliDBArchive.Writer writer = MilliDBArchive.create(file)) {
+            writer.writeDocument("d.mll", new MilliMap("a", new MilliValue("b")));
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+        try (MilliDBArchive.Reader reader = MilliDBArchive.open(file)) {
+            assertThrows(IOException.class, reader::next);
+        }
+    }
+
+    private static void assertRecord(MilliDBArchive.Record record, byte type, String path, Object content) {
+        assertNotNull(record);
+        assertEquals(type, record.getType());
+        assertEquals(path, record.getPath());
+        assertEquals(content, record.getContent());
+    }
+}
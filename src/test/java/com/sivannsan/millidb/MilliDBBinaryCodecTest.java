@@ -0,0 +1,81 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.millidata.MilliData;
+import com.sivannsan.millidata.MilliList;
+import com.sivannsan.millidata.MilliMap;
+import com.sivannsan.millidata.MilliNull;
+import com.sivannsan.millidata.MilliValue;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MilliDBBinaryCodecTest {
+    @Test
+    void dataRoundTrips() {
+        MilliList list = new MilliList();
+        list.add(new MilliValue("\u00e9 and \u5b57"));
+        list.add(MilliNull.INSTANCE);
+        list.add(new MilliMap("nested", new MilliList()));
+        MilliMap data = new MilliMap("a", new MilliValue(1)).append("b", list).append("c", new MilliMap());
+        ByteBuffer buffer = ByteBuffer.allocate(MilliDBBinaryCodec.sizeOf(data));
+        MilliDBBinaryCodec.writeData(buffer, data);
+        assertFalse(buffer.hasRemaining());
+        buffer.flip();
+        assertEquals(data, MilliDBBinaryCodec.readData(buffer));
+        buffer.rewind();
+        MilliDBBinaryCodec.skipData(buffer);
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void varintsRoundTrip() {
+        for (long value : new long[]{0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, Long.MAX_VALUE}) {
+            ByteBuffer buffer = ByteBuffer.allocate(MilliDBBinaryCodec.sizeOf(value));
+            MilliDBBinaryCodec.writeVarint(buffer, value);
+            assertFalse(buffer.hasRemaining(), String.valueOf(value));
+            buffer.flip();
+            assertEquals(value, MilliDBBinaryCodec.readVarint(buffer));
+        }
+    }
+
+    @Test
+    void resultMetadataOutlivesTheReadBuffer() {
+        MilliMap metadata = new MilliMap("content", new MilliMap("a", new MilliValue("b")));
+        ByteBuffer buffer = MilliDBBinaryCodec.encode(new MilliDBResult(11, true, metadata), ByteBuffer.allocate(8));
+        buffer.flip();
+        MilliDBResult result = MilliDBBinaryCodec.decodeResult(buffer);
+        assertFalse(buffer.hasRemaining());
+        Arrays.fill(buffer.array(), (byte) 0);
+        assertEquals(11, result.getID());
+        assertTrue(result.isSucceed());
+        assertEquals(metadata, result.getMetadata());
+    }
+
+    @Test
+    void malformedFrameLengthKeepsThePosition() {
+        byte[] bytes = new byte[12];
+        Arrays.fill(bytes, (byte) 0xFF);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        assertThrows(MilliDBResultException.class, () -> MilliDBBinaryCodec.decodeResult(buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    void malformedMetadataIsRejected() {
+        ByteBuffer buffer = MilliDBBinaryCodec.encode(new MilliDBResult(1, true, new MilliMap("a", new MilliValue("b"))), ByteBuffer.allocate(8));
+        buffer.flip();
+        buffer.put(buffer.limit() - 3, (byte) 0x7F);
+        assertThrows(MilliDBResultException.class, () -> MilliDBBinaryCodec.decodeResult(buffer));
+    }
+
+    @Test
+    void encodingGrowsTheBuffer() {
+        MilliData large = new MilliValue(new String(new char[100000]).replace('\0', 'x'));
+        ByteBuffer buffer = MilliDBBinaryCodec.encode(new MilliDBResult(2, true, large), ByteBuffer.allocate(8));
+        buffer.flip();
+        assertEquals(large, MilliDBBinaryCodec.decodeResult(buffer).getMetadata());
+    }
+}
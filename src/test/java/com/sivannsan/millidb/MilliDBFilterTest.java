@@ -0,0 +1,89 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.millidata.MilliList;
+import com.sivannsan.millidata.MilliMap;
+import com.sivannsan.millidata.MilliValue;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MilliDBFilterTest {
+    private static final MilliMap CONTENT = content();
+
+    private static MilliMap content() {
+        MilliList tags = new MilliList();
+        tags.add(new MilliValue("red"));
+        tags.add(new MilliValue("blue"));
+        return new MilliMap("name", new MilliValue("apple")).append("price", new MilliValue(12)).append("tags", tags).append("stock", new MilliMap("count", new MilliValue(3)));
+    }
+
+    @Test
+    void superOfChecksTheSubData() {
+        assertTrue(MilliDBFilter.superOf(new MilliMap("name", new MilliValue("apple"))).test(CONTENT));
+        assertFalse(MilliDBFilter.superOf(new MilliMap("name", new MilliValue("pear"))).test(CONTENT));
+        assertFalse(MilliDBFilter.superOf(new MilliMap("stock", new MilliMap())).test(CONTENT));
+        assertTrue(MilliDBFilter.superOf(new MilliMap("stock", new MilliMap()), 1).test(CONTENT));
+    }
+
+    @Test
+    void pathFiltersResolveTheDataPath() {
+        assertTrue(MilliDBFilter.equalsAt("stock.count", new MilliValue(3)).test(CONTENT));
+        assertTrue(MilliDBFilter.equalsAt("tags.1", new MilliValue("blue")).test(CONTENT));
+        assertFalse(MilliDBFilter.equalsAt("tags.2", new MilliValue("blue")).test(CONTENT));
+        assertTrue(MilliDBFilter.exists("stock.count").test(CONTENT));
+        assertFalse(MilliDBFilter.exists("stock.missing").test(CONTENT));
+        assertTrue(MilliDBFilter.in("name", Arrays.asList(new MilliValue("pear"), new MilliValue("apple"))).test(CONTENT));
+        assertFalse(MilliDBFilter.in("name", Arrays.asList(new MilliValue("pear"), new MilliValue("plum"))).test(CONTENT));
+    }
+
+    @Test
+    void rangesCompareNumbersNumerically() {
+        assertTrue(MilliDBFilter.between("price", new MilliValue(9), new MilliValue(12)).test(CONTENT));
+        assertFalse(MilliDBFilter.range("price", new MilliValue(9), true, new MilliValue(12), false).test(CONTENT));
+        assertTrue(MilliDBFilter.greaterThan("price", new MilliValue(9)).test(CONTENT));
+        assertFalse(MilliDBFilter.lessThan("price", new MilliValue(100)).test(new MilliMap("price", new MilliValue(200))));
+        assertTrue(MilliDBFilter.greaterThan("name", new MilliValue("a")).test(CONTENT));
+        assertFalse(MilliDBFilter.greaterThan("missing", new MilliValue(0)).test(CONTENT));
+    }
+
+    @Test
+    void compositesCombineTheirFilters() {
+        MilliDBFilter cheap = MilliDBFilter.lessThan("price", new MilliValue(20));
+        MilliDBFilter pear = MilliDBFilter.equalsAt("name", new MilliValue("pear"));
+        assertTrue(MilliDBFilter.and(cheap, MilliDBFilter.not(pear)).test(CONTENT));
+        assertFalse(MilliDBFilter.and(cheap, pear).test(CONTENT));
+        assertTrue(MilliDBFilter.or(pear, cheap).test(CONTENT));
+        assertFalse(MilliDBFilter.or(pear, MilliDBFilter.not(cheap)).test(CONTENT));
+    }
+
+    @Test
+    void filtersRoundTripThroughTheParser() {
+        MilliDBFilter filter = MilliDBFilter.or(
+                MilliDBFilter.and(MilliDBFilter.superOf(new MilliMap("name", new MilliValue("apple")), 2), MilliDBFilter.not(MilliDBFilter.exists("sold"))),
+                MilliDBFilter.range("price", new MilliValue(1), true, null, false),
+                MilliDBFilter.in("tags.0", Arrays.asList(new MilliValue("red"), new MilliValue("green"))),
+                MilliDBFilter.equalsAt("stock.count", new MilliValue(3)));
+        MilliDBFilter parsed = MilliDBFilter.Parser.parse(filter.toMilliMap());
+        assertNotNull(parsed);
+        assertEquals(filter.toMilliMap(), parsed.toMilliMap());
+        assertEquals(filter.test(CONTENT), parsed.test(CONTENT));
+        assertEquals(filter.toMilliMap(), MilliDBFilter.Parser.parse(filter.toMilliMap().toString()).toMilliMap());
+    }
+
+    @Test
+    void unknownFiltersFailTheWholeParse() {
+        MilliMap unknown = new MilliMap("_t", new MilliValue("unknown"));
+        assertNull(MilliDBFilter.Parser.parse(unknown));
+        assertNull(MilliDBFilter.Parser.parse(new MilliMap("_t", new MilliValue("not")).append("f", unknown)));
+        for (String type : new String[]{"and", "or"}) {
+            MilliList filters = new MilliList();
+            filters.add(MilliDBFilter.exists("name").toMilliMap());
+            filters.add(unknown);
+            assertNull(MilliDBFilter.Parser.parse(new MilliMap("_t", new MilliValue(type)).append("f", filters)), type);
+            MilliMap nested = new MilliMap("_t", new MilliValue("not")).append("f", new MilliMap("_t", new MilliValue(type)).append("f", filters));
+            assertNull(MilliDBFilter.Parser.parse(nested), type);
+        }
+    }
+}
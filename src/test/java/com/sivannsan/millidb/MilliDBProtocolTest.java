@@ -0,0 +1,94 @@
+package com.sivannsan.millidb;
+
+import com.sivannsan.millidata.MilliList;
+import com.sivannsan.millidata.MilliMap;
+import com.sivannsan.millidata.MilliValue;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MilliDBProtocolTest {
+    private static final MilliMap METADATA = metadata();
+
+    private static MilliMap metadata() {
+        MilliList values = new MilliList();
+        values.add(new MilliValue(1));
+        values.add(new MilliMap());
+        return new MilliMap("path", new MilliValue("db/c/d.mll")).append("data_path", new MilliValue("a/b")).append("values", values);
+    }
+
+    @Test
+    void queriesRoundTrip() {
+        for (MilliDBProtocol protocol : MilliDBProtocol.values()) {
+            MilliDBQuery query = new MilliDBQuery(42, MilliDBQuery.Function.FETCH, METADATA);
+            ByteBuffer buffer = protocol.encode(query, ByteBuffer.allocate(8));
+            buffer.flip();
+            MilliDBQuery decoded = protocol.decodeQuery(buffer);
+            assertNotNull(decoded, protocol.name());
+            assertEquals(42, decoded.getID(), protocol.name());
+            assertEquals(MilliDBQuery.Function.FETCH, decoded.getFunction(), protocol.name());
+            assertEquals(METADATA, decoded.getMetadata(), protocol.name());
+            assertFalse(buffer.hasRemaining(), protocol.name());
+        }
+    }
+
+    @Test
+    void resultsRoundTrip() {
+        for (MilliDBProtocol protocol : MilliDBProtocol.values()) {
+            ByteBuffer buffer = ByteBuffer.allocate(8);
+            buffer = protocol.encode(new MilliDBResult(7, true, METADATA), buffer);
+            buffer = protocol.encode(new MilliDBResult(8, false, new MilliValue("x"), true), buffer);
+            buffer.flip();
+            MilliDBResult first = protocol.decodeResult(buffer);
+            MilliDBResult second = protocol.decodeResult(buffer);
+            assertEquals(7, first.getID(), protocol.name());
+            assertTrue(first.isSucceed(), protocol.name());
+            assertFalse(first.isEvent(), protocol.name());
+            assertEquals(METADATA, first.getMetadata(), protocol.name());
+            assertEquals(8, second.getID(), protocol.name());
+            assertFalse(second.isSucceed(), protocol.name());
+            assertTrue(second.isEvent(), protocol.name());
+            assertEquals(new MilliValue("x"), second.getMetadata(), protocol.name());
+            assertNull(protocol.decodeResult(buffer), protocol.name());
+        }
+    }
+
+    @Test
+    void incompleteFramesAreLeftInTheBuffer() {
+        for (MilliDBProtocol protocol : MilliDBProtocol.values()) {
+            ByteBuffer encoded = protocol.encode(new MilliDBResult(3, true, METADATA), ByteBuffer.allocate(8));
+            encoded.flip();
+            for (int length = 0; length < encoded.limit(); length++) {
+                ByteBuffer partial = encoded.duplicate();
+                partial.limit(length);
+                assertNull(protocol.decodeResult(partial), protocol.name() + " " + length);
+                assertEquals(0, partial.position(), protocol.name() + " " + length);
+            }
+            assertEquals(METADATA, protocol.decodeResult(encoded.duplicate()).getMetadata(), protocol.name());
+        }
+    }
+
+    @Test
+    void textResumesTheSearchFromTheGivenOffset() {
+        ByteBuffer encoded = MilliDBProtocol.TEXT.encode(new MilliDBResult(5, true, METADATA), ByteBuffer.allocate(8));
+        encoded.flip();
+        int searched = encoded.limit() / 2;
+        ByteBuffer partial = encoded.duplicate();
+        partial.limit(searched);
+        assertNull(MilliDBProtocol.TEXT.decodeResult(partial));
+        partial.limit(encoded.limit());
+        MilliDBResult result = MilliDBProtocol.TEXT.decodeResult(partial, searched);
+        assertEquals(5, result.getID());
+        assertEquals(encoded.limit(), partial.position());
+    }
+
+    @Test
+    void binaryCarriesLineBreaks() {
+        MilliValue value = new MilliValue("line\nbreak\r\n");
+        ByteBuffer buffer = MilliDBProtocol.BINARY.encode(new MilliDBResult(9, true, new MilliMap("v", value)), ByteBuffer.allocate(8));
+        buffer.flip();
+        assertEquals(value, MilliDBProtocol.BINARY.decodeResult(buffer).getMetadata().asMilliMap().get("v"));
+    }
+}
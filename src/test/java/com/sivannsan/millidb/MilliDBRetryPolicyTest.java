@@ -0,0 +1,53 @@
+package com.sivannsan.millidb;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MilliDBRetryPolicyTest {
+    @Test
+    void delaysGrowExponentiallyUpToTheMaximum() {
+        MilliDBRetryPolicy policy = new MilliDBRetryPolicy().backoff(50, 1000, 2).jitter(0);
+        assertEquals(50, policy.delay(1));
+        assertEquals(100, policy.delay(2));
+        assertEquals(200, policy.delay(3));
+        assertEquals(800, policy.delay(5));
+        assertEquals(1000, policy.delay(6));
+        assertEquals(1000, policy.delay(100));
+    }
+
+    @Test
+    void jitterOnlyShortensTheDelay() {
+        MilliDBRetryPolicy policy = new MilliDBRetryPolicy().backoff(100, 100, 2).jitter(0.5);
+        for (int i = 0; i < 1000; i++) {
+            long delay = policy.delay(1);
+            assertTrue(delay >= 50 && delay <= 100, String.valueOf(delay));
+        }
+    }
+
+    @Test
+    void settingsAreClamped() {
+        MilliDBRetryPolicy policy = new MilliDBRetryPolicy().maxAttempts(0).backoff(500, 100, 0.5).jitter(3);
+        assertEquals(1, policy.getMaxAttempts());
+        assertEquals(500, policy.getMaxDelay());
+        assertEquals(1, policy.getMultiplier(), 0);
+        assertEquals(1, policy.getJitter(), 0);
+        assertEquals(1, MilliDBRetryPolicy.none().getMaxAttempts());
+    }
+
+    @Test
+    void budgetIsSpentByRetriesAndRefilledByQueries() {
+        MilliDBRetryPolicy.Budget budget = new MilliDBRetryPolicy().budget(0.5, 2).newBudget();
+        assertTrue(budget.withdraw());
+        assertTrue(budget.withdraw());
+        assertFalse(budget.withdraw());
+        budget.deposit();
+        assertFalse(budget.withdraw());
+        budget.deposit();
+        assertTrue(budget.withdraw());
+        for (int i = 0; i < 100; i++) budget.deposit();
+        assertTrue(budget.withdraw());
+        assertTrue(budget.withdraw());
+        assertFalse(budget.withdraw());
+    }
+}